@@ -0,0 +1,141 @@
+package com.overmild.mugs.benchmark;
+
+import com.overmild.mugs.entity.AddressEmbeddable;
+import com.overmild.mugs.entity.LocationEntity;
+import com.overmild.mugs.entity.MugEntity;
+import com.overmild.mugs.entity.UserEntity;
+import com.overmild.mugs.model.Address;
+import com.overmild.mugs.model.Location;
+import com.overmild.mugs.model.Mug;
+import com.overmild.mugs.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Deterministic benchmark data shaped like production rows: every mug references one of a
+ * small set of users and locations, and every location has a fully populated address.
+ */
+final class Fixtures {
+
+    private static final int USERS = 100;
+    private static final int LOCATIONS = 50;
+
+    private Fixtures() {
+    }
+
+    static List<MugEntity> mugEntities(int size) {
+        Random random = new Random(size);
+        List<UserEntity> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            users.add(userEntity(random, i));
+        }
+        List<LocationEntity> locations = new ArrayList<>(LOCATIONS);
+        for (int i = 0; i < LOCATIONS; i++) {
+            locations.add(locationEntity(random, i));
+        }
+        List<MugEntity> mugs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            MugEntity mug = new MugEntity();
+            mug.setId(new UUID(random.nextLong(), random.nextLong()));
+            mug.setDisplayName("Mug " + i);
+            mug.setUser(users.get(i % USERS));
+            mug.setLocation(locations.get(i % LOCATIONS));
+            mugs.add(mug);
+        }
+        return mugs;
+    }
+
+    static List<Mug> mugs(int size) {
+        Random random = new Random(size);
+        List<User> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            users.add(user(random, i));
+        }
+        List<Location> locations = new ArrayList<>(LOCATIONS);
+        for (int i = 0; i < LOCATIONS; i++) {
+            locations.add(location(random, i));
+        }
+        List<Mug> mugs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            mugs.add(new Mug(new UUID(random.nextLong(), random.nextLong()), "Mug " + i,
+                    locations.get(i % LOCATIONS), users.get(i % USERS)));
+        }
+        return mugs;
+    }
+
+    static List<User> users(int size) {
+        Random random = new Random(size);
+        List<User> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(user(random, i));
+        }
+        return users;
+    }
+
+    static List<Location> locations(int size) {
+        Random random = new Random(size);
+        List<Location> locations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            locations.add(location(random, i));
+        }
+        return locations;
+    }
+
+    static List<AddressEmbeddable> addressEmbeddables(int size) {
+        List<AddressEmbeddable> addresses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            addresses.add(addressEmbeddable(i));
+        }
+        return addresses;
+    }
+
+    private static UserEntity userEntity(Random random, int i) {
+        UserEntity user = new UserEntity();
+        user.setId(new UUID(random.nextLong(), random.nextLong()));
+        user.setFirstName("First" + i);
+        user.setLastName("Last" + i);
+        user.setEmail("user" + i + "@example.com");
+        return user;
+    }
+
+    private static LocationEntity locationEntity(Random random, int i) {
+        LocationEntity location = new LocationEntity();
+        location.setId(new UUID(random.nextLong(), random.nextLong()));
+        location.setName("Location " + i);
+        location.setDescription("A place where mugs live, number " + i);
+        location.setAddress(addressEmbeddable(i));
+        location.setPhotoUrl("https://example.com/photos/" + i + ".jpg");
+        return location;
+    }
+
+    private static AddressEmbeddable addressEmbeddable(int i) {
+        AddressEmbeddable address = new AddressEmbeddable();
+        address.setLine1(i + " Main Street");
+        address.setLine2("Suite " + i);
+        address.setCity("Springfield");
+        address.setState("IL");
+        address.setZipCode("62701");
+        address.setCountry("US");
+        return address;
+    }
+
+    private static User user(Random random, int i) {
+        return new User(new UUID(random.nextLong(), random.nextLong()),
+                "First" + i, "Last" + i, "user" + i + "@example.com");
+    }
+
+    private static Location location(Random random, int i) {
+        Address address = new Address();
+        address.setLine1(i + " Main Street");
+        address.setLine2("Suite " + i);
+        address.setCity("Springfield");
+        address.setState("IL");
+        address.setZipCode("62701");
+        address.setCountry("US");
+        return new Location(new UUID(random.nextLong(), random.nextLong()), "Location " + i,
+                "A place where mugs live, number " + i, address, "https://example.com/photos/" + i + ".jpg");
+    }
+}
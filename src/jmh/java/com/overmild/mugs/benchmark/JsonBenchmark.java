@@ -0,0 +1,98 @@
+package com.overmild.mugs.benchmark;
+
+import com.overmild.mugs.model.Location;
+import com.overmild.mugs.model.Mug;
+import com.overmild.mugs.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization and deserialization of API model lists of {@code size} elements,
+ * as written and read by the controllers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"1", "100", "10000", "100000"})
+    int size;
+
+    private ObjectWriter writer;
+    private ObjectReader mugReader;
+    private ObjectReader userReader;
+    private ObjectReader locationReader;
+
+    private List<Mug> mugs;
+    private List<User> users;
+    private List<Location> locations;
+    private byte[] mugsJson;
+    private byte[] usersJson;
+    private byte[] locationsJson;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JsonMapper mapper = JsonMapper.builder().build();
+        writer = mapper.writer();
+        mugReader = mapper.readerFor(new TypeReference<List<Mug>>() { });
+        userReader = mapper.readerFor(new TypeReference<List<User>>() { });
+        locationReader = mapper.readerFor(new TypeReference<List<Location>>() { });
+
+        mugs = Fixtures.mugs(size);
+        users = Fixtures.users(size);
+        locations = Fixtures.locations(size);
+        mugsJson = writer.writeValueAsBytes(mugs);
+        usersJson = writer.writeValueAsBytes(users);
+        locationsJson = writer.writeValueAsBytes(locations);
+    }
+
+    @Benchmark
+    public byte[] serializeMugs() {
+        return writer.writeValueAsBytes(mugs);
+    }
+
+    @Benchmark
+    public byte[] serializeUsers() {
+        return writer.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public byte[] serializeLocations() {
+        return writer.writeValueAsBytes(locations);
+    }
+
+    @Benchmark
+    public List<Mug> deserializeMugs() {
+        return mugReader.readValue(mugsJson);
+    }
+
+    @Benchmark
+    public List<User> deserializeUsers() {
+        return userReader.readValue(usersJson);
+    }
+
+    @Benchmark
+    public List<Location> deserializeLocations() {
+        return locationReader.readValue(locationsJson);
+    }
+}
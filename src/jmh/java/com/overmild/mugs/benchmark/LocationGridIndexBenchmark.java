@@ -0,0 +1,72 @@
+package com.overmild.mugs.benchmark;
+
+import com.overmild.mugs.model.Address;
+import com.overmild.mugs.model.Location;
+import com.overmild.mugs.model.NearbyLocation;
+import com.overmild.mugs.service.LocationGridIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@code GET /locations/nearby} lookups against {@link LocationGridIndex} holding
+ * {@code size} locations spread over the continental United States, queried from random
+ * points in the same area.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocationGridIndexBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    private LocationGridIndex index;
+    private final Random random = new Random(7);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new LocationGridIndex(null, null, null);
+        for (int i = 0; i < size; i++) {
+            Address address = new Address();
+            address.setLatitude(randomLatitude());
+            address.setLongitude(randomLongitude());
+            index.put(new Location(new UUID(0, i), "Location " + i, null, address, null));
+        }
+    }
+
+    @Benchmark
+    public List<NearbyLocation> within5Km() {
+        return index.nearest(randomLatitude(), randomLongitude(), 5d, 50);
+    }
+
+    @Benchmark
+    public List<NearbyLocation> nearest20() {
+        return index.nearest(randomLatitude(), randomLongitude(), null, 20);
+    }
+
+    private double randomLatitude() {
+        return 25 + random.nextDouble() * 24;
+    }
+
+    private double randomLongitude() {
+        return -124 + random.nextDouble() * 57;
+    }
+}
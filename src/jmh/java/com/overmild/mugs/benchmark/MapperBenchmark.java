@@ -0,0 +1,89 @@
+package com.overmild.mugs.benchmark;
+
+import com.overmild.mugs.entity.AddressEmbeddable;
+import com.overmild.mugs.entity.MugEntity;
+import com.overmild.mugs.mapper.LocationMapper;
+import com.overmild.mugs.mapper.LocationMapperImpl;
+import com.overmild.mugs.mapper.MugMapper;
+import com.overmild.mugs.mapper.MugMapperImpl;
+import com.overmild.mugs.mapper.UserMapperImpl;
+import com.overmild.mugs.model.Mug;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the MapStruct mappers on lists of {@code size} rows. The mappers are wired by Spring
+ * exactly as in the application, so {@code MugMapper} calls through to the real
+ * {@code LocationMapper} and {@code UserMapper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+    @Param({"1", "100", "10000", "100000"})
+    int size;
+
+    private AnnotationConfigApplicationContext context;
+    private MugMapper mugMapper;
+    private LocationMapper locationMapper;
+    private List<MugEntity> mugEntities;
+    private List<Mug> mugs;
+    private List<AddressEmbeddable> addresses;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext(
+                MugMapperImpl.class, UserMapperImpl.class, LocationMapperImpl.class);
+        mugMapper = context.getBean(MugMapper.class);
+        locationMapper = context.getBean(LocationMapper.class);
+        mugEntities = Fixtures.mugEntities(size);
+        mugs = Fixtures.mugs(size);
+        addresses = Fixtures.addressEmbeddables(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void mugToModel(Blackhole blackhole) {
+        for (MugEntity entity : mugEntities) {
+            blackhole.consume(mugMapper.toModel(entity));
+        }
+    }
+
+    @Benchmark
+    public void mugToEntity(Blackhole blackhole) {
+        for (Mug mug : mugs) {
+            blackhole.consume(mugMapper.toEntity(mug));
+        }
+    }
+
+    @Benchmark
+    public void locationToAddress(Blackhole blackhole) {
+        for (AddressEmbeddable address : addresses) {
+            blackhole.consume(locationMapper.toAddress(address));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.overmild.mugs.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.overmild.mugs.config.BinaryFormatConfig;
+import com.overmild.mugs.model.Mug;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cost of sending a page of mugs as plain JSON, gzip-compressed JSON (for clients that send
+ * {@code Accept-Encoding: gzip}), CBOR and Smile (for clients that accept those formats).
+ *
+ * <p>The {@code write*} benchmarks are the server side (serialize, then compress) and the
+ * {@code read*} benchmarks the client side (decompress, then parse). The body sizes are
+ * printed once per trial, since JMH only reports times. CBOR and Smile use the mappers the
+ * server's converters are built with.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"50", "1000", "10000"})
+    int size;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private ObjectMapper cbor;
+    private ObjectMapper smile;
+    private com.fasterxml.jackson.core.type.TypeReference<List<Mug>> mugList;
+
+    private List<Mug> mugs;
+    private byte[] json;
+    private byte[] gzip;
+    private byte[] cborBody;
+    private byte[] smileBody;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JsonMapper mapper = JsonMapper.builder().build();
+        writer = mapper.writer();
+        reader = mapper.readerFor(new TypeReference<List<Mug>>() { });
+
+        cbor = BinaryFormatConfig.cborMapper(mapper);
+        smile = BinaryFormatConfig.smileMapper(mapper);
+        mugList = new com.fasterxml.jackson.core.type.TypeReference<>() { };
+
+        mugs = Fixtures.mugs(size);
+        json = writer.writeValueAsBytes(mugs);
+        gzip = writeGzip();
+        cborBody = writeCbor();
+        smileBody = writeSmile();
+        System.out.printf("%n%d mugs: json %,d bytes, gzip %,d bytes (%.1f%%), cbor %,d bytes (%.1f%%),"
+                        + " smile %,d bytes (%.1f%%)%n", size, json.length,
+                gzip.length, 100.0 * gzip.length / json.length,
+                cborBody.length, 100.0 * cborBody.length / json.length,
+                smileBody.length, 100.0 * smileBody.length / json.length);
+    }
+
+    @Benchmark
+    public byte[] writeJson() {
+        return writer.writeValueAsBytes(mugs);
+    }
+
+    @Benchmark
+    public byte[] writeGzip() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            writer.writeValue(out, mugs);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeCbor() {
+        return write(cbor);
+    }
+
+    @Benchmark
+    public byte[] writeSmile() {
+        return write(smile);
+    }
+
+    @Benchmark
+    public List<Mug> readJson() {
+        return reader.readValue(json);
+    }
+
+    @Benchmark
+    public List<Mug> readGzip() {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return reader.readValue(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Benchmark
+    public List<Mug> readCbor() {
+        return read(cbor, cborBody);
+    }
+
+    @Benchmark
+    public List<Mug> readSmile() {
+        return read(smile, smileBody);
+    }
+
+    private byte[] write(ObjectMapper mapper) {
+        try {
+            return mapper.writeValueAsBytes(mugs);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Mug> read(ObjectMapper mapper, byte[] body) {
+        try {
+            return mapper.readValue(body, mugList);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.overmild.mugs.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Closed-loop HTTP load generator used to compare request execution modes.
+ *
+ * <p>Starts {@code --concurrency} clients that each issue GETs against {@code --url}
+ * back to back for {@code --duration}, after an untimed {@code --warmup}, then prints
+ * throughput, error count and latency percentiles. Run it once against an instance
+ * started with platform threads and once against one started with
+ * {@code spring.threads.virtual.enabled=true}; see the README for the procedure.</p>
+ *
+ * <pre>
+ * ./gradlew loadTest -PloadTestArgs="--url http://localhost:8080/mugs/api/mugs --concurrency 400 --duration 30s"
+ * </pre>
+ */
+public final class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        URI url = URI.create(option(args, "--url", "http://localhost:8080/mugs/api/mugs"));
+        int concurrency = Integer.parseInt(option(args, "--concurrency", "200"));
+        Duration duration = parseDuration(option(args, "--duration", "30s"));
+        Duration warmup = parseDuration(option(args, "--warmup", "10s"));
+        String label = option(args, "--label", "run");
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(url).timeout(Duration.ofSeconds(30)).GET().build();
+
+        drive(client, request, concurrency, warmup);
+        Result result = drive(client, request, concurrency, duration);
+
+        System.out.printf("%s: %s concurrency=%d duration=%ds%n", label, url, concurrency, duration.toSeconds());
+        System.out.printf("  requests=%d errors=%d throughput=%.1f req/s%n",
+                result.count(), result.errors(), result.count() / (double) duration.toSeconds());
+        System.out.printf("  latency ms p50=%.1f p90=%.1f p99=%.1f max=%.1f%n",
+                result.percentile(50), result.percentile(90), result.percentile(99), result.percentile(100));
+    }
+
+    private static Result drive(HttpClient client, HttpRequest request, int concurrency, Duration duration)
+            throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<Worker>> futures = new ArrayList<>(concurrency);
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(workers.submit(() -> new Worker().run(client, request, deadline)));
+            }
+        }
+        List<Worker> completed = new ArrayList<>(concurrency);
+        for (Future<Worker> future : futures) {
+            completed.add(future.get());
+        }
+        return Result.of(completed);
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static Duration parseDuration(String value) {
+        return Duration.parse("PT" + value.toUpperCase());
+    }
+
+    private static final class Worker {
+
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        Worker run(HttpClient client, HttpRequest request, long deadline) {
+            while (System.nanoTime() < deadline) {
+                long start = System.nanoTime();
+                try {
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() >= 400) {
+                        errors++;
+                    }
+                } catch (Exception ex) {
+                    errors++;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+            }
+            return this;
+        }
+    }
+
+    private record Result(long[] sortedLatencies, int errors) {
+
+        static Result of(List<Worker> workers) {
+            long[] all = workers.stream()
+                    .flatMapToLong(worker -> Arrays.stream(worker.latencies, 0, worker.count))
+                    .sorted()
+                    .toArray();
+            return new Result(all, workers.stream().mapToInt(worker -> worker.errors).sum());
+        }
+
+        int count() {
+            return sortedLatencies.length;
+        }
+
+        double percentile(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(index, 0)] / 1_000_000.0;
+        }
+    }
+}
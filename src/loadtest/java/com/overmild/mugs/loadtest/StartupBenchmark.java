@@ -0,0 +1,144 @@
+package com.overmild.mugs.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how long the application takes from process start to its first successful response,
+ * once per startup mode.
+ *
+ * <p>Each mode is started {@code --runs} times on a free port and polled with GETs of
+ * {@code --path} until one returns 2xx; the process is then stopped. The modes are the boot jar
+ * as built ({@code jar}), the extracted jar ({@code extracted}), the extracted jar with a class
+ * data sharing archive ({@code cds}), with the Spring AOT-processed context ({@code aot}), and
+ * with both ({@code cds-aot}). The database must be reachable as for a normal start, through
+ * {@code SPRING_DATASOURCE_URL} and friends. Run it through Gradle, which builds the jar and
+ * archives and passes their locations:</p>
+ *
+ * <pre>
+ * ./gradlew startupBenchmark -PstartupArgs="--runs 10 --modes jar,cds-aot"
+ * </pre>
+ */
+public final class StartupBenchmark {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(5);
+
+    public static void main(String[] args) throws Exception {
+        String java = option(args, "--java", Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        Path jar = Path.of(option(args, "--jar", "build/libs/mugs-0.1.0.jar")).toAbsolutePath();
+        Path appDir = Path.of(option(args, "--app-dir", "build/cds/app")).toAbsolutePath();
+        String appJar = option(args, "--app-jar", jar.getFileName().toString());
+        String path = option(args, "--path", "/mugs/api/users");
+        int runs = Integer.parseInt(option(args, "--runs", "5"));
+        Duration timeout = Duration.parse("PT" + option(args, "--timeout", "120s").toUpperCase());
+        List<String> modes = Arrays.asList(option(args, "--modes", "jar,extracted,cds,aot,cds-aot").split(","));
+        Path cds = appDir.resolveSibling("mugs.jsa");
+        Path cdsAot = appDir.resolveSibling("mugs-aot.jsa");
+
+        Map<String, List<String>> commands = new LinkedHashMap<>();
+        commands.put("jar", List.of(java, "-jar", jar.toString()));
+        commands.put("extracted", List.of(java, "-jar", appJar));
+        commands.put("cds", List.of(java, "-XX:SharedArchiveFile=" + cds, "-jar", appJar));
+        commands.put("aot", List.of(java, "-Dspring.aot.enabled=true", "-jar", appJar));
+        commands.put("cds-aot", List.of(java, "-XX:SharedArchiveFile=" + cdsAot, "-Dspring.aot.enabled=true",
+                "-jar", appJar));
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        Path logs = Files.createDirectories(Path.of("build", "reports", "startup"));
+        Map<String, long[]> results = new LinkedHashMap<>();
+        for (String mode : modes) {
+            List<String> command = commands.get(mode);
+            if (command == null) {
+                throw new IllegalArgumentException("Unknown mode " + mode + "; expected one of " + commands.keySet());
+            }
+            long[] millis = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                millis[run] = timeToFirstRequest(client, command, appDir, path, timeout,
+                        logs.resolve(mode + ".log").toFile());
+            }
+            Arrays.sort(millis);
+            results.put(mode, millis);
+            System.out.printf("%s: %s%n", mode, Arrays.toString(millis));
+        }
+
+        double baseline = results.isEmpty() ? 0 : median(results.values().iterator().next());
+        System.out.printf("%nTime to first request, ms (%d runs, GET %s)%n", runs, path);
+        System.out.printf("  %-10s %8s %8s %8s %8s%n", "mode", "min", "median", "max", "vs first");
+        results.forEach((mode, millis) -> System.out.printf("  %-10s %8d %8.0f %8d %7.0f%%%n",
+                mode, millis[0], median(millis), millis[millis.length - 1], 100 * median(millis) / baseline));
+    }
+
+    private static long timeToFirstRequest(HttpClient client, List<String> command, Path appDir, String path,
+                                           Duration timeout, File log) throws Exception {
+        int port = freePort();
+        List<String> arguments = new ArrayList<>(command);
+        arguments.add("--server.port=" + port);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(arguments)
+                .directory(appDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+        try {
+            long deadline = start + timeout.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(String.join(" ", command) + " exited with "
+                            + process.exitValue() + "; see " + log);
+                }
+                try {
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() / 100 == 2) {
+                        return (System.nanoTime() - start) / 1_000_000;
+                    }
+                } catch (IOException notListeningYet) {
+                    // The server has not bound its port yet.
+                }
+                Thread.sleep(POLL_INTERVAL);
+            }
+            throw new IllegalStateException(String.join(" ", command) + " did not answer GET " + path
+                    + " within " + timeout + "; see " + log);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static double median(long[] sorted) {
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
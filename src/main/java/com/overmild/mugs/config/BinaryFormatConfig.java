@@ -0,0 +1,103 @@
+package com.overmild.mugs.config;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.MapperBuilder;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.springframework.boot.http.converter.autoconfigure.ServerHttpMessageConvertersCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import tools.jackson.databind.cfg.DateTimeFeature;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Serves and accepts CBOR and Smile, the binary encodings of the JSON data model, alongside
+ * JSON.
+ *
+ * <p>Clients choose the format with {@code Accept: application/cbor} or
+ * {@code application/x-jackson-smile} (and {@code Content-Type} for request bodies); without
+ * one they get JSON. The converters are built on Jackson 2's dataformat modules, as the
+ * {@code tools.jackson.dataformat} modules that Spring's {@code JacksonCborHttpMessageConverter}
+ * and {@code JacksonSmileHttpMessageConverter} need are not yet available to this build. So
+ * that both carry the same data, the Jackson 2 mappers take their serialization, deserialization
+ * and mapper features, date handling, time zone and property inclusion from the application's
+ * {@link JsonMapper}, feature by feature of the same name, and write UUIDs as strings rather
+ * than the binary form CBOR and Smile would default to. Only JSON bodies are timed for
+ * {@code Server-Timing}.</p>
+ */
+@Configuration
+public class BinaryFormatConfig {
+
+    @Bean
+    @SuppressWarnings("removal")
+    public ServerHttpMessageConvertersCustomizer binaryFormatConvertersCustomizer(JsonMapper jsonMapper) {
+        return builder -> builder
+                .withCborConverter(new MappingJackson2CborHttpMessageConverter(cborMapper(jsonMapper)))
+                .withSmileConverter(new MappingJackson2SmileHttpMessageConverter(smileMapper(jsonMapper)));
+    }
+
+    /**
+     * Returns a CBOR mapper configured like {@code settings}.
+     */
+    public static CBORMapper cborMapper(JsonMapper settings) {
+        return configure(CBORMapper.builder(), settings);
+    }
+
+    /**
+     * Returns a Smile mapper configured like {@code settings}.
+     */
+    public static SmileMapper smileMapper(JsonMapper settings) {
+        return configure(SmileMapper.builder(), settings);
+    }
+
+    private static <M extends ObjectMapper, B extends MapperBuilder<M, B>> M configure(B builder,
+                                                                                       JsonMapper settings) {
+        for (SerializationFeature feature : SerializationFeature.values()) {
+            isEnabled(settings, feature.name()).ifPresent(enabled -> builder.configure(feature, enabled));
+        }
+        for (DeserializationFeature feature : DeserializationFeature.values()) {
+            isEnabled(settings, feature.name()).ifPresent(enabled -> builder.configure(feature, enabled));
+        }
+        for (MapperFeature feature : MapperFeature.values()) {
+            isEnabled(settings, feature.name()).ifPresent(enabled -> builder.configure(feature, enabled));
+        }
+        if (settings.serializationConfig().hasExplicitTimeZone()) {
+            builder.defaultTimeZone(settings.serializationConfig().getTimeZone());
+        }
+        return builder.findAndAddModules()
+                .defaultPropertyInclusion(settings.serializationConfig().getDefaultPropertyInclusion())
+                .withConfigOverride(UUID.class,
+                        uuid -> uuid.setFormat(JsonFormat.Value.forShape(JsonFormat.Shape.STRING)))
+                .build();
+    }
+
+    /**
+     * Returns whether {@code settings} enables the Jackson 3 feature of the given name, or empty
+     * when Jackson 3 has none. Jackson 3 moved the date features of Jackson 2's serialization and
+     * deserialization features to {@link DateTimeFeature}.
+     */
+    private static Optional<Boolean> isEnabled(JsonMapper settings, String name) {
+        return find(tools.jackson.databind.SerializationFeature.class, name).map(settings::isEnabled)
+                .or(() -> find(tools.jackson.databind.DeserializationFeature.class, name).map(settings::isEnabled))
+                .or(() -> find(tools.jackson.databind.MapperFeature.class, name).map(settings::isEnabled))
+                .or(() -> find(DateTimeFeature.class, name).map(settings::isEnabled));
+    }
+
+    private static <E extends Enum<E>> Optional<E> find(Class<E> type, String name) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equals(name)) {
+                return Optional.of(constant);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,58 @@
+package com.overmild.mugs.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.overmild.mugs.entity.LocationEntity;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Configures Hibernate's second-level cache on top of an in-process Caffeine JCache.
+ *
+ * <p>Only entities annotated with {@code @Cacheable} are cached, and each cached entity
+ * gets its own bounded region created here, so an entity cannot be cached without an
+ * explicit size and expiry. Every region records hit/miss statistics, which JCache
+ * publishes as a {@code javax.cache:type=CacheStatistics} MXBean.</p>
+ */
+@Configuration
+@EnableConfigurationProperties(LocationCacheProperties.class)
+public class CacheConfig {
+
+    /**
+     * Creates a cache manager owned by this application context, under a URI of its own rather
+     * than the provider's shared default, so closing it on shutdown cannot pull the regions out
+     * from under another context in the same JVM.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager jCacheManager(LocationCacheProperties locationCache) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(
+                URI.create("mugs:" + UUID.randomUUID()), provider.getDefaultClassLoader());
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(locationCache.maximumSize()));
+        configuration.setExpireAfterWrite(OptionalLong.of(locationCache.timeToLive().toNanos()));
+        configuration.setStatisticsEnabled(true);
+        cacheManager.createCache(LocationEntity.CACHE_REGION, configuration);
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager jCacheManager) {
+        return properties -> {
+            properties.put("hibernate.cache.use_second_level_cache", true);
+            properties.put("hibernate.cache.region.factory_class", "jcache");
+            properties.put("hibernate.javax.cache.cache_manager", jCacheManager);
+            // Fail at startup rather than silently creating an unbounded region.
+            properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+        };
+    }
+}
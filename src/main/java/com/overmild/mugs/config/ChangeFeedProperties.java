@@ -0,0 +1,21 @@
+package com.overmild.mugs.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Limits of the {@code GET /changes} event stream.
+ *
+ * @param bufferSize        events held for a subscriber that has not caught up; beyond this the
+ *                          oldest are dropped and the subscriber is told to resynchronize
+ * @param replaySize        most recent events kept for clients resuming with {@code Last-Event-ID}
+ * @param heartbeatInterval how often an idle stream gets a comment, to keep proxies from closing it
+ */
+@ConfigurationProperties("mugs.changes")
+public record ChangeFeedProperties(
+        @DefaultValue("256") int bufferSize,
+        @DefaultValue("1000") int replaySize,
+        @DefaultValue("15s") Duration heartbeatInterval) {
+}
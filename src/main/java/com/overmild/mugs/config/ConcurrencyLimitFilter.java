@@ -0,0 +1,168 @@
+package com.overmild.mugs.config;
+
+import com.overmild.mugs.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.RequestPath;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sheds load before it reaches the controllers.
+ *
+ * <p>Every controller route, a request method plus a mapped path pattern such as
+ * {@code GET /mugs/{id}}, gets its own {@link GradientLimit}, so a slow search does not eat into
+ * the limit of a fast lookup under the same path. Requests are matched to their route through
+ * the {@link RequestMappingHandlerMapping} itself, the same way the dispatcher will resolve their
+ * handler. A request arriving while its route is at the limit is turned away at once with a
+ * {@link ServiceUnavailableException}, rendered by {@code GlobalExceptionHandler} as {@code 503}
+ * with {@code Retry-After}, rather than queueing for a database connection. Paths not served by
+ * a controller, such as the actuator endpoints, are never limited.</p>
+ *
+ * <p>Streaming responses hold their slot only until the handler returns, so a long-lived
+ * {@code GET /changes} subscription does not count against its route.</p>
+ *
+ * <p>Runs after Spring's observation filter, so rejected requests still show up in
+ * {@code http.server.requests}.</p>
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@EnableConfigurationProperties(ConcurrencyLimitProperties.class)
+@RequiredArgsConstructor
+public class ConcurrencyLimitFilter extends OncePerRequestFilter implements SmartInitializingSingleton {
+
+    private final ConcurrencyLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ApplicationContext context;
+
+    private Map<String, Route> routes = Map.of();
+    private RequestMappingHandlerMapping handlerMapping;
+    private HandlerExceptionResolver exceptionResolver;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!properties.enabled()) {
+            return;
+        }
+        Map<String, Route> registered = new HashMap<>();
+        handlerMapping = context.getBean("requestMappingHandlerMapping", RequestMappingHandlerMapping.class);
+        handlerMapping.getHandlerMethods().keySet().forEach(info -> {
+            for (RequestMethod method : info.getMethodsCondition().getMethods()) {
+                for (String pattern : info.getPatternValues()) {
+                    registered.computeIfAbsent(method.name() + " " + pattern, this::register);
+                }
+            }
+        });
+        exceptionResolver = context.getBean("handlerExceptionResolver", HandlerExceptionResolver.class);
+        routes = Map.copyOf(registered);
+        log.info("Limiting concurrency of {} routes", routes.size());
+    }
+
+    GradientLimit getLimit(String route) {
+        return routes.get(route).limit();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String name = matchingRoute(request);
+        Route route = name == null ? null : routes.get(name);
+        if (route == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        GradientLimit limit = route.limit();
+        if (!limit.tryAcquire()) {
+            route.rejected().increment();
+            reject(request, response, name);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = !request.isAsyncStarted();
+        } finally {
+            if (completed) {
+                limit.release(System.nanoTime() - start);
+            } else {
+                limit.release();
+            }
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, String route) throws IOException {
+        ServiceUnavailableException ex = new ServiceUnavailableException(
+                "Too many concurrent " + route + " requests", properties.retryAfter());
+        if (exceptionResolver.resolveException(request, response, null, ex) == null) {
+            // No error body the client accepts, e.g. a text/event-stream subscriber.
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, properties.retryAfter().toSeconds())));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private Route register(String route) {
+        GradientLimit limit = new GradientLimit(properties);
+        Gauge.builder("mugs.concurrency.limit", limit, GradientLimit::getLimit)
+                .description("Concurrent requests the route currently admits")
+                .tag("route", route)
+                .register(meterRegistry);
+        Gauge.builder("mugs.concurrency.in.flight", limit, GradientLimit::getInFlight)
+                .description("Requests the route is currently serving")
+                .tag("route", route)
+                .register(meterRegistry);
+        Counter rejected = Counter.builder("mugs.concurrency.rejected")
+                .description("Requests turned away because the route was at its limit")
+                .tag("route", route)
+                .register(meterRegistry);
+        return new Route(limit, rejected);
+    }
+
+    /**
+     * Resolves the request's handler ahead of the dispatcher and returns its method plus the
+     * pattern it matched, or {@code null} when no controller serves it. Requests the mapping
+     * turns down, such as an unsupported media type, are left for the dispatcher to reject.
+     */
+    private String matchingRoute(HttpServletRequest request) {
+        RequestPath previous = ServletRequestPathUtils.hasParsedRequestPath(request)
+                ? ServletRequestPathUtils.getParsedRequestPath(request) : null;
+        ServletRequestPathUtils.parseAndCache(request);
+        try {
+            if (handlerMapping.getHandler(request) == null) {
+                return null;
+            }
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            return pattern == null ? null : request.getMethod() + " " + pattern;
+        } catch (Exception notMatched) {
+            return null;
+        } finally {
+            ServletRequestPathUtils.setParsedRequestPath(previous, request);
+        }
+    }
+
+    private record Route(GradientLimit limit, Counter rejected) {
+    }
+}
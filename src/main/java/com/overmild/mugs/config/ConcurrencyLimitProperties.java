@@ -0,0 +1,29 @@
+package com.overmild.mugs.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Adaptive per-route concurrency limits applied by {@link ConcurrencyLimitFilter}.
+ *
+ * @param enabled      whether requests are limited at all
+ * @param initialLimit concurrent requests a route admits before any latency has been observed
+ * @param minLimit     lowest the limit of a route can fall
+ * @param maxLimit     highest the limit of a route can rise
+ * @param tolerance    how many times its long-term average latency a route may take before
+ *                     its limit starts to shrink
+ * @param smoothing    fraction of each new estimate applied to the limit
+ * @param retryAfter   sent as {@code Retry-After} on rejected requests
+ */
+@ConfigurationProperties("mugs.concurrency-limit")
+public record ConcurrencyLimitProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("20") int initialLimit,
+        @DefaultValue("4") int minLimit,
+        @DefaultValue("200") int maxLimit,
+        @DefaultValue("1.5") double tolerance,
+        @DefaultValue("0.2") double smoothing,
+        @DefaultValue("1s") Duration retryAfter) {
+}
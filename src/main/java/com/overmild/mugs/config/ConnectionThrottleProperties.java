@@ -0,0 +1,19 @@
+package com.overmild.mugs.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Limits on how many request threads may hold or wait for a pooled connection when requests
+ * run on virtual threads.
+ *
+ * @param permits        connections that may be checked out at once; {@code 0} uses the pool's maximum size
+ * @param acquireTimeout how long a thread waits for a permit before the request fails
+ */
+@ConfigurationProperties("mugs.datasource.throttle")
+public record ConnectionThrottleProperties(
+        @DefaultValue("0") int permits,
+        @DefaultValue("5s") Duration acquireTimeout) {
+}
@@ -0,0 +1,91 @@
+package com.overmild.mugs.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrency limit that follows observed latency, after the gradient algorithm of
+ * Netflix's concurrency-limits library.
+ *
+ * <p>Every completed request compares its latency with a long-term exponential average. While
+ * latency stays within {@code tolerance} times the average the limit grows by about its square
+ * root; as latency rises past that the limit shrinks in proportion, by at most half. Requests
+ * completing while less than half the limit is in use leave it alone, so a lightly used route
+ * does not drift up to the maximum.</p>
+ */
+public class GradientLimit {
+
+    /** Weight of one sample in the long-term average, about a 600-sample window. */
+    private static final double LONG_RTT_WEIGHT = 2.0 / 601;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile double limit;
+    private double longRtt;
+
+    public GradientLimit(ConcurrencyLimitProperties properties) {
+        this.minLimit = properties.minLimit();
+        this.maxLimit = properties.maxLimit();
+        this.tolerance = properties.tolerance();
+        this.smoothing = properties.smoothing();
+        this.limit = Math.clamp(properties.initialLimit(), minLimit, maxLimit);
+    }
+
+    /**
+     * Takes a slot if fewer requests than the limit are in flight. Every successful call must be
+     * followed by one of the {@code release} methods.
+     */
+    public boolean tryAcquire() {
+        int max = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= max) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Releases a slot and adjusts the limit to the request's latency. */
+    public void release(long latencyNanos) {
+        update(Math.max(latencyNanos, 1), inFlight.getAndDecrement());
+    }
+
+    /** Releases a slot without sampling, for requests whose latency says nothing about load. */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void update(double rtt, int inFlightAtCompletion) {
+        lock.lock();
+        try {
+            longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) * LONG_RTT_WEIGHT;
+            if (longRtt / rtt > 2) {
+                // Latency is back to normal after an overload; forget the inflated average sooner.
+                longRtt *= 0.95;
+            }
+            if (inFlightAtCompletion < limit / 2) {
+                return;
+            }
+            double gradient = Math.clamp(tolerance * longRtt / rtt, 0.5, 1.0);
+            double estimate = limit * gradient + Math.sqrt(limit);
+            limit = Math.clamp(limit * (1 - smoothing) + estimate * smoothing, minLimit, maxLimit);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.overmild.mugs.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Sizing and expiry of the second-level cache region that holds locations.
+ *
+ * @param maximumSize maximum number of locations kept in memory before the least valuable are evicted
+ * @param timeToLive  how long a cached location is kept after it was loaded or last written
+ */
+@ConfigurationProperties("mugs.cache.locations")
+public record LocationCacheProperties(
+        @DefaultValue("10000") long maximumSize,
+        @DefaultValue("10m") Duration timeToLive) {
+}
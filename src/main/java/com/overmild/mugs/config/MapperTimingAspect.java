@@ -0,0 +1,29 @@
+package com.overmild.mugs.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the time spent in the MapStruct mappers to the {@link RequestTrace} of the current
+ * request. Any lazy loading a mapper triggers is counted as mapping as well as SQL time.
+ */
+@Aspect
+@Component
+public class MapperTimingAspect {
+
+    @Around("within(com.overmild.mugs.mapper..*)")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        RequestTrace trace = RequestTrace.current();
+        if (trace == null) {
+            return joinPoint.proceed();
+        }
+        trace.mappingStarted();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            trace.mappingEnded();
+        }
+    }
+}
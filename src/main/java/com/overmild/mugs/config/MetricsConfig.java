@@ -0,0 +1,73 @@
+package com.overmild.mugs.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes Hibernate session-factory statistics as Micrometer meters.
+ *
+ * <p>Requires {@code hibernate.generate_statistics}. Meter names follow Hibernate's own
+ * {@code HibernateMetrics} binder, which is not published for the Hibernate version in use,
+ * so dashboards built against it keep working.</p>
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder hibernateStatisticsMetrics(EntityManagerFactory entityManagerFactory) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        return registry -> {
+            counter(registry, statistics, "hibernate.query.executions", "Queries executed",
+                    Statistics::getQueryExecutionCount);
+            TimeGauge.builder("hibernate.query.executions.max", statistics, TimeUnit.MILLISECONDS,
+                            Statistics::getQueryExecutionMaxTime)
+                    .description("Slowest query execution time")
+                    .register(registry);
+            counter(registry, statistics, "hibernate.statements", "Statements prepared",
+                    Statistics::getPrepareStatementCount);
+            counter(registry, statistics, "hibernate.entities.loads", "Entities loaded",
+                    Statistics::getEntityLoadCount);
+            counter(registry, statistics, "hibernate.entities.fetches", "Entities fetched lazily",
+                    Statistics::getEntityFetchCount);
+            counter(registry, statistics, "hibernate.collections.loads", "Collections loaded",
+                    Statistics::getCollectionLoadCount);
+            counter(registry, statistics, "hibernate.flushes", "Session flushes",
+                    Statistics::getFlushCount);
+            counter(registry, statistics, "hibernate.transactions", "Transactions completed",
+                    Statistics::getTransactionCount);
+            counter(registry, statistics, "hibernate.sessions.open", "Sessions opened",
+                    Statistics::getSessionOpenCount);
+            counter(registry, statistics, "hibernate.connections.obtained", "JDBC connections obtained",
+                    Statistics::getConnectCount);
+            cacheCounter(registry, statistics, "hit", Statistics::getSecondLevelCacheHitCount);
+            cacheCounter(registry, statistics, "miss", Statistics::getSecondLevelCacheMissCount);
+            counter(registry, statistics, "hibernate.second.level.cache.puts",
+                    "Entries put into the second-level cache", Statistics::getSecondLevelCachePutCount);
+        };
+    }
+
+    private static void counter(MeterRegistry registry, Statistics statistics, String name, String description,
+                                ToDoubleFunction<Statistics> count) {
+        FunctionCounter.builder(name, statistics, count)
+                .description(description)
+                .register(registry);
+    }
+
+    private static void cacheCounter(MeterRegistry registry, Statistics statistics, String result,
+                                     ToDoubleFunction<Statistics> count) {
+        FunctionCounter.builder("hibernate.second.level.cache.requests", statistics, count)
+                .description("Second-level cache lookups")
+                .tag("result", result)
+                .register(registry);
+    }
+}
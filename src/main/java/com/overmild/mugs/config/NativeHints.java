@@ -0,0 +1,65 @@
+package com.overmild.mugs.config;
+
+import com.overmild.mugs.entity.AddressEmbeddable;
+import com.overmild.mugs.entity.LocationEntity;
+import com.overmild.mugs.entity.MugCountEntity;
+import com.overmild.mugs.entity.MugEntity;
+import com.overmild.mugs.entity.UserEntity;
+import com.overmild.mugs.model.BatchGetResult;
+import com.overmild.mugs.model.ChangeEvent;
+import com.overmild.mugs.model.CursorPage;
+import com.overmild.mugs.model.Location;
+import com.overmild.mugs.model.Mug;
+import com.overmild.mugs.model.MugCount;
+import com.overmild.mugs.model.MugImportResult;
+import com.overmild.mugs.model.NearbyLocation;
+import com.overmild.mugs.model.PurgeJob;
+import com.overmild.mugs.model.User;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.stream.Stream;
+
+/**
+ * Reflection a native image of the application needs beyond what Spring AOT infers from the
+ * bean definitions and controller signatures.
+ *
+ * <ul>
+ *     <li>Entities, whose fields and constructors Hibernate reaches reflectively.</li>
+ *     <li>The MapStruct implementations, generated by the annotation processor and so only
+ *     known by name here.</li>
+ *     <li>Models written as JSON outside a controller's return type: streamed exports,
+ *     {@code /changes} events and background purge results.</li>
+ *     <li>{@link RequestTraceSessionListener}, which Hibernate instantiates from its class
+ *     name.</li>
+ * </ul>
+ *
+ * <p>Only read when the application is processed ahead of time; see "Startup" in the README.</p>
+ */
+public class NativeHints implements RuntimeHintsRegistrar {
+
+    private static final String[] MAPPERS = {
+            "com.overmild.mugs.mapper.UserMapperImpl",
+            "com.overmild.mugs.mapper.LocationMapperImpl",
+            "com.overmild.mugs.mapper.MugMapperImpl"
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        Stream.of(UserEntity.class, LocationEntity.class, MugEntity.class, MugCountEntity.class, AddressEmbeddable.class)
+                .forEach(entity -> hints.reflection().registerType(entity,
+                        MemberCategory.ACCESS_DECLARED_FIELDS,
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                        MemberCategory.INVOKE_DECLARED_METHODS));
+        for (String mapper : MAPPERS) {
+            hints.reflection().registerType(TypeReference.of(mapper), MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        }
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                User.class, Location.class, Mug.class, NearbyLocation.class, MugCount.class, CursorPage.class,
+                BatchGetResult.class, ChangeEvent.class, ChangeEvent.Bulk.class, MugImportResult.class, PurgeJob.class);
+        hints.reflection().registerType(RequestTraceSessionListener.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+    }
+}
@@ -0,0 +1,21 @@
+package com.overmild.mugs.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * When and how deleting a user or location purges its mugs.
+ *
+ * @param syncThreshold most mugs deleted within the {@code DELETE} request; owners with more
+ *                      are purged by a background job
+ * @param chunkSize     mugs deleted per transaction by a background purge
+ * @param retention     how long a finished purge stays visible at {@code GET /purges/{id}}
+ */
+@ConfigurationProperties("mugs.purge")
+public record PurgeProperties(
+        @DefaultValue("1000") long syncThreshold,
+        @DefaultValue("500") int chunkSize,
+        @DefaultValue("1h") Duration retention) {
+}
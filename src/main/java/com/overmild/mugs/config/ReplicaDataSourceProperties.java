@@ -0,0 +1,23 @@
+package com.overmild.mugs.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Connection settings for the read replica that read-only transactions are routed to.
+ * Pool settings are bound separately from {@code mugs.datasource.replica.hikari}.
+ *
+ * @param url           JDBC URL of the replica; routing is enabled only when this is set
+ * @param username      login username of the replica
+ * @param password      login password of the replica
+ * @param retryInterval how long reads stay on the primary after the replica fails to hand out a connection
+ */
+@ConfigurationProperties("mugs.datasource.replica")
+public record ReplicaDataSourceProperties(
+        String url,
+        String username,
+        String password,
+        @DefaultValue("30s") Duration retryInterval) {
+}
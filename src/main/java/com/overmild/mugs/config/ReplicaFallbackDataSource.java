@@ -0,0 +1,94 @@
+package com.overmild.mugs.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.time.Duration;
+
+/**
+ * Hands out connections from a read replica, or from the primary while the replica is unavailable.
+ *
+ * <p>When the replica cannot be reached the request is served from the primary instead, and the
+ * replica is not tried again until the retry interval has passed. An outage therefore costs one
+ * connection timeout per interval rather than one per read.</p>
+ *
+ * <p>Only connectivity failures count as an outage: SQLState class {@code 08} or a
+ * {@link SQLNonTransientConnectionException} anywhere in the cause chain. Hikari reports a pool
+ * that could not connect with the driver's {@code 08} state, while a pool that is merely
+ * exhausted, or a {@link ConnectionThrottlingDataSource} permit that timed out, carries none.
+ * Those are rethrown: a busy replica should shed load, not push every read onto the primary.</p>
+ */
+@Slf4j
+public class ReplicaFallbackDataSource extends DelegatingDataSource {
+
+    private final DataSource primary;
+    private final Duration retryInterval;
+    private volatile long retryAt = System.nanoTime();
+
+    public ReplicaFallbackDataSource(DataSource replica, DataSource primary, Duration retryInterval) {
+        super(replica);
+        this.primary = primary;
+        this.retryInterval = retryInterval;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (replicaSuspended()) {
+            return primary.getConnection();
+        }
+        try {
+            return super.getConnection();
+        } catch (SQLException ex) {
+            if (!isConnectivityFailure(ex)) {
+                throw ex;
+            }
+            suspendReplica(ex);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (replicaSuspended()) {
+            return primary.getConnection(username, password);
+        }
+        try {
+            return super.getConnection(username, password);
+        } catch (SQLException ex) {
+            if (!isConnectivityFailure(ex)) {
+                throw ex;
+            }
+            suspendReplica(ex);
+            return primary.getConnection(username, password);
+        }
+    }
+
+    /**
+     * Whether reads are currently being served from the primary because the replica failed.
+     */
+    public boolean replicaSuspended() {
+        return System.nanoTime() - retryAt < 0;
+    }
+
+    static boolean isConnectivityFailure(SQLException ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (cause instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void suspendReplica(SQLException ex) {
+        retryAt = System.nanoTime() + retryInterval.toNanos();
+        log.warn("Read replica unavailable, reading from the primary for the next {}: {}",
+                retryInterval, ex.getMessage());
+    }
+}
@@ -0,0 +1,101 @@
+package com.overmild.mugs.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.http.converter.autoconfigure.ServerHttpMessageConvertersCustomizer;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.boot.web.server.autoconfigure.ServerProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.converter.json.JacksonJsonHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Gives every request an id and a {@link RequestTrace}.
+ *
+ * <p>The id is taken from an incoming {@value #REQUEST_ID} header, if it is a plausible id,
+ * or generated. It is echoed in the response and put in the logging MDC as
+ * {@value #MDC_KEY}, so every log line of the request can be found by it.</p>
+ *
+ * <p>Depending on {@code mugs.trace.server-timing}, the response gets a {@code Server-Timing}
+ * header with the SQL, connection-pool, mapping and serialization time of the request. JSON
+ * bodies are then buffered to time their serialization; see
+ * {@link TracingJsonHttpMessageConverter}. Runs ahead of {@link ConcurrencyLimitFilter}, so
+ * rejected requests are logged with their id too.</p>
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+@EnableConfigurationProperties(RequestTraceProperties.class)
+public class RequestTraceFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_ID = "X-Request-Id";
+    public static final String SERVER_TIMING_REQUEST = "X-Server-Timing";
+    public static final String MDC_KEY = "requestId";
+
+    private static final Pattern VALID_REQUEST_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private final RequestTraceProperties properties;
+
+    public RequestTraceFilter(RequestTraceProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Replaces the JSON converter with one that times serialization and sends bodies too small
+     * to compress with a {@code Content-Length}.
+     */
+    @Bean
+    static ServerHttpMessageConvertersCustomizer tracingJsonConverterCustomizer(ServerProperties server) {
+        Compression compression = server.getCompression();
+        int bufferSize = compression.getEnabled() ? (int) compression.getMinResponseSize().toBytes() : 0;
+        return builder -> builder.configureMessageConvertersList(converters -> converters.replaceAll(converter ->
+                converter instanceof JacksonJsonHttpMessageConverter json
+                        && !(converter instanceof TracingJsonHttpMessageConverter)
+                        ? new TracingJsonHttpMessageConverter(json, bufferSize)
+                        : converter));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String requestId = requestId(request);
+        response.setHeader(REQUEST_ID, requestId);
+        MDC.put(MDC_KEY, requestId);
+        RequestTrace trace = RequestTrace.start(switch (properties.serverTiming()) {
+            case NEVER -> false;
+            case ON_REQUEST -> request.getHeader(SERVER_TIMING_REQUEST) != null;
+            case ALWAYS -> true;
+        });
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (trace.isServerTiming() && !trace.isReported() && !response.isCommitted()) {
+                response.setHeader(RequestTrace.SERVER_TIMING, trace.report());
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("{} {} {}: {}", request.getMethod(), request.getRequestURI(), response.getStatus(), trace);
+            }
+            RequestTrace.end();
+            MDC.remove(MDC_KEY);
+        }
+    }
+
+    private static String requestId(HttpServletRequest request) {
+        String requestId = request.getHeader(REQUEST_ID);
+        return requestId != null && VALID_REQUEST_ID.matcher(requestId).matches()
+                ? requestId
+                : UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.overmild.mugs.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * When responses carry the {@code Server-Timing} header recorded by {@link RequestTrace}.
+ *
+ * @param serverTiming which responses get the header
+ */
+@ConfigurationProperties("mugs.trace")
+public record RequestTraceProperties(
+        @DefaultValue("on-request") ServerTiming serverTiming) {
+
+    public enum ServerTiming {
+        /** Never send the header. */
+        NEVER,
+        /** Send it when the request has an {@code X-Server-Timing} header. */
+        ON_REQUEST,
+        /** Send it on every response. */
+        ALWAYS
+    }
+}
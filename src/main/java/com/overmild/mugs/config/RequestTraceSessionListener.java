@@ -0,0 +1,51 @@
+package com.overmild.mugs.config;
+
+import org.hibernate.SessionEventListener;
+
+/**
+ * Adds the SQL statements of a Hibernate session, and the time it waited for a connection, to
+ * the {@link RequestTrace} of the current request.
+ *
+ * <p>Hibernate creates one per session from {@code hibernate.session.events.auto}.</p>
+ */
+public class RequestTraceSessionListener implements SessionEventListener {
+
+    private long statementStart;
+    private long acquisitionStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+            trace.statementExecuted(System.nanoTime() - statementStart);
+        }
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        jdbcExecuteStatementStart();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        jdbcExecuteStatementEnd();
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionStart() {
+        acquisitionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionEnd() {
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+            trace.connectionAcquired(System.nanoTime() - acquisitionStart);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.overmild.mugs.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * How callers coalesced by {@code SingleFlight} wait for a load started by another caller.
+ *
+ * @param timeout how long a caller waits for another caller's load before the request fails
+ */
+@ConfigurationProperties("mugs.single-flight")
+public record SingleFlightProperties(
+        @DefaultValue("5s") Duration timeout) {
+}
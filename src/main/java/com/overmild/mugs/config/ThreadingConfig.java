@@ -0,0 +1,53 @@
+package com.overmild.mugs.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Request, {@code @Async} and {@code @Scheduled} execution.
+ *
+ * <p>Setting {@code spring.threads.virtual.enabled=true} makes Tomcat, streaming responses and
+ * {@code @Async} methods run on virtual threads. In that mode every Hikari pool (the
+ * {@code dataSource}, or the primary and replica pools when {@link DataSourceRoutingConfig} is
+ * active) is wrapped in a {@link ConnectionThrottlingDataSource} sized to that pool, so unbounded
+ * request concurrency turns into an orderly queue for connections rather than a stampede on the
+ * pool.</p>
+ *
+ * <p>The application's own code guards shared state with {@code java.util.concurrent} types
+ * rather than {@code synchronized}, so it does not pin carrier threads while blocked. Libraries
+ * on the data path, such as the JDBC driver and Hibernate, may still synchronize, and on Java 21
+ * a virtual thread blocking inside them pins its carrier.</p>
+ */
+@Slf4j
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class ThreadingConfig {
+
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    static BeanPostProcessor connectionThrottlingPostProcessor(Environment environment) {
+        ConnectionThrottleProperties throttle = Binder.get(environment)
+                .bindOrCreate("mugs.datasource.throttle", ConnectionThrottleProperties.class);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof HikariDataSource pool)) {
+                    return bean;
+                }
+                int permits = throttle.permits() > 0 ? throttle.permits() : pool.getMaximumPoolSize();
+                log.info("Throttling {} to {} concurrent connections", beanName, permits);
+                return new ConnectionThrottlingDataSource(pool, permits, throttle.acquireTimeout());
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package com.overmild.mugs.config;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.JacksonJsonHttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Writes JSON like the converter it replaces, timing serialization for the {@link RequestTrace}.
+ *
+ * <p>The {@code Server-Timing} header has to be sent before the body, so for a request that
+ * asked for it the body is serialized into memory first, timed, and copied to the response after
+ * the header. Other requests are written straight through once their body outgrows
+ * {@code bufferSize} bytes; a shorter body is held back and sent with a {@code Content-Length},
+ * which is what lets the connector skip compressing it (see
+ * {@code server.compression.min-response-size}). Jackson flushes the response after every body,
+ * so without this Tomcat never learns the length of one.</p>
+ */
+public class TracingJsonHttpMessageConverter extends JacksonJsonHttpMessageConverter {
+
+    private final int bufferSize;
+
+    public TracingJsonHttpMessageConverter(JacksonJsonHttpMessageConverter converter, int bufferSize) {
+        super(converter.getMapper());
+        setSupportedMediaTypes(converter.getSupportedMediaTypes());
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    protected void writeInternal(Object object, ResolvableType resolvableType, HttpOutputMessage outputMessage,
+                                 Map<String, Object> hints) throws IOException {
+        RequestTrace trace = RequestTrace.current();
+        if (trace == null || !trace.isServerTiming() || trace.isReported()) {
+            SizingOutputStream body = new SizingOutputStream(outputMessage, bufferSize);
+            super.writeInternal(object, resolvableType, withBody(outputMessage, body), hints);
+            body.finish();
+            return;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        super.writeInternal(object, resolvableType, withBody(outputMessage, body), hints);
+        trace.serialized(System.nanoTime() - start);
+        outputMessage.getHeaders().set(RequestTrace.SERVER_TIMING, trace.report());
+        outputMessage.getHeaders().setContentLength(body.size());
+        body.writeTo(outputMessage.getBody());
+    }
+
+    private static HttpOutputMessage withBody(HttpOutputMessage outputMessage, OutputStream body) {
+        return new HttpOutputMessage() {
+            @Override
+            public OutputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return outputMessage.getHeaders();
+            }
+        };
+    }
+
+    /**
+     * Buffers the start of a body and switches to the response's own stream, sending the
+     * headers, once it is longer than the buffer. Flushes are ignored until then.
+     */
+    private static final class SizingOutputStream extends OutputStream {
+
+        private final HttpOutputMessage outputMessage;
+        private final int bufferSize;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream out;
+
+        SizingOutputStream(HttpOutputMessage outputMessage, int bufferSize) {
+            this.outputMessage = outputMessage;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (out == null) {
+                if (buffer.size() + length <= bufferSize) {
+                    buffer.write(bytes, offset, length);
+                    return;
+                }
+                out = outputMessage.getBody();
+                buffer.writeTo(out);
+            }
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            // The response stream is closed by the container.
+        }
+
+        void finish() throws IOException {
+            if (out == null) {
+                outputMessage.getHeaders().setContentLength(buffer.size());
+                buffer.writeTo(outputMessage.getBody());
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.overmild.mugs.controller;
+
+import com.overmild.mugs.service.ChangeFeed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * REST controller that streams changes to mugs, users and locations as Server-Sent Events.
+ *
+ * <p>Endpoints:
+ * <ul>
+ *   <li>GET    /changes        - stream create, update and delete events</li>
+ * </ul>
+ *
+ * The controller delegates to {@link ChangeFeed}.
+ */
+@RestController
+@RequiredArgsConstructor
+public class ChangeFeedController {
+
+    private final ChangeFeed changeFeed;
+
+    /**
+     * Stream changes as they are committed. Each event is named {@code <resource>.<type>},
+     * e.g. {@code mug.updated}, and carries a {@link com.overmild.mugs.model.ChangeEvent} as JSON.
+     *
+     * @param lastEventId id of the last event received before a reconnect, sent automatically
+     *                    by {@code EventSource}; missed events are replayed, or a {@code reset}
+     *                    event is sent if they are no longer available.
+     * @return the event stream.
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = new SseEmitter();
+        changeFeed.subscribe(emitter, lastEventId);
+        return emitter;
+    }
+}
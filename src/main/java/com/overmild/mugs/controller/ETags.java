@@ -0,0 +1,51 @@
+package com.overmild.mugs.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Builds strong entity tags from modification timestamps and collection versions.
+ *
+ * <p>Timestamps are reduced to microseconds, the precision the database stores, so a
+ * tag computed from a freshly written entity matches one computed after reloading it.</p>
+ */
+final class ETags {
+
+    private static final int VARIANT_LENGTH = 16;
+
+    private ETags() {
+    }
+
+    /**
+     * Entity tag for a single resource.
+     */
+    static String of(UUID id, Instant modifiedAt) {
+        return "\"" + id + "-" + micros(modifiedAt) + "\"";
+    }
+
+    /**
+     * Entity tag for one representation of a collection: its version plus a digest of the
+     * request's query parameters and {@code Accept} header, so two pages, filters, field
+     * selections or formats of the same collection never share a tag.
+     */
+    static String of(long version, WebRequest request) {
+        StringBuilder variant = new StringBuilder();
+        new TreeMap<>(request.getParameterMap()).forEach((name, values) ->
+                variant.append(name).append('=').append(Arrays.toString(values)).append('&'));
+        variant.append(request.getHeader(HttpHeaders.ACCEPT));
+        String digest = DigestUtils.md5DigestAsHex(variant.toString().getBytes(StandardCharsets.UTF_8));
+        return "\"" + version + "-" + digest.substring(0, VARIANT_LENGTH) + "\"";
+    }
+
+    private static long micros(Instant instant) {
+        return instant == null ? 0 : ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+}
@@ -1,11 +1,23 @@
 package com.overmild.mugs.controller;
 
+import com.overmild.mugs.model.BatchGetRequest;
+import com.overmild.mugs.model.BatchGetResult;
+import com.overmild.mugs.model.CursorPage;
 import com.overmild.mugs.model.Location;
+import com.overmild.mugs.model.LocationFilter;
+import com.overmild.mugs.model.MugCount;
+import com.overmild.mugs.model.NearbyLocation;
+import com.overmild.mugs.model.PurgeJob;
+import com.overmild.mugs.service.JsonMergePatch;
+import com.overmild.mugs.service.KeysetCursor;
 import com.overmild.mugs.service.LocationService;
+import com.overmild.mugs.service.MugService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import tools.jackson.databind.JsonNode;
 
 import java.util.List;
 import java.util.UUID;
@@ -15,13 +27,21 @@ import java.util.UUID;
  *
  * <p>Endpoints:
  * <ul>
- *   <li>GET    /locations        - list all locations</li>
+ *   <li>GET    /locations        - list locations, one page at a time, optionally filtered by address</li>
+ *   <li>GET    /locations/search - full-text search over names and descriptions</li>
+ *   <li>GET    /locations/nearby - locations nearest to a point, optionally within a radius</li>
  *   <li>GET    /locations/{id}   - get a location by id</li>
+ *   <li>POST   /locations:batchGet - get many locations by id</li>
+ *   <li>GET    /locations/{locationId}/mugs/count - count the mugs at a location</li>
  *   <li>POST   /locations        - create a new location</li>
  *   <li>PUT    /locations        - update an existing location</li>
- *   <li>DELETE /locations/{id}   - delete a location by id</li>
+ *   <li>DELETE /locations/{id}   - delete a location and its mugs by id</li>
  * </ul>
  *
+ * <p>Single-location and listing GETs carry an {@code ETag} derived from the locations'
+ * {@code modifiedAt} timestamps and answer a matching {@code If-None-Match} with
+ * HTTP 304 before anything is mapped or serialized.</p>
+ *
  * The controller delegates business logic to {@link LocationService}.
  */
 @RestController
@@ -30,14 +50,85 @@ public class LocationController {
 
     private final LocationService locationService;
 
+    private final MugService mugService;
+
     /**
-     * Retrieve all locations.
+     * Retrieve a page of locations, optionally only those whose address matches the given
+     * city, state, country and zip code (case-insensitive; all given criteria must match),
+     * and optionally with only some of their fields.
      *
-     * @return ResponseEntity containing the list of all {@link Location} objects and HTTP 200.
+     * @param city    optional address city to match.
+     * @param state   optional address state to match.
+     * @param country optional address country to match.
+     * @param zipCode optional address zip code to match.
+     * @param fields  optional comma-separated location properties to return, e.g. {@code id,name,address.city};
+     *                omit for all.
+     * @param cursor opaque cursor from the previous page's {@code next}; omit for the first page.
+     * @param limit maximum number of locations to return.
+     * @param request the current request, used to evaluate {@code If-None-Match}.
+     * @return ResponseEntity containing a {@link CursorPage} of {@link Location} objects, or of partial
+     *         locations when {@code fields} is given, and HTTP 200,
+     *         or HTTP 304 if no location has changed since the client's copy.
      */
     @GetMapping("/locations")
-    public ResponseEntity<List<Location>> getAllLocations() {
-        List<Location> locations = locationService.getAllLocations();
+    public ResponseEntity<CursorPage<?>> getAllLocations(
+            @RequestParam(required = false) String city,
+            @RequestParam(required = false) String state,
+            @RequestParam(required = false) String country,
+            @RequestParam(required = false) String zipCode,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) int limit,
+            WebRequest request) {
+        if (request.checkNotModified(ETags.of(locationService.getLocationsVersion(), request))) {
+            return null;
+        }
+        LocationFilter filter = new LocationFilter(city, state, country, zipCode);
+        CursorPage<?> locations;
+        if (fields != null) {
+            locations = locationService.getLocationFields(filter, fields, cursor, limit);
+        } else if (filter.isEmpty()) {
+            locations = locationService.getAllLocations(cursor, limit);
+        } else {
+            locations = locationService.findLocations(filter, cursor, limit);
+        }
+        return ResponseEntity.ok(locations);
+    }
+
+    /**
+     * Full-text search over location names and descriptions, best matches first.
+     *
+     * @param q search terms; supports {@code "quoted phrases"}, {@code or} and {@code -excluded} terms.
+     * @param cursor opaque cursor from the previous page's {@code next}; omit for the first page.
+     * @param limit maximum number of locations to return.
+     * @return ResponseEntity containing a {@link CursorPage} of matching {@link Location} objects and HTTP 200.
+     */
+    @GetMapping("/locations/search")
+    public ResponseEntity<CursorPage<Location>> searchLocations(
+            @RequestParam String q,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) int limit) {
+        CursorPage<Location> locations = locationService.searchLocations(q, cursor, limit);
+        return ResponseEntity.ok(locations);
+    }
+
+    /**
+     * Retrieve the locations nearest to a point, closest first. Answered from memory.
+     *
+     * @param lat latitude of the point, in degrees.
+     * @param lon longitude of the point, in degrees.
+     * @param radiusKm optional maximum distance in kilometres; without it the {@code limit}
+     *                 nearest locations are returned regardless of distance.
+     * @param limit maximum number of locations to return.
+     * @return ResponseEntity containing the {@link NearbyLocation}s and HTTP 200.
+     */
+    @GetMapping("/locations/nearby")
+    public ResponseEntity<List<NearbyLocation>> getNearbyLocations(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(required = false) Double radiusKm,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) int limit) {
+        List<NearbyLocation> locations = locationService.getNearbyLocations(lat, lon, radiusKm, limit);
         return ResponseEntity.ok(locations);
     }
 
@@ -45,14 +136,43 @@ public class LocationController {
      * Retrieve a single location by UUID.
      *
      * @param id UUID of the location to retrieve; taken from the path variable "id".
-     * @return ResponseEntity containing the requested {@link Location} and HTTP 200.
+     * @param request the current request, used to evaluate {@code If-None-Match}.
+     * @return ResponseEntity containing the requested {@link Location} and HTTP 200,
+     *         or HTTP 304 if the client's copy is current.
      */
     @GetMapping("/locations/{id}")
-    public ResponseEntity<Location> getLocationById(@PathVariable UUID id) {
+    public ResponseEntity<Location> getLocationById(@PathVariable UUID id, WebRequest request) {
+        if (request.checkNotModified(ETags.of(id, locationService.getLocationModifiedAt(id)))) {
+            return null;
+        }
         Location location = locationService.getLocationById(id);
         return ResponseEntity.ok(location);
     }
 
+    /**
+     * Retrieve many locations by UUID in one request.
+     *
+     * @param request the ids to look up, at most {@value BatchGetRequest#MAX_IDS}.
+     * @return ResponseEntity containing one {@link BatchGetResult} per requested id, in request
+     *         order, and HTTP 200.
+     */
+    @PostMapping("/locations:batchGet")
+    public ResponseEntity<List<BatchGetResult<Location>>> batchGetLocations(
+            @Valid @RequestBody BatchGetRequest request) {
+        return ResponseEntity.ok(locationService.getLocationsByIds(request.getIds()));
+    }
+
+    /**
+     * Count the mugs kept at a location, without listing them.
+     *
+     * @param locationId UUID of the location whose mugs to count; taken from the path variable.
+     * @return ResponseEntity containing the {@link MugCount} and HTTP 200.
+     */
+    @GetMapping("/locations/{locationId}/mugs/count")
+    public ResponseEntity<MugCount> getMugCountByLocationId(@PathVariable UUID locationId) {
+        return ResponseEntity.ok(new MugCount(locationId, mugService.getMugCountByLocationId(locationId)));
+    }
+
     /**
      * Create a new location.
      *
@@ -78,14 +198,29 @@ public class LocationController {
     }
 
     /**
-     * Delete a location by UUID.
+     * Change some fields of an existing location with a JSON Merge Patch (RFC 7396).
+     *
+     * @param id    UUID of the location to change.
+     * @param patch Members to replace; {@code null} clears a member.
+     * @return ResponseEntity containing the updated {@link Location} and HTTP 200.
+     */
+    @PatchMapping(value = "/locations/{id}", consumes = JsonMergePatch.MEDIA_TYPE)
+    public ResponseEntity<Location> patchLocation(@PathVariable UUID id, @RequestBody JsonNode patch) {
+        Location patchedLocation = locationService.patchLocation(id, patch);
+        return ResponseEntity.ok(patchedLocation);
+    }
+
+    /**
+     * Delete a location, and the mugs kept at it, by UUID.
      *
      * @param id UUID of the location to delete; taken from the path variable.
-     * @return ResponseEntity with HTTP 200 and empty body on successful deletion.
+     * @return ResponseEntity with HTTP 200 and empty body on successful deletion, or HTTP 202
+     *         with the {@link PurgeJob} when the location has too many mugs to delete at once.
      */
     @DeleteMapping("/locations/{id}")
-    public ResponseEntity<Void> deleteLocation(@PathVariable UUID id) {
-        locationService.deleteLocation(id);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<PurgeJob> deleteLocation(@PathVariable UUID id) {
+        return locationService.deleteLocation(id)
+                .map(PurgeController::accepted)
+                .orElseGet(() -> ResponseEntity.ok().build());
     }
 }
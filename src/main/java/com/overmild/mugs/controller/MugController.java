@@ -1,12 +1,29 @@
 package com.overmild.mugs.controller;
 
+import com.overmild.mugs.model.BatchGetRequest;
+import com.overmild.mugs.model.BatchGetResult;
+import com.overmild.mugs.model.CursorPage;
 import com.overmild.mugs.model.Mug;
+import com.overmild.mugs.model.MugImportResult;
+import com.overmild.mugs.service.JsonMergePatch;
+import com.overmild.mugs.service.KeysetCursor;
 import com.overmild.mugs.service.MugService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -16,30 +33,90 @@ public class MugController {
 
     private final MugService mugService;
 
+    private final ObjectMapper objectMapper;
+
     @GetMapping("/mugs")
-    public ResponseEntity<List<Mug>> getAllMugs() {
-        List<Mug> mugs = mugService.getAllMugs();
+    public ResponseEntity<CursorPage<?>> getAllMugs(
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) int limit) {
+        CursorPage<?> mugs = fields == null
+                ? mugService.getAllMugs(cursor, limit)
+                : mugService.getMugFields(fields, cursor, limit);
         return ResponseEntity.ok(mugs);
     }
 
+    @GetMapping(value = "/mugs/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportMugs() {
+        StreamingResponseBody body = out -> mugService.exportMugs(mug -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(mug));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @GetMapping("/mugs/{id}")
     public ResponseEntity<Mug> getMugById(@PathVariable UUID id) {
         Mug mug = mugService.getMugById(id);
         return ResponseEntity.ok(mug);
     }
 
+    @PostMapping("/mugs:batchGet")
+    public ResponseEntity<List<BatchGetResult<Mug>>> batchGetMugs(@Valid @RequestBody BatchGetRequest request) {
+        return ResponseEntity.ok(mugService.getMugsByIds(request.getIds()));
+    }
+
     @PostMapping("/mugs")
     public ResponseEntity<Mug> createMug(@Valid @RequestBody Mug mug) {
         Mug createdMug = mugService.createMug(mug);
         return ResponseEntity.ok(createdMug);
     }
 
+    @PostMapping(value = "/mugs/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<MugImportResult>> importMugs(@RequestBody List<Mug> mugs) {
+        List<MugImportResult> results = mugService.importMugs(mugs.iterator());
+        return ResponseEntity.ok(results);
+    }
+
+    @PostMapping(value = "/mugs/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<List<MugImportResult>> importMugsNdjson(InputStream body) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            // Each line is parsed on its own when the import reaches it, so a malformed line is
+            // rejected as a row instead of failing the import. Blank lines are not rows.
+            Iterator<String> lines = reader.lines().filter(line -> !line.isBlank()).iterator();
+            List<MugImportResult> results = mugService.importMugs(new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return lines.hasNext();
+                }
+
+                @Override
+                public Mug next() {
+                    return objectMapper.readValue(lines.next(), Mug.class);
+                }
+            });
+            return ResponseEntity.ok(results);
+        }
+    }
+
     @PutMapping("/mugs")
     public ResponseEntity<Mug> updateMug(@Valid @RequestBody Mug mug) {
         Mug updatedMug = mugService.updateMug(mug);
         return ResponseEntity.ok(updatedMug);
     }
 
+    @PatchMapping(value = "/mugs/{id}", consumes = JsonMergePatch.MEDIA_TYPE)
+    public ResponseEntity<Mug> patchMug(@PathVariable UUID id, @RequestBody JsonNode patch) {
+        Mug patchedMug = mugService.patchMug(id, patch);
+        return ResponseEntity.ok(patchedMug);
+    }
+
     @DeleteMapping("/mugs/{id}")
     public ResponseEntity<Void> deleteMug(@PathVariable UUID id) {
         mugService.deleteMug(id);
@@ -0,0 +1,58 @@
+package com.overmild.mugs.controller;
+
+import com.overmild.mugs.exception.ResourceNotFoundException;
+import com.overmild.mugs.model.PurgeJob;
+import com.overmild.mugs.service.MugPurger;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.UUID;
+
+/**
+ * REST controller reporting on the background deletion of users and locations with many
+ * mugs.
+ *
+ * <p>Endpoints:
+ * <ul>
+ *   <li>GET /purges/{id} - progress of a purge started by {@code DELETE /users/{id}} or
+ *   {@code DELETE /locations/{id}}</li>
+ * </ul>
+ *
+ * The controller delegates to {@link MugPurger}.
+ */
+@RestController
+@RequiredArgsConstructor
+public class PurgeController {
+
+    private final MugPurger purger;
+
+    /**
+     * Retrieve the progress of a purge.
+     *
+     * @param id UUID of the purge; taken from the path variable "id".
+     * @return ResponseEntity containing the {@link PurgeJob} and HTTP 200.
+     */
+    @GetMapping("/purges/{id}")
+    public ResponseEntity<PurgeJob> getPurge(@PathVariable UUID id) {
+        return purger.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElseThrow(() -> new ResourceNotFoundException("Purge not found: " + id));
+    }
+
+    /**
+     * Answers a {@code DELETE} that started a purge: HTTP 202 with the purge, and its status
+     * URL in {@code Location}.
+     */
+    static ResponseEntity<PurgeJob> accepted(PurgeJob job) {
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/purges/{id}")
+                        .buildAndExpand(job.getId())
+                        .toUri())
+                .body(job);
+    }
+}
@@ -1,13 +1,22 @@
 package com.overmild.mugs.controller;
 
+import com.overmild.mugs.model.BatchGetRequest;
+import com.overmild.mugs.model.BatchGetResult;
+import com.overmild.mugs.model.CursorPage;
 import com.overmild.mugs.model.Mug;
+import com.overmild.mugs.model.MugCount;
+import com.overmild.mugs.model.PurgeJob;
 import com.overmild.mugs.model.User;
+import com.overmild.mugs.service.JsonMergePatch;
+import com.overmild.mugs.service.KeysetCursor;
 import com.overmild.mugs.service.MugService;
 import com.overmild.mugs.service.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import tools.jackson.databind.JsonNode;
 
 import java.util.List;
 import java.util.UUID;
@@ -17,14 +26,20 @@ import java.util.UUID;
  *
  * <p>Endpoints:
  * <ul>
- *   <li>GET    /users          - list all users</li>
+ *   <li>GET    /users          - list users, one page at a time</li>
  *   <li>GET    /users/{id}     - get a user by id</li>
+ *   <li>POST   /users:batchGet - get many users by id</li>
  *   <li>GET    /users/{userId}/mugs - list all mugs for a user</li>
+ *   <li>GET    /users/{userId}/mugs/count - count the mugs of a user</li>
  *   <li>POST   /users          - create a new user</li>
  *   <li>PUT    /users          - update an existing user</li>
- *   <li>DELETE /users/{id}     - delete a user by id</li>
+ *   <li>DELETE /users/{id}     - delete a user and their mugs by id</li>
  * </ul>
  *
+ * <p>Single-user and listing GETs carry an {@code ETag} derived from the users'
+ * {@code modifiedAt} timestamps and answer a matching {@code If-None-Match} with
+ * HTTP 304 before anything is mapped or serialized.</p>
+ *
  * The controller delegates business logic to {@link UserService}.
  */
 @RestController
@@ -36,13 +51,28 @@ public class UserController {
     private final MugService mugService;
 
     /**
-     * Retrieve all users.
+     * Retrieve a page of users, optionally with only some of their fields.
      *
-     * @return ResponseEntity containing the list of all {@link User} objects and HTTP 200.
+     * @param fields optional comma-separated user properties to return, e.g. {@code id,email}; omit for all.
+     * @param cursor opaque cursor from the previous page's {@code next}; omit for the first page.
+     * @param limit maximum number of users to return.
+     * @param request the current request, used to evaluate {@code If-None-Match}.
+     * @return ResponseEntity containing a {@link CursorPage} of {@link User} objects, or of partial
+     *         users when {@code fields} is given, and HTTP 200,
+     *         or HTTP 304 if no user has changed since the client's copy.
      */
     @GetMapping("/users")
-    public ResponseEntity<List<User>> getUserInfo() {
-        List<User> users = userService.getAllUsers();
+    public ResponseEntity<CursorPage<?>> getUserInfo(
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) int limit,
+            WebRequest request) {
+        if (request.checkNotModified(ETags.of(userService.getUsersVersion(), request))) {
+            return null;
+        }
+        CursorPage<?> users = fields == null
+                ? userService.getAllUsers(cursor, limit)
+                : userService.getUserFields(fields, cursor, limit);
         return ResponseEntity.ok(users);
     }
 
@@ -50,14 +80,31 @@ public class UserController {
      * Retrieve a single user by UUID.
      *
      * @param id UUID of the user to retrieve; taken from the path variable "id".
-     * @return ResponseEntity containing the requested {@link User} and HTTP 200.
+     * @param request the current request, used to evaluate {@code If-None-Match}.
+     * @return ResponseEntity containing the requested {@link User} and HTTP 200,
+     *         or HTTP 304 if the client's copy is current.
      */
     @GetMapping("/users/{id}")
-    public ResponseEntity<User> getUserById(@PathVariable UUID id) {
+    public ResponseEntity<User> getUserById(@PathVariable UUID id, WebRequest request) {
+        if (request.checkNotModified(ETags.of(id, userService.getUserModifiedAt(id)))) {
+            return null;
+        }
         User user = userService.getUserById(id);
         return ResponseEntity.ok(user);
     }
 
+    /**
+     * Retrieve many users by UUID in one request.
+     *
+     * @param request the ids to look up, at most {@value BatchGetRequest#MAX_IDS}.
+     * @return ResponseEntity containing one {@link BatchGetResult} per requested id, in request
+     *         order, and HTTP 200.
+     */
+    @PostMapping("/users:batchGet")
+    public ResponseEntity<List<BatchGetResult<User>>> batchGetUsers(@Valid @RequestBody BatchGetRequest request) {
+        return ResponseEntity.ok(userService.getUsersByIds(request.getIds()));
+    }
+
     /**
      * Retrieve all mugs for a specific user by user UUID.
      *
@@ -70,6 +117,17 @@ public class UserController {
         return ResponseEntity.ok(mugs);
     }
 
+    /**
+     * Count the mugs owned by a user, without listing them.
+     *
+     * @param userId UUID of the user whose mugs to count; taken from the path variable.
+     * @return ResponseEntity containing the {@link MugCount} and HTTP 200.
+     */
+    @GetMapping("/users/{userId}/mugs/count")
+    public ResponseEntity<MugCount> getMugCountByUserId(@PathVariable UUID userId) {
+        return ResponseEntity.ok(new MugCount(userId, mugService.getMugCountByUserId(userId)));
+    }
+
     /**
      * Create a new user.
      *
@@ -95,14 +153,29 @@ public class UserController {
     }
 
     /**
-     * Delete a user by UUID.
+     * Change some fields of an existing user with a JSON Merge Patch (RFC 7396).
+     *
+     * @param id    UUID of the user to change.
+     * @param patch Members to replace; {@code null} clears a member.
+     * @return ResponseEntity containing the updated {@link User} and HTTP 200.
+     */
+    @PatchMapping(value = "/users/{id}", consumes = JsonMergePatch.MEDIA_TYPE)
+    public ResponseEntity<User> patchUser(@PathVariable UUID id, @RequestBody JsonNode patch) {
+        User patchedUser = userService.patchUser(id, patch);
+        return ResponseEntity.ok(patchedUser);
+    }
+
+    /**
+     * Delete a user, and their mugs, by UUID.
      *
      * @param id UUID of the user to delete; taken from the path variable.
-     * @return ResponseEntity with HTTP 200 and empty body on successful deletion.
+     * @return ResponseEntity with HTTP 200 and empty body on successful deletion, or HTTP 202
+     *         with the {@link PurgeJob} when the user has too many mugs to delete at once.
      */
     @DeleteMapping("/users/{id}")
-    public ResponseEntity<Void> deleteUser(@PathVariable UUID id) {
-        userService.deleteUser(id);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<PurgeJob> deleteUser(@PathVariable UUID id) {
+        return userService.deleteUser(id)
+                .map(PurgeController::accepted)
+                .orElseGet(() -> ResponseEntity.ok().build());
     }
 }
\ No newline at end of file
@@ -25,4 +25,10 @@ public class AddressEmbeddable {
 
     @Column(name = "address_country")
     private String country;
+
+    @Column(name = "address_latitude")
+    private Double latitude;
+
+    @Column(name = "address_longitude")
+    private Double longitude;
 }
@@ -0,0 +1,31 @@
+package com.overmild.mugs.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * The version of the user or location collection, raised in the transaction of every write
+ * to it so that listings can be tagged without scanning the table.
+ *
+ * <p>Versions are only changed by relative {@code UPDATE}s in
+ * {@link com.overmild.mugs.repository.CollectionVersionRepository}.</p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity(name = "mugs_collection_version")
+public class CollectionVersionEntity {
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "name")
+    private Name name;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    public enum Name {
+        USERS,
+        LOCATIONS
+    }
+}
@@ -5,14 +5,32 @@ import java.util.UUID;
 import java.time.Instant;
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import jakarta.persistence.*;
 
+/**
+ * Locations are read-mostly reference data, so they are kept in the second-level
+ * cache (including the embedded address). READ_WRITE keeps the cache consistent with
+ * committed updates and deletes made through the persistence context.
+ *
+ * <p>Updates only write the columns that changed ({@code @DynamicUpdate}), so a PATCH of
+ * the photo does not rewrite the address; the address itself is written as a whole. As the
+ * entity is not versioned, Hibernate evicts the cache entry on insert and update rather than
+ * replacing it, and the next read loads it again.</p>
+ */
 @Data
 @Entity(name = "mugs_location")
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = LocationEntity.CACHE_REGION)
 public class LocationEntity {
 
+    public static final String CACHE_REGION = "locations";
+
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     @EqualsAndHashCode.Include
@@ -31,7 +49,8 @@ public class LocationEntity {
     @Column(name = "photo_url")
     private String photoUrl;
 
-    @OneToMany(mappedBy = "location", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
+    /** Not cascaded: {@code LocationService} deletes the mugs at a location in bulk. */
+    @OneToMany(mappedBy = "location", fetch = FetchType.LAZY)
     private Set<MugEntity> mugs;
 
     @UpdateTimestamp
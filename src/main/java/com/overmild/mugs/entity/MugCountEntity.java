@@ -0,0 +1,37 @@
+package com.overmild.mugs.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.UUID;
+
+/**
+ * The number of mugs owned by a user or kept at a location, maintained alongside every mug
+ * write so it can be read without counting {@code mugs_mug}.
+ *
+ * <p>Keyed by the id of the user or location; ids are UUIDs, so the two kinds of owner never
+ * collide. Counts are only changed by relative {@code UPDATE}s in
+ * {@link com.overmild.mugs.repository.MugCountRepository}.</p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity(name = "mugs_mug_count")
+public class MugCountEntity {
+
+    @Id
+    @Column(name = "owner_id")
+    private UUID ownerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "owner_type", nullable = false, updatable = false)
+    private OwnerType ownerType;
+
+    @Column(name = "mug_count", nullable = false)
+    private long mugCount;
+
+    public enum OwnerType {
+        USER,
+        LOCATION
+    }
+}
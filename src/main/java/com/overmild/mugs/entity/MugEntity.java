@@ -2,11 +2,13 @@ package com.overmild.mugs.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.UUID;
 
 @Data
 @Entity(name = "mugs_mug")
+@DynamicUpdate
 public class MugEntity {
 
     @Id
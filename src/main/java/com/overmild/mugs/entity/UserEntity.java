@@ -3,6 +3,7 @@ package com.overmild.mugs.entity;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.Instant;
@@ -11,6 +12,7 @@ import java.util.UUID;
 
 @Data
 @Entity(name = "mugs_user")
+@DynamicUpdate
 public class UserEntity {
 
     @Id
@@ -26,7 +28,8 @@ public class UserEntity {
     @Column(unique = true)
     private String email;
 
-    @OneToMany(mappedBy = "user", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
+    /** Not cascaded: {@code UserService} deletes a user's mugs in bulk. */
+    @OneToMany(mappedBy = "user", fetch = FetchType.LAZY)
     private Set<MugEntity> mugs;
 
     @CreationTimestamp
@@ -6,6 +6,7 @@ import com.overmild.mugs.model.Address;
 import com.overmild.mugs.model.Location;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
 
 @Mapper(componentModel = "spring")
 public interface LocationMapper {
@@ -16,6 +17,12 @@ public interface LocationMapper {
     @Mapping(target = "modifiedAt", ignore = true)
     LocationEntity toEntity(Location model);
 
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "mugs", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "modifiedAt", ignore = true)
+    void updateEntity(Location model, @MappingTarget LocationEntity entity);
+
     Address toAddress(AddressEmbeddable embeddable);
 
     AddressEmbeddable toAddressEmbeddable(Address address);
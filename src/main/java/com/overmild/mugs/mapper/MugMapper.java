@@ -3,11 +3,18 @@ package com.overmild.mugs.mapper;
 import com.overmild.mugs.entity.MugEntity;
 import com.overmild.mugs.model.Mug;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
 
 @Mapper(componentModel = "spring", uses = {LocationMapper.class, UserMapper.class})
 public interface MugMapper {
     Mug toModel(MugEntity entity);
     MugEntity toEntity(Mug model);
+
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "user", ignore = true)
+    @Mapping(target = "location", ignore = true)
+    void updateEntity(Mug model, @MappingTarget MugEntity entity);
 }
 
 
@@ -4,6 +4,7 @@ import com.overmild.mugs.entity.UserEntity;
 import com.overmild.mugs.model.User;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
 
 @Mapper(componentModel = "spring", uses = {MugMapper.class})
 public interface UserMapper {
@@ -14,4 +15,10 @@ public interface UserMapper {
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "modifiedAt", ignore = true)
     UserEntity toEntity(User model);
+
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "mugs", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "modifiedAt", ignore = true)
+    void updateEntity(User model, @MappingTarget UserEntity entity);
 }
@@ -0,0 +1,23 @@
+package com.overmild.mugs.model;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Value;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Body of a batch lookup such as {@code POST /users:batchGet}.
+ */
+@Value
+public class BatchGetRequest {
+
+    /** Most ids a single batch lookup may ask for. */
+    public static final int MAX_IDS = 1000;
+
+    @NotEmpty
+    @Size(max = MAX_IDS)
+    List<@NotNull UUID> ids;
+}
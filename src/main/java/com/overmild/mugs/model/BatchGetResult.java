@@ -0,0 +1,35 @@
+package com.overmild.mugs.model;
+
+import lombok.Value;
+
+import java.util.UUID;
+
+/**
+ * Outcome of looking up a single id of a batch lookup.
+ *
+ * <p>Results are returned in the order of the requested ids, one per id. Found ids carry the
+ * resource in {@code item}; ids that do not exist are reported as
+ * {@link Status#NOT_FOUND} with no item.</p>
+ *
+ * @param <T> the type of resource looked up
+ */
+@Value
+public class BatchGetResult<T> {
+
+    UUID id;
+    Status status;
+    T item;
+
+    public enum Status {
+        FOUND,
+        NOT_FOUND
+    }
+
+    public static <T> BatchGetResult<T> found(UUID id, T item) {
+        return new BatchGetResult<>(id, Status.FOUND, item);
+    }
+
+    public static <T> BatchGetResult<T> notFound(UUID id) {
+        return new BatchGetResult<>(id, Status.NOT_FOUND, null);
+    }
+}
@@ -0,0 +1,63 @@
+package com.overmild.mugs.model;
+
+import lombok.Value;
+
+import java.util.UUID;
+
+/**
+ * A mug, user or location that was created, updated or deleted.
+ *
+ * <p>Published by the services and acted on once the change has committed; clients of
+ * {@code GET /changes} receive it as the data of a Server-Sent Event.</p>
+ */
+@Value
+public class ChangeEvent {
+
+    public enum Resource { MUG, USER, LOCATION }
+
+    /**
+     * What happened. The bulk types are published for {@link Resource#MUG} only, in place of an
+     * event per mug, with a {@link Bulk} as data: {@code BULK_CREATED} once per import that
+     * created mugs, without an id, and {@code BULK_DELETED} once per deleted user or location
+     * that had mugs, with the owner's id.
+     */
+    public enum Type { CREATED, UPDATED, DELETED, BULK_CREATED, BULK_DELETED }
+
+    /**
+     * How many mugs a bulk change touched, and the user or location they belonged to; no owner
+     * for an import, whose mugs may belong to many.
+     */
+    @Value
+    public static class Bulk {
+        Resource owner;
+        UUID ownerId;
+        long count;
+    }
+
+    Resource resource;
+    Type type;
+    UUID id;
+
+    /** The resource as saved, or the {@link Bulk} of a bulk change; {@code null} for deletes. */
+    Object data;
+
+    public static ChangeEvent created(Resource resource, UUID id, Object data) {
+        return new ChangeEvent(resource, Type.CREATED, id, data);
+    }
+
+    public static ChangeEvent updated(Resource resource, UUID id, Object data) {
+        return new ChangeEvent(resource, Type.UPDATED, id, data);
+    }
+
+    public static ChangeEvent deleted(Resource resource, UUID id) {
+        return new ChangeEvent(resource, Type.DELETED, id, null);
+    }
+
+    public static ChangeEvent mugsImported(long count) {
+        return new ChangeEvent(Resource.MUG, Type.BULK_CREATED, null, new Bulk(null, null, count));
+    }
+
+    public static ChangeEvent mugsDeleted(Resource owner, UUID ownerId, long count) {
+        return new ChangeEvent(Resource.MUG, Type.BULK_DELETED, ownerId, new Bulk(owner, ownerId, count));
+    }
+}
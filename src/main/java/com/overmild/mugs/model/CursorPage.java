@@ -0,0 +1,20 @@
+package com.overmild.mugs.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * A single page of a keyset-paginated listing.
+ *
+ * <p>{@code next} is an opaque cursor to pass back as the {@code cursor} request
+ * parameter to fetch the following page, or {@code null} when this is the last page.</p>
+ *
+ * @param <T> the type of items in the page
+ */
+@Value
+public class CursorPage<T> {
+
+    List<T> items;
+    String next;
+}
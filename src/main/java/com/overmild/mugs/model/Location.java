@@ -1,5 +1,6 @@
 package com.overmild.mugs.model;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Value;
 
@@ -14,6 +15,9 @@ public class Location {
     String name;
 
     String description;
+
+    @Valid
     Address address;
+
     String photoUrl;
 }
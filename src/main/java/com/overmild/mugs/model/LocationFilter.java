@@ -0,0 +1,20 @@
+package com.overmild.mugs.model;
+
+import lombok.Value;
+
+/**
+ * Address criteria for narrowing the location listing. Every non-null field must
+ * match, ignoring case; a filter with no fields set matches every location.
+ */
+@Value
+public class LocationFilter {
+
+    String city;
+    String state;
+    String country;
+    String zipCode;
+
+    public boolean isEmpty() {
+        return city == null && state == null && country == null && zipCode == null;
+    }
+}
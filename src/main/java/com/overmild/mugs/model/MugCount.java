@@ -0,0 +1,16 @@
+package com.overmild.mugs.model;
+
+import lombok.Value;
+
+import java.util.UUID;
+
+/**
+ * The number of mugs owned by a user or kept at a location.
+ */
+@Value
+public class MugCount {
+
+    /** The id of the user or location. */
+    UUID id;
+    long count;
+}
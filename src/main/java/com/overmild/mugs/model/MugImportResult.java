@@ -0,0 +1,34 @@
+package com.overmild.mugs.model;
+
+import lombok.Value;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Outcome of importing a single row of a bulk mug import.
+ *
+ * <p>{@code index} is the zero-based position of the row in the request body. Created
+ * rows carry the generated {@code id}; rejected rows carry the reasons in {@code errors}.</p>
+ */
+@Value
+public class MugImportResult {
+
+    int index;
+    UUID id;
+    Status status;
+    List<String> errors;
+
+    public enum Status {
+        CREATED,
+        REJECTED
+    }
+
+    public static MugImportResult created(int index, UUID id) {
+        return new MugImportResult(index, id, Status.CREATED, List.of());
+    }
+
+    public static MugImportResult rejected(int index, List<String> errors) {
+        return new MugImportResult(index, null, Status.REJECTED, errors);
+    }
+}
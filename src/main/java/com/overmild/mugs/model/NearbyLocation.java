@@ -0,0 +1,14 @@
+package com.overmild.mugs.model;
+
+import lombok.Value;
+
+/**
+ * A location returned by a proximity query, with its great-circle distance from the
+ * query point.
+ */
+@Value
+public class NearbyLocation {
+
+    Location location;
+    double distanceKm;
+}
@@ -0,0 +1,33 @@
+package com.overmild.mugs.model;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Progress of the background deletion of a user or location and its mugs.
+ */
+@Value
+public class PurgeJob {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    UUID id;
+
+    /** Whether a user or a location is being deleted. */
+    ChangeEvent.Resource resource;
+
+    /** The id of the user or location. */
+    UUID ownerId;
+
+    Status status;
+    long mugsDeleted;
+    Instant startedAt;
+
+    /** When the job completed or failed; {@code null} while it runs. */
+    Instant finishedAt;
+
+    /** Why the job failed; {@code null} unless it did. */
+    String error;
+}
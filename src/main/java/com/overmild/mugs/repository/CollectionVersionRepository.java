@@ -0,0 +1,62 @@
+package com.overmild.mugs.repository;
+
+import com.overmild.mugs.entity.CollectionVersionEntity;
+import com.overmild.mugs.entity.CollectionVersionEntity.Name;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Collection versions. Every change is a single relative {@code UPDATE}, run in the
+ * transaction of the write it accounts for, so a version moves exactly when that write
+ * commits. The row stays locked until then, which serializes concurrent writes to the same
+ * collection for the rest of their transactions; the services raise it last for that reason.
+ */
+@Repository
+public interface CollectionVersionRepository extends JpaRepository<CollectionVersionEntity, Name> {
+
+    /**
+     * Returns the version of a collection by primary key.
+     *
+     * @param name the collection
+     * @return the version, or empty if the collection has never been written
+     */
+    @Query("SELECT v.version FROM mugs_collection_version v WHERE v.name = :name")
+    Optional<Long> findVersion(@Param("name") Name name);
+
+    /**
+     * Raises the version of a collection by one.
+     *
+     * @param name the collection
+     * @return the number of rows updated; 0 if the collection has no version row
+     */
+    @Modifying
+    @Query("UPDATE mugs_collection_version v SET v.version = v.version + 1 WHERE v.name = :name")
+    int increment(@Param("name") Name name);
+
+    /**
+     * Creates the version row of a collection at version 1.
+     *
+     * @param name the collection
+     */
+    @Modifying
+    @Query("INSERT INTO mugs_collection_version (name, version) VALUES (:name, 1)")
+    void create(@Param("name") Name name);
+
+    /**
+     * Raises the version of a collection, creating its row on the first write. The schema
+     * migrations create both rows, so only databases built by Hibernate, such as the tests',
+     * take the second statement.
+     *
+     * @param name the collection
+     */
+    default void raise(Name name) {
+        if (increment(name) == 0) {
+            create(name);
+        }
+    }
+}
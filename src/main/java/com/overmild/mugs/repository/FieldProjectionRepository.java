@@ -0,0 +1,118 @@
+package com.overmild.mugs.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.metamodel.Attribute;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keyset-paginated reads that select only the requested attributes of an entity.
+ *
+ * <p>Backs the {@code fields} parameter of the list endpoints. Interface or record
+ * projections would need one type per combination of fields, so the projection is built
+ * per request as a Criteria tuple query instead. Only the named columns are selected;
+ * an association is joined only when one of its attributes other than {@code id} is
+ * requested, since the {@code id} of a to-one association is its foreign key column.</p>
+ */
+@Repository
+@RequiredArgsConstructor
+public class FieldProjectionRepository {
+
+    private final EntityManager entityManager;
+
+    /**
+     * Fetches one page of an entity's attributes, ordered by id.
+     *
+     * @param entityType the entity to read
+     * @param paths      attribute paths to select, dot-separated for embedded and associated
+     *                   attributes; the first must be {@code id}
+     * @param filter     additional restriction, or {@code null}
+     * @param after      the id of the last row on the previous page, or {@code null}
+     * @param limit      the maximum number of rows to return
+     * @return one map per row, with values nested by path segment
+     */
+    public <E> List<Map<String, Object>> findPage(Class<E> entityType, List<String> paths,
+                                                  Specification<E> filter, UUID after, Limit limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<E> root = query.from(entityType);
+
+        Map<String, Join<?, ?>> joins = new HashMap<>();
+        List<Selection<?>> selections = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            selections.add(resolve(root, path, joins, cb));
+        }
+        query.select(cb.tuple(selections));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter != null) {
+            Predicate predicate = filter.toPredicate(root, query, cb);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+        }
+        if (after != null) {
+            predicates.add(cb.greaterThan(root.get("id"), after));
+        }
+        query.where(predicates.toArray(Predicate[]::new));
+        query.orderBy(cb.asc(root.get("id")));
+
+        List<Tuple> rows = entityManager.createQuery(query).setMaxResults(limit.max()).getResultList();
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            for (int i = 0; i < paths.size(); i++) {
+                put(item, paths.get(i), row.get(i));
+            }
+            result.add(item);
+        }
+        return result;
+    }
+
+    private static Path<?> resolve(Root<?> root, String path, Map<String, Join<?, ?>> joins, CriteriaBuilder cb) {
+        String[] segments = path.split("\\.");
+        Attribute<?, ?> first = root.getModel().getAttribute(segments[0]);
+        if (!first.isAssociation() || (segments.length == 2 && segments[1].equals("id"))) {
+            Path<?> current = root;
+            for (String segment : segments) {
+                current = current.get(segment);
+            }
+            return current;
+        }
+        From<?, ?> join = joins.computeIfAbsent(segments[0], name -> root.join(name, JoinType.LEFT));
+        Path<?> current = join;
+        for (int i = 1; i < segments.length; i++) {
+            current = current.get(segments[i]);
+        }
+        return current;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(Map<String, Object> item, String path, Object value) {
+        String[] segments = path.split("\\.");
+        Map<String, Object> current = item;
+        for (int i = 0; i < segments.length - 1; i++) {
+            current = (Map<String, Object>) current.computeIfAbsent(segments[i], key -> new LinkedHashMap<>());
+        }
+        current.put(segments[segments.length - 1], value);
+    }
+}
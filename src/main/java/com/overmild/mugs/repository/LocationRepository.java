@@ -1,19 +1,108 @@
 package com.overmild.mugs.repository;
 
 import com.overmild.mugs.entity.LocationEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 @Repository
-public interface LocationRepository extends JpaRepository<LocationEntity, UUID> {
+public interface LocationRepository extends JpaRepository<LocationEntity, UUID>,
+        JpaSpecificationExecutor<LocationEntity> {
 
     @Query("SELECT DISTINCT l FROM mugs_location l " +
             "LEFT JOIN FETCH l.mugs m " +
             "WHERE l.id = :id")
     Optional<LocationEntity> findByIdWithMugs(@Param("id") UUID id);
+
+    /**
+     * Fetches the first page of locations in id order.
+     *
+     * @param limit the maximum number of locations to return
+     * @return up to {@code limit} locations ordered by id
+     */
+    List<LocationEntity> findAllByOrderByIdAsc(Limit limit);
+
+    /**
+     * Fetches the page of locations that follows the given id in id order.
+     *
+     * @param id    the id of the last location on the previous page
+     * @param limit the maximum number of locations to return
+     * @return up to {@code limit} locations with an id greater than {@code id}, ordered by id
+     */
+    List<LocationEntity> findAllByIdGreaterThanOrderByIdAsc(UUID id, Limit limit);
+
+    /**
+     * Fetches the first page, in id order, of the locations that have both coordinates and at
+     * least one mug: the locations {@code GET /locations/nearby} answers with.
+     *
+     * @param limit the maximum number of locations to return
+     * @return up to {@code limit} mapped locations with mugs ordered by id
+     */
+    @Query("SELECT l FROM mugs_location l " +
+           "WHERE l.address.latitude IS NOT NULL AND l.address.longitude IS NOT NULL " +
+           "AND EXISTS (SELECT 1 FROM mugs_mug m WHERE m.location = l) " +
+           "ORDER BY l.id")
+    List<LocationEntity> findMappedWithMugs(Limit limit);
+
+    /**
+     * Fetches the page of mapped locations with mugs that follows the given id in id order.
+     *
+     * @param id    the id of the last location on the previous page
+     * @param limit the maximum number of locations to return
+     * @return up to {@code limit} mapped locations with mugs with an id greater than {@code id},
+     *         ordered by id
+     */
+    @Query("SELECT l FROM mugs_location l " +
+           "WHERE l.id > :id AND l.address.latitude IS NOT NULL AND l.address.longitude IS NOT NULL " +
+           "AND EXISTS (SELECT 1 FROM mugs_mug m WHERE m.location = l) " +
+           "ORDER BY l.id")
+    List<LocationEntity> findMappedWithMugsAfter(@Param("id") UUID id, Limit limit);
+
+    /**
+     * Returns which of the given ids belong to existing locations.
+     *
+     * @param ids the ids to look up
+     * @return the subset of {@code ids} that exist
+     */
+    @Query("SELECT l.id FROM mugs_location l WHERE l.id IN :ids")
+    Set<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Full-text search over location names and descriptions, best matches first.
+     *
+     * <p>{@code query} uses web search syntax ({@code "quoted phrases"}, {@code or},
+     * {@code -excluded}). The {@code to_tsvector} expression matches the
+     * {@code idx_mugs_location_search} GIN index, so only matching rows are read and ranked.
+     * PostgreSQL only.</p>
+     *
+     * @param query  the search terms
+     * @param limit  the maximum number of locations to return
+     * @param offset the number of ranked matches to skip
+     * @return up to {@code limit} matching locations, ordered by rank and then id
+     */
+    @Query(value = "SELECT l.* FROM mugs_location l " +
+            "WHERE to_tsvector('english', coalesce(l.name, '') || ' ' || coalesce(l.description, '')) " +
+            "@@ websearch_to_tsquery('english', :query) " +
+            "ORDER BY ts_rank(to_tsvector('english', coalesce(l.name, '') || ' ' || coalesce(l.description, '')), " +
+            "websearch_to_tsquery('english', :query)) DESC, l.id " +
+            "LIMIT :limit OFFSET :offset",
+            nativeQuery = true)
+    List<LocationEntity> search(@Param("query") String query, @Param("limit") int limit, @Param("offset") int offset);
+
+    /**
+     * Deletes a location by id, like {@link #deleteById(Object)}, and reports whether it existed.
+     *
+     * @param id the UUID of the location to delete
+     * @return the number of locations deleted: 1, or 0 if there was no such location
+     */
+    long removeById(UUID id);
 }
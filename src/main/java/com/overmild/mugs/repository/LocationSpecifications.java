@@ -0,0 +1,57 @@
+package com.overmild.mugs.repository;
+
+import com.overmild.mugs.entity.AddressEmbeddable;
+import com.overmild.mugs.entity.LocationEntity;
+import com.overmild.mugs.model.LocationFilter;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Query predicates for {@link LocationRepository}.
+ *
+ * <p>Address columns are compared as {@code lower(column) = :value}, which on PostgreSQL
+ * is served by the {@code (lower(column), id)} indexes in {@code V1__baseline.sql};
+ * the trailing {@code id} lets the same index return matches already in keyset order.</p>
+ */
+public final class LocationSpecifications {
+
+    private LocationSpecifications() {
+    }
+
+    /**
+     * Matches locations whose address satisfies every criterion in {@code filter} and,
+     * when {@code after} is given, whose id sorts after it.
+     *
+     * @param filter the address criteria
+     * @param after  the id of the last location on the previous page, or {@code null}
+     * @return the specification
+     */
+    public static Specification<LocationEntity> addressMatches(LocationFilter filter, UUID after) {
+        return (root, query, cb) -> {
+            Path<AddressEmbeddable> address = root.get("address");
+            List<Predicate> predicates = new ArrayList<>();
+            equalsIgnoreCase(cb, address.get("city"), filter.getCity(), predicates);
+            equalsIgnoreCase(cb, address.get("state"), filter.getState(), predicates);
+            equalsIgnoreCase(cb, address.get("country"), filter.getCountry(), predicates);
+            equalsIgnoreCase(cb, address.get("zipCode"), filter.getZipCode(), predicates);
+            if (after != null) {
+                predicates.add(cb.greaterThan(root.get("id"), after));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    private static void equalsIgnoreCase(CriteriaBuilder cb, Path<String> column, String value,
+                                         List<Predicate> predicates) {
+        if (value != null) {
+            predicates.add(cb.equal(cb.lower(column), value.toLowerCase(Locale.ROOT)));
+        }
+    }
+}
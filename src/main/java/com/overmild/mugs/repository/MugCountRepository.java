@@ -0,0 +1,223 @@
+package com.overmild.mugs.repository;
+
+import com.overmild.mugs.entity.MugCountEntity;
+import com.overmild.mugs.entity.MugCountEntity.OwnerType;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Per-owner mug counts. Every change is a single relative {@code UPDATE}, so concurrent
+ * writers never lose each other's increments, and each runs in the transaction of the mug
+ * write it accounts for. The reconciliation statements used by
+ * {@link com.overmild.mugs.service.MugCountReconciler} run in transactions of their own.
+ */
+@Repository
+public interface MugCountRepository extends JpaRepository<MugCountEntity, UUID> {
+
+    /**
+     * Returns the mug count of a user or location by primary key.
+     *
+     * @param ownerId the UUID of the user or location
+     * @return the count, or empty if the owner has no counter row
+     */
+    @Query("SELECT c.mugCount FROM mugs_mug_count c WHERE c.ownerId = :ownerId")
+    Optional<Long> findMugCount(@Param("ownerId") UUID ownerId);
+
+    /**
+     * Adds {@code delta} to the mug count of a user or location.
+     *
+     * @param ownerId the UUID of the user or location
+     * @param delta   the number of mugs added, negative for mugs removed
+     * @return the number of rows updated; 0 if the owner has no counter row
+     */
+    @Modifying
+    @Query("UPDATE mugs_mug_count c SET c.mugCount = c.mugCount + :delta WHERE c.ownerId = :ownerId")
+    int add(@Param("ownerId") UUID ownerId, @Param("delta") long delta);
+
+    /**
+     * Subtracts the mugs of a user from the counts of the locations they are kept at. Run
+     * before the user, and with it their mugs, are deleted.
+     *
+     * @param userId the UUID of the user about to be deleted
+     * @return the number of location counters updated
+     */
+    @Modifying
+    @Query("UPDATE mugs_mug_count c " +
+           "SET c.mugCount = c.mugCount - " +
+           "(SELECT COUNT(m) FROM mugs_mug m WHERE m.user.id = :userId AND m.location.id = c.ownerId) " +
+           "WHERE c.ownerId IN (SELECT m.location.id FROM mugs_mug m WHERE m.user.id = :userId)")
+    int subtractMugsOfUser(@Param("userId") UUID userId);
+
+    /**
+     * Subtracts the mugs kept at a location from the counts of the users who own them. Run
+     * before the location, and with it its mugs, are deleted.
+     *
+     * @param locationId the UUID of the location about to be deleted
+     * @return the number of user counters updated
+     */
+    @Modifying
+    @Query("UPDATE mugs_mug_count c " +
+           "SET c.mugCount = c.mugCount - " +
+           "(SELECT COUNT(m) FROM mugs_mug m WHERE m.location.id = :locationId AND m.user.id = c.ownerId) " +
+           "WHERE c.ownerId IN (SELECT m.user.id FROM mugs_mug m WHERE m.location.id = :locationId)")
+    int subtractMugsAtLocation(@Param("locationId") UUID locationId);
+
+    /**
+     * Subtracts the given mugs from the counts of the users and locations they belong to.
+     * Run before the mugs are deleted.
+     *
+     * @param mugIds the UUIDs of the mugs about to be deleted
+     * @return the number of counters updated
+     */
+    @Modifying
+    @Query("UPDATE mugs_mug_count c " +
+           "SET c.mugCount = c.mugCount - " +
+           "(SELECT COUNT(m) FROM mugs_mug m " +
+           "WHERE m.id IN :mugIds AND (m.user.id = c.ownerId OR m.location.id = c.ownerId)) " +
+           "WHERE c.ownerId IN (SELECT m.user.id FROM mugs_mug m WHERE m.id IN :mugIds) " +
+           "OR c.ownerId IN (SELECT m.location.id FROM mugs_mug m WHERE m.id IN :mugIds)")
+    int subtractMugs(@Param("mugIds") Collection<UUID> mugIds);
+
+    /**
+     * Deletes the counter row of a user or location.
+     *
+     * @param ownerId the UUID of the deleted user or location
+     * @return the number of rows deleted
+     */
+    @Modifying
+    @Query("DELETE FROM mugs_mug_count c WHERE c.ownerId = :ownerId")
+    int deleteByOwnerId(@Param("ownerId") UUID ownerId);
+
+    /**
+     * Fetches the user counters that disagree with {@code mugs_mug} and locks them until the
+     * end of the transaction, waiting for the mug writes that hold them to commit.
+     *
+     * @return the drifted user counters
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM mugs_mug_count c " +
+           "WHERE c.ownerType = USER " +
+           "AND c.mugCount <> (SELECT COUNT(m) FROM mugs_mug m WHERE m.user.id = c.ownerId)")
+    List<MugCountEntity> findDriftedUserCountsForUpdate();
+
+    /**
+     * Fetches the location counters that disagree with {@code mugs_mug} and locks them until
+     * the end of the transaction, waiting for the mug writes that hold them to commit.
+     *
+     * @return the drifted location counters
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM mugs_mug_count c " +
+           "WHERE c.ownerType = LOCATION " +
+           "AND c.mugCount <> (SELECT COUNT(m) FROM mugs_mug m WHERE m.location.id = c.ownerId)")
+    List<MugCountEntity> findDriftedLocationCountsForUpdate();
+
+    /**
+     * Sets the given user counters to the actual count, if they still disagree with it. Run
+     * after {@link #findDriftedUserCountsForUpdate()} has locked them, so the count includes
+     * every mug write that changed them before.
+     *
+     * @param ownerIds the UUIDs of the locked users
+     * @return the number of counters corrected
+     */
+    @Modifying
+    @Query("UPDATE mugs_mug_count c " +
+           "SET c.mugCount = (SELECT COUNT(m) FROM mugs_mug m WHERE m.user.id = c.ownerId) " +
+           "WHERE c.ownerId IN :ownerIds " +
+           "AND c.mugCount <> (SELECT COUNT(m) FROM mugs_mug m WHERE m.user.id = c.ownerId)")
+    int repairUserCounts(@Param("ownerIds") Collection<UUID> ownerIds);
+
+    /**
+     * Sets the given location counters to the actual count, if they still disagree with it.
+     * Run after {@link #findDriftedLocationCountsForUpdate()} has locked them, so the count
+     * includes every mug write that changed them before.
+     *
+     * @param ownerIds the UUIDs of the locked locations
+     * @return the number of counters corrected
+     */
+    @Modifying
+    @Query("UPDATE mugs_mug_count c " +
+           "SET c.mugCount = (SELECT COUNT(m) FROM mugs_mug m WHERE m.location.id = c.ownerId) " +
+           "WHERE c.ownerId IN :ownerIds " +
+           "AND c.mugCount <> (SELECT COUNT(m) FROM mugs_mug m WHERE m.location.id = c.ownerId)")
+    int repairLocationCounts(@Param("ownerIds") Collection<UUID> ownerIds);
+
+    /**
+     * Creates the missing counter rows of users, with their actual counts.
+     *
+     * @return the number of counters created
+     */
+    @Transactional
+    @Modifying
+    @Query("INSERT INTO mugs_mug_count (ownerId, ownerType, mugCount) " +
+           "SELECT u.id, com.overmild.mugs.entity.MugCountEntity$OwnerType.USER, (SELECT COUNT(m) FROM mugs_mug m WHERE m.user.id = u.id) " +
+           "FROM mugs_user u " +
+           "WHERE NOT EXISTS (SELECT 1 FROM mugs_mug_count c WHERE c.ownerId = u.id)")
+    int createMissingUserCounts();
+
+    /**
+     * Creates the missing counter rows of locations, with their actual counts.
+     *
+     * @return the number of counters created
+     */
+    @Transactional
+    @Modifying
+    @Query("INSERT INTO mugs_mug_count (ownerId, ownerType, mugCount) " +
+           "SELECT l.id, com.overmild.mugs.entity.MugCountEntity$OwnerType.LOCATION, (SELECT COUNT(m) FROM mugs_mug m WHERE m.location.id = l.id) " +
+           "FROM mugs_location l " +
+           "WHERE NOT EXISTS (SELECT 1 FROM mugs_mug_count c WHERE c.ownerId = l.id)")
+    int createMissingLocationCounts();
+
+    /**
+     * Deletes the counter rows of users and locations that no longer exist.
+     *
+     * @return the number of counters deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM mugs_mug_count c " +
+           "WHERE (c.ownerType = USER AND NOT EXISTS (SELECT 1 FROM mugs_user u WHERE u.id = c.ownerId)) " +
+           "OR (c.ownerType = LOCATION AND NOT EXISTS (SELECT 1 FROM mugs_location l WHERE l.id = c.ownerId))")
+    int deleteOrphanedCounts();
+
+    /**
+     * Returns the number of mugs owned by a user by counting {@code mugs_mug}; used only
+     * for users whose counter row has not been created yet.
+     *
+     * @param userId the UUID of the user
+     * @return the number of mugs owned by the user
+     */
+    @Query("SELECT COUNT(m) FROM mugs_mug m WHERE m.user.id = :userId")
+    long countMugsOfUser(@Param("userId") UUID userId);
+
+    /**
+     * Returns the number of mugs kept at a location by counting {@code mugs_mug}; used only
+     * for locations whose counter row has not been created yet.
+     *
+     * @param locationId the UUID of the location
+     * @return the number of mugs at the location
+     */
+    @Query("SELECT COUNT(m) FROM mugs_mug m WHERE m.location.id = :locationId")
+    long countMugsAtLocation(@Param("locationId") UUID locationId);
+
+    /**
+     * Creates a counter row for a new user or location.
+     *
+     * @param ownerId   the UUID of the user or location
+     * @param ownerType whether it is a user or a location
+     */
+    @Modifying
+    @Query("INSERT INTO mugs_mug_count (ownerId, ownerType, mugCount) VALUES (:ownerId, :ownerType, 0)")
+    void create(@Param("ownerId") UUID ownerId, @Param("ownerType") OwnerType ownerType);
+}
@@ -1,26 +1,149 @@
 package com.overmild.mugs.repository;
 
 import com.overmild.mugs.entity.MugEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface MugRepository extends JpaRepository<MugEntity, UUID> {
 
+    /** JDBC fetch size used by {@link #streamAllWithUserAndLocation()}. */
+    int EXPORT_FETCH_SIZE = 500;
+
     /**
-     * Fetches all mugs for a specific user with location eagerly loaded.
+     * Fetches all mugs for a specific user with user and location eagerly loaded.
      * Uses JOIN FETCH to avoid N+1 query problem.
      *
      * @param userId the UUID of the user whose mugs to fetch
-     * @return a list of mugs belonging to the user with locations loaded
+     * @return a list of mugs belonging to the user with user and location loaded
      */
     @Query("SELECT m FROM mugs_mug m " +
+           "LEFT JOIN FETCH m.user " +
            "LEFT JOIN FETCH m.location " +
            "WHERE m.user.id = :userId")
     List<MugEntity> findAllByUserId(@Param("userId") UUID userId);
+
+    /**
+     * Fetches a mug with its user and location eagerly loaded.
+     * Uses an entity graph so the mug can be mapped without further queries.
+     *
+     * @param id the UUID of the mug to fetch
+     * @return an Optional containing the mug with user and location, or empty if not found
+     */
+    @EntityGraph(attributePaths = {"user", "location"})
+    Optional<MugEntity> findWithUserAndLocationById(UUID id);
+
+    /**
+     * Fetches the mugs with the given ids, with user and location eagerly loaded.
+     *
+     * @param ids the UUIDs of the mugs to fetch
+     * @return the mugs that exist, in no particular order
+     */
+    @EntityGraph(attributePaths = {"user", "location"})
+    List<MugEntity> findAllWithUserAndLocationByIdIn(Collection<UUID> ids);
+
+    /**
+     * Returns the ids of up to {@code limit} of a user's mugs, for deleting them a chunk at a time.
+     *
+     * @param userId the UUID of the user
+     * @param limit  the maximum number of ids to return
+     * @return ids of mugs owned by the user
+     */
+    @Query("SELECT m.id FROM mugs_mug m WHERE m.user.id = :userId")
+    List<UUID> findIdsByUserId(@Param("userId") UUID userId, Limit limit);
+
+    /**
+     * Returns the ids of up to {@code limit} of the mugs at a location, for deleting them a
+     * chunk at a time.
+     *
+     * @param locationId the UUID of the location
+     * @param limit      the maximum number of ids to return
+     * @return ids of mugs kept at the location
+     */
+    @Query("SELECT m.id FROM mugs_mug m WHERE m.location.id = :locationId")
+    List<UUID> findIdsByLocationId(@Param("locationId") UUID locationId, Limit limit);
+
+    /**
+     * Deletes every mug of a user with one statement, without loading them.
+     *
+     * @param userId the UUID of the user
+     * @return the number of mugs deleted
+     */
+    @Modifying
+    @Query("DELETE FROM mugs_mug m WHERE m.user.id = :userId")
+    int deleteAllByUserId(@Param("userId") UUID userId);
+
+    /**
+     * Deletes every mug at a location with one statement, without loading them.
+     *
+     * @param locationId the UUID of the location
+     * @return the number of mugs deleted
+     */
+    @Modifying
+    @Query("DELETE FROM mugs_mug m WHERE m.location.id = :locationId")
+    int deleteAllByLocationId(@Param("locationId") UUID locationId);
+
+    /**
+     * Fetches a mug and locks its row until the end of the transaction, so the user and
+     * location it is read with cannot change before it is deleted.
+     *
+     * @param id the UUID of the mug to fetch
+     * @return an Optional containing the locked mug, or empty if not found
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<MugEntity> findForUpdateById(UUID id);
+
+    /**
+     * Fetches the first page of mugs in id order, with user and location eagerly loaded.
+     *
+     * @param limit the maximum number of mugs to return
+     * @return up to {@code limit} mugs ordered by id
+     */
+    @EntityGraph(attributePaths = {"user", "location"})
+    List<MugEntity> findAllByOrderByIdAsc(Limit limit);
+
+    /**
+     * Fetches the page of mugs that follows the given id in id order, with user and
+     * location eagerly loaded.
+     *
+     * @param id    the id of the last mug on the previous page
+     * @param limit the maximum number of mugs to return
+     * @return up to {@code limit} mugs with an id greater than {@code id}, ordered by id
+     */
+    @EntityGraph(attributePaths = {"user", "location"})
+    List<MugEntity> findAllByIdGreaterThanOrderByIdAsc(UUID id, Limit limit);
+
+    /**
+     * Streams every mug with its user and location fetched in the same query.
+     *
+     * <p>Rows are pulled from the JDBC cursor {@value #EXPORT_FETCH_SIZE} at a time and
+     * loaded read-only, so no dirty-checking snapshots are kept. Must be called inside a
+     * transaction and the returned stream must be closed.</p>
+     *
+     * @return a stream over all mugs
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT m FROM mugs_mug m " +
+           "LEFT JOIN FETCH m.user " +
+           "LEFT JOIN FETCH m.location")
+    Stream<MugEntity> streamAllWithUserAndLocation();
 }
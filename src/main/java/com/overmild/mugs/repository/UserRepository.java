@@ -1,12 +1,17 @@
 package com.overmild.mugs.repository;
 
 import com.overmild.mugs.entity.UserEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 @Repository
@@ -28,4 +33,48 @@ public interface UserRepository extends JpaRepository<UserEntity, UUID> {
     boolean existsByEmail(String email);
 
     boolean existsByEmailAndIdNot(String email, UUID id);
+
+    /**
+     * Fetches the first page of users in id order.
+     *
+     * @param limit the maximum number of users to return
+     * @return up to {@code limit} users ordered by id
+     */
+    List<UserEntity> findAllByOrderByIdAsc(Limit limit);
+
+    /**
+     * Fetches the page of users that follows the given id in id order.
+     *
+     * @param id    the id of the last user on the previous page
+     * @param limit the maximum number of users to return
+     * @return up to {@code limit} users with an id greater than {@code id}, ordered by id
+     */
+    List<UserEntity> findAllByIdGreaterThanOrderByIdAsc(UUID id, Limit limit);
+
+    /**
+     * Returns which of the given ids belong to existing users.
+     *
+     * @param ids the ids to look up
+     * @return the subset of {@code ids} that exist
+     */
+    @Query("SELECT u.id FROM mugs_user u WHERE u.id IN :ids")
+    Set<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Returns the last modification time of a user without loading the rest of the row,
+     * used as a validator for conditional GETs on a single user.
+     *
+     * @param id the UUID of the user
+     * @return the user's modification time, or empty if not found
+     */
+    @Query("SELECT u.modifiedAt FROM mugs_user u WHERE u.id = :id")
+    Optional<Instant> findModifiedAtById(@Param("id") UUID id);
+
+    /**
+     * Deletes a user by id, like {@link #deleteById(Object)}, and reports whether it existed.
+     *
+     * @param id the UUID of the user to delete
+     * @return the number of users deleted: 1, or 0 if there was no such user
+     */
+    long removeById(UUID id);
 }
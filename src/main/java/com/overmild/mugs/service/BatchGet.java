@@ -0,0 +1,54 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.model.BatchGetResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Helpers for looking up many resources by id in one request.
+ *
+ * <p>Distinct ids are loaded {@value #CHUNK_SIZE} at a time, one {@code IN} query per chunk.
+ * With {@code hibernate.query.in_clause_parameter_padding} every chunk is padded to the next
+ * power of two, so lookups of any size share a handful of statements whose plans the database
+ * can keep.</p>
+ */
+public final class BatchGet {
+
+    /** Ids bound to a single {@code IN} query; a power of two, so full chunks need no padding. */
+    public static final int CHUNK_SIZE = 128;
+
+    private BatchGet() {
+    }
+
+    /**
+     * Loads the resources with the given ids and reports, in request order, whether each was found.
+     *
+     * @param ids     the requested ids; may contain duplicates, which are loaded once
+     * @param load    loads the entities with the ids of one chunk
+     * @param idOf    returns the id of a loaded entity
+     * @param toModel maps a loaded entity to its model
+     * @return one result per requested id, in the same order
+     */
+    public static <E, M> List<BatchGetResult<M>> get(List<UUID> ids, Function<List<UUID>, List<E>> load,
+                                                     Function<E, UUID> idOf, Function<E, M> toModel) {
+        List<UUID> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<UUID, M> found = new HashMap<>();
+        for (int from = 0; from < distinct.size(); from += CHUNK_SIZE) {
+            List<UUID> chunk = distinct.subList(from, Math.min(from + CHUNK_SIZE, distinct.size()));
+            for (E entity : load.apply(chunk)) {
+                found.put(idOf.apply(entity), toModel.apply(entity));
+            }
+        }
+        return ids.stream()
+                .map(id -> found.containsKey(id)
+                        ? BatchGetResult.found(id, found.get(id))
+                        : BatchGetResult.<M>notFound(id))
+                .toList();
+    }
+}
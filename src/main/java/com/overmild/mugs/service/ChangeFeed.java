@@ -0,0 +1,296 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.config.ChangeFeedProperties;
+import com.overmild.mugs.model.ChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes committed {@link ChangeEvent}s to Server-Sent Event subscribers.
+ *
+ * <p>Each event gets an id of the form {@code <stream>-<sequence>}, where the stream part
+ * changes every time the application starts. The most recent events are kept in a replay
+ * log, so a client reconnecting with {@code Last-Event-ID} first receives what it missed. A
+ * client whose id is older than the log, or from another stream, is sent a {@value #RESET}
+ * event instead, telling it to reload from the list endpoints.</p>
+ *
+ * <p>Publishing never waits for a client. Every subscriber has a bounded buffer that is
+ * drained on its own virtual thread. A newer event for a resource replaces one still waiting
+ * in the buffer. When the buffer is full the oldest event is dropped and the subscriber gets
+ * a {@value #RESET} event ahead of the rest.</p>
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(ChangeFeedProperties.class)
+public class ChangeFeed implements DisposableBean {
+
+    /** Name of the event telling a client that it missed changes and must reload. */
+    public static final String RESET = "reset";
+
+    private final ChangeFeedProperties properties;
+    private final Counter dropped;
+    private final String stream = Long.toString(System.currentTimeMillis(), 36);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<FeedEvent> replay = new ArrayDeque<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("change-feed-heartbeat").daemon().factory());
+    private long sequence;
+
+    private record FeedEvent(String id, long sequence, ChangeEvent change) {
+    }
+
+    private record Key(ChangeEvent.Resource resource, UUID id) {
+    }
+
+    public ChangeFeed(ChangeFeedProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.dropped = Counter.builder("mugs.changes.dropped")
+                .description("Change events dropped because a subscriber's buffer was full")
+                .register(meterRegistry);
+        Gauge.builder("mugs.changes.subscribers", subscribers, Set::size)
+                .description("Open GET /changes streams")
+                .register(meterRegistry);
+        long interval = properties.heartbeatInterval().toMillis();
+        heartbeats.scheduleAtFixedRate(() -> subscribers.forEach(Subscriber::heartbeat),
+                interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @TransactionalEventListener
+    public void onChange(ChangeEvent change) {
+        publish(change);
+    }
+
+    /**
+     * Assigns the next id to a change, records it for replay and hands it to every subscriber.
+     *
+     * @param change the committed change
+     */
+    public void publish(ChangeEvent change) {
+        lock.lock();
+        try {
+            sequence++;
+            FeedEvent event = new FeedEvent(stream + "-" + sequence, sequence, change);
+            replay.addLast(event);
+            if (replay.size() > properties.replaySize()) {
+                replay.removeFirst();
+            }
+            subscribers.forEach(subscriber -> subscriber.offer(event));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts sending changes to {@code emitter}, beginning with those after {@code lastEventId}.
+     *
+     * @param emitter     the response to stream events to
+     * @param lastEventId the id of the last event the client received, or {@code null} to
+     *                    receive only changes from now on
+     */
+    public void subscribe(SseEmitter emitter, String lastEventId) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onError(ex -> subscribers.remove(subscriber));
+        lock.lock();
+        try {
+            if (lastEventId != null) {
+                replayAfter(subscriber, lastEventId);
+            }
+            subscribers.add(subscriber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        heartbeats.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+        senders.shutdownNow();
+    }
+
+    private void replayAfter(Subscriber subscriber, String lastEventId) {
+        long after = sequenceOf(lastEventId);
+        long oldest = replay.isEmpty() ? sequence + 1 : replay.getFirst().sequence();
+        if (after < oldest - 1 || after > sequence) {
+            log.debug("Cannot resume change feed from {}; sending {}", lastEventId, RESET);
+            subscriber.reset(stream + "-" + sequence);
+            return;
+        }
+        for (FeedEvent event : replay) {
+            if (event.sequence() > after) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    private long sequenceOf(String eventId) {
+        String prefix = stream + "-";
+        if (!eventId.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String nameOf(ChangeEvent change) {
+        return (change.getResource() + "." + change.getType()).toLowerCase(Locale.ROOT);
+    }
+
+    private static FeedEvent coalesce(FeedEvent pending, FeedEvent next) {
+        ChangeEvent previous = pending.change();
+        ChangeEvent change = next.change();
+        if (previous.getType() == ChangeEvent.Type.CREATED && change.getType() == ChangeEvent.Type.UPDATED) {
+            change = ChangeEvent.created(change.getResource(), change.getId(), change.getData());
+        }
+        return new FeedEvent(next.id(), next.sequence(), change);
+    }
+
+    /**
+     * One open stream and the events waiting to be written to it. At most one sender runs
+     * per subscriber at a time, so events reach the client in the order they were queued.
+     */
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Key, FeedEvent> pending = new LinkedHashMap<>();
+        private String resetId;
+        private boolean heartbeatDue;
+        private boolean sending;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(FeedEvent event) {
+            lock.lock();
+            try {
+                Key key = new Key(event.change().getResource(), event.change().getId());
+                FeedEvent previous = pending.remove(key);
+                if (previous != null) {
+                    event = coalesce(previous, event);
+                } else if (pending.size() >= properties.bufferSize()) {
+                    Iterator<FeedEvent> oldest = pending.values().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    resetId = event.id();
+                    dropped.increment();
+                }
+                // Re-inserting at the tail keeps the ids sent to the client increasing.
+                pending.put(key, event);
+                startSending();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void reset(String id) {
+            lock.lock();
+            try {
+                resetId = id;
+                startSending();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void heartbeat() {
+            lock.lock();
+            try {
+                if (!sending) {
+                    heartbeatDue = true;
+                    startSending();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void startSending() {
+            if (sending) {
+                return;
+            }
+            sending = true;
+            try {
+                senders.execute(this::send);
+            } catch (RejectedExecutionException e) {
+                sending = false;
+            }
+        }
+
+        private void send() {
+            while (true) {
+                String reset;
+                boolean heartbeat;
+                List<FeedEvent> batch;
+                lock.lock();
+                try {
+                    if (resetId == null && !heartbeatDue && pending.isEmpty()) {
+                        sending = false;
+                        return;
+                    }
+                    reset = resetId;
+                    heartbeat = heartbeatDue;
+                    batch = new ArrayList<>(pending.values());
+                    resetId = null;
+                    heartbeatDue = false;
+                    pending.clear();
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    if (reset != null) {
+                        emitter.send(SseEmitter.event().id(reset).name(RESET).data("{}"));
+                    }
+                    for (FeedEvent event : batch) {
+                        emitter.send(SseEmitter.event()
+                                .id(event.id())
+                                .name(nameOf(event.change()))
+                                .data(event.change(), MediaType.APPLICATION_JSON));
+                    }
+                    if (heartbeat) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Closing change feed subscriber: {}", e.getMessage());
+                    subscribers.remove(this);
+                    return;
+                }
+            }
+        }
+    }
+}
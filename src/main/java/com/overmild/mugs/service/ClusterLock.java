@@ -0,0 +1,78 @@
+package com.overmild.mugs.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Runs a task on at most one instance of the application at a time.
+ *
+ * <p>The instance that runs a task holds a PostgreSQL session-level advisory lock, keyed by
+ * the task's name, on a connection of its own for as long as the task runs; the task's
+ * statements use connections of their own as usual. An instance that finds the lock taken
+ * skips the task instead of waiting. Advisory locks are released by PostgreSQL when the
+ * session ends, so an instance that dies mid-task does not keep the others out.</p>
+ *
+ * <p>Other databases, such as the in-memory H2 of the tests, serve a single instance, and the
+ * task always runs.</p>
+ */
+@Component
+@RequiredArgsConstructor
+public class ClusterLock {
+
+    private static final String POSTGRESQL = "PostgreSQL";
+
+    private final DataSource dataSource;
+
+    /**
+     * Runs {@code task} unless another instance is running the task of the same name.
+     *
+     * @param name the name of the task, the same on every instance
+     * @param task the task
+     * @param <T>  the task's result type
+     * @return the task's result, or empty if another instance holds the lock
+     * @throws DataAccessResourceFailureException if the lock cannot be taken or released
+     */
+    public <T> Optional<T> callExclusively(String name, Supplier<T> task) {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!POSTGRESQL.equals(connection.getMetaData().getDatabaseProductName())) {
+                return Optional.ofNullable(task.get());
+            }
+            if (!advisoryLock(connection, "SELECT pg_try_advisory_lock(?)", name)) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.ofNullable(task.get());
+            } finally {
+                advisoryLock(connection, "SELECT pg_advisory_unlock(?)", name);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not lock " + name, e);
+        }
+    }
+
+    /**
+     * Returns the advisory lock key of a task: its name's hash code, which is the same on
+     * every JVM.
+     */
+    static long key(String name) {
+        return name.hashCode();
+    }
+
+    private static boolean advisoryLock(Connection connection, String sql, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, key(name));
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && result.getBoolean(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.exception.BadRequestException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies JSON Merge Patch documents (RFC 7396) to the API models.
+ *
+ * <p>Members of the patch replace the same members of the model, {@code null} clears a
+ * member, and nested objects are merged recursively. The patched model is validated with
+ * the same constraints {@code @Valid} enforces on a full request body.</p>
+ */
+@Component
+@RequiredArgsConstructor
+public class JsonMergePatch {
+
+    /** Media type of a merge patch request body. */
+    public static final String MEDIA_TYPE = "application/merge-patch+json";
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    /**
+     * Returns a copy of {@code target} with {@code patch} applied.
+     *
+     * @param target the current state of the resource
+     * @param patch  the merge patch; must be a JSON object
+     * @param type   the model class
+     * @return the patched model
+     * @throws BadRequestException          if the patch is not an object or changes the id
+     * @throws ConstraintViolationException if the patched model is not valid
+     */
+    public <T> T apply(T target, JsonNode patch, Class<T> type) {
+        if (patch == null || !patch.isObject()) {
+            throw new BadRequestException("Merge patch must be a JSON object");
+        }
+        JsonNode current = objectMapper.valueToTree(target);
+        JsonNode id = patch.get("id");
+        if (id != null && !id.equals(current.get("id"))) {
+            throw new BadRequestException("id cannot be changed");
+        }
+        T patched = objectMapper.treeToValue(merge(current, patch), type);
+        Set<ConstraintViolation<T>> violations = validator.validate(patched);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        return patched;
+    }
+
+    static JsonNode merge(JsonNode target, JsonNode patch) {
+        if (!patch.isObject()) {
+            return patch;
+        }
+        ObjectNode result = target != null && target.isObject()
+                ? (ObjectNode) target.deepCopy()
+                : ((ObjectNode) patch).objectNode();
+        for (Map.Entry<String, JsonNode> member : patch.properties()) {
+            if (member.getValue().isNull()) {
+                result.remove(member.getKey());
+            } else {
+                result.set(member.getKey(), merge(result.get(member.getKey()), member.getValue()));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,115 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.exception.BadRequestException;
+import com.overmild.mugs.model.CursorPage;
+import org.springframework.data.domain.Limit;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Helpers for keyset (cursor) pagination over UUID primary keys.
+ *
+ * <p>Pages are ordered by {@code id} and each page is fetched with an
+ * {@code id > :after} predicate, so the cost of a page is an index range scan
+ * that does not depend on how deep into the listing the client is. The cursor
+ * handed to clients is the URL-safe Base64 encoding of the last id on the page
+ * and should be treated as opaque.</p>
+ */
+public final class KeysetCursor {
+
+    /** Page size used when the client does not pass {@code limit}. */
+    public static final String DEFAULT_LIMIT = "50";
+
+    /** Largest page size a client may request; larger values are clamped. */
+    public static final int MAX_LIMIT = 500;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private KeysetCursor() {
+    }
+
+    /**
+     * Encodes the id of the last row on a page as an opaque cursor.
+     *
+     * @param id the id of the last row returned
+     * @return the cursor string
+     */
+    public static String encode(UUID id) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        return ENCODER.encodeToString(buffer.array());
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode(UUID)}.
+     *
+     * @param cursor the cursor string, may be {@code null} or blank for the first page
+     * @return the id to continue after, or {@code null} for the first page
+     * @throws BadRequestException if the cursor is malformed
+     */
+    public static UUID decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            byte[] bytes = DECODER.decode(cursor);
+            if (bytes.length != 16) {
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Validates a requested page size and clamps it to {@link #MAX_LIMIT}.
+     *
+     * @param limit the requested page size
+     * @return the page size to use
+     * @throws BadRequestException if {@code limit} is less than 1
+     */
+    public static int pageSize(int limit) {
+        if (limit < 1) {
+            throw new BadRequestException("limit must be at least 1");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    /**
+     * Returns the repository limit to query with for a page of {@code pageSize}.
+     * One extra row is fetched so we can tell whether a next page exists
+     * without issuing a count query.
+     *
+     * @param pageSize the page size returned by {@link #pageSize(int)}
+     * @return the limit to pass to the repository
+     */
+    public static Limit fetchLimit(int pageSize) {
+        return Limit.of(pageSize + 1);
+    }
+
+    /**
+     * Builds a page from rows fetched with {@link #fetchLimit(int)}.
+     *
+     * @param rows     the rows returned by the repository, ordered by id
+     * @param pageSize the requested page size
+     * @param idOf     extracts the id of a row
+     * @param mapper   maps a row to its API model
+     * @return the page, with a {@code next} cursor if more rows exist
+     */
+    public static <E, T> CursorPage<T> page(List<E> rows, int pageSize,
+                                            Function<E, UUID> idOf, Function<E, T> mapper) {
+        boolean hasNext = rows.size() > pageSize;
+        List<E> pageRows = hasNext ? rows.subList(0, pageSize) : rows;
+        List<T> items = pageRows.stream().map(mapper).toList();
+        String next = hasNext ? encode(idOf.apply(pageRows.getLast())) : null;
+        return new CursorPage<>(items, next);
+    }
+}
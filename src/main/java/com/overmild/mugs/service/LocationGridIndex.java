@@ -0,0 +1,367 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.entity.LocationEntity;
+import com.overmild.mugs.mapper.LocationMapper;
+import com.overmild.mugs.model.Address;
+import com.overmild.mugs.model.ChangeEvent;
+import com.overmild.mugs.model.Location;
+import com.overmild.mugs.model.Mug;
+import com.overmild.mugs.model.NearbyLocation;
+import com.overmild.mugs.repository.LocationRepository;
+import com.overmild.mugs.repository.MugCountRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory grid index over the coordinates of the locations that have mugs, for proximity
+ * queries that never touch the database.
+ *
+ * <p>The globe is divided into cells of {@link #CELL_DEGREES} degrees (about 5.5 km north
+ * to south). A radius query visits only the cells overlapping the circle's bounding box
+ * and measures great-circle distance to the locations in them; a k-nearest query repeats
+ * radius queries with a radius grown from the density seen so far until it has {@code k}
+ * results.</p>
+ *
+ * <p>The index is loaded from the database at startup and then follows location and mug
+ * {@link ChangeEvent}s after their transactions commit: an indexed location is moved or
+ * removed with its location's events, and a location joins the index when a mug is created at
+ * or moved to it, or when it gains coordinates while it has mugs. A location left without mugs
+ * by a delete, a move or a purge stays until the next reload, as do the locations of a bulk
+ * import; their events do not say which locations they emptied or filled, and a stale entry
+ * only costs a nearby result a location without mugs. Events only cover writes made through
+ * this instance, so the index is also reloaded every {@code mugs.nearby.refresh-interval}; a
+ * write made through another instance shows up in nearby results within that interval. Reads
+ * are lock-free; writes are serialized.</p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LocationGridIndex implements SmartInitializingSingleton {
+
+    /** Mean Earth radius used for distances. */
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /** Half the Earth's circumference: no two points are further apart. */
+    public static final double MAX_DISTANCE_KM = Math.PI * EARTH_RADIUS_KM;
+
+    static final double CELL_DEGREES = 0.05;
+
+    private static final double CELL_KM = Math.toRadians(CELL_DEGREES) * EARTH_RADIUS_KM;
+    private static final int LAT_CELLS = (int) Math.round(180 / CELL_DEGREES);
+    private static final int LON_CELLS = (int) Math.round(360 / CELL_DEGREES);
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private final LocationRepository repository;
+    private final LocationMapper locationMapper;
+    private final MugCountRepository mugCounts;
+
+    private final Map<Long, Map<UUID, Entry>> cells = new ConcurrentHashMap<>();
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /** Ids of the locations changed since the running {@link #refresh()} started, if one is. */
+    private volatile Set<UUID> changedDuringRefresh;
+
+    private record Entry(Location location, double latitude, double longitude, long cell) {
+    }
+
+    /**
+     * Loads every location with coordinates and mugs before the application starts serving
+     * requests.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        refresh();
+    }
+
+    /**
+     * Reloads every location with coordinates and mugs, in pages, and drops indexed locations
+     * that are no longer in the database or no longer have mugs.
+     *
+     * <p>Locations changed through this instance while the reload runs keep the state their
+     * {@link ChangeEvent} gave them, since the page read for them may predate the change.</p>
+     */
+    @Scheduled(fixedDelayString = "${mugs.nearby.refresh-interval}",
+            initialDelayString = "${mugs.nearby.refresh-interval}")
+    public void refresh() {
+        Set<UUID> changed = ConcurrentHashMap.newKeySet();
+        changedDuringRefresh = changed;
+        try {
+            Set<UUID> gone = new HashSet<>(entries.keySet());
+            List<LocationEntity> page = repository.findMappedWithMugs(Limit.of(LOAD_PAGE_SIZE));
+            while (!page.isEmpty()) {
+                for (LocationEntity entity : page) {
+                    gone.remove(entity.getId());
+                    Location location = locationMapper.toModel(entity);
+                    writeLock.lock();
+                    try {
+                        if (!changed.contains(location.getId())) {
+                            put(location);
+                        }
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+                if (page.size() < LOAD_PAGE_SIZE) {
+                    break;
+                }
+                page = repository.findMappedWithMugsAfter(page.getLast().getId(), Limit.of(LOAD_PAGE_SIZE));
+            }
+            writeLock.lock();
+            try {
+                gone.removeAll(changed);
+                gone.forEach(this::remove);
+            } finally {
+                writeLock.unlock();
+            }
+            log.info("Loaded {} locations into the spatial index and dropped {}", entries.size(), gone.size());
+        } finally {
+            changedDuringRefresh = null;
+        }
+    }
+
+    @TransactionalEventListener
+    public void onChange(ChangeEvent event) {
+        boolean deleted = event.getResource() == ChangeEvent.Resource.LOCATION
+                && event.getType() == ChangeEvent.Type.DELETED;
+        Location location = deleted ? null : indexable(event);
+        if (!deleted && location == null) {
+            return;
+        }
+        UUID id = deleted ? event.getId() : location.getId();
+        writeLock.lock();
+        try {
+            Set<UUID> changed = changedDuringRefresh;
+            if (changed != null) {
+                changed.add(id);
+            }
+            if (deleted) {
+                remove(id);
+            } else {
+                put(location);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the location a change puts in the index, or {@code null} if there is none: a
+     * saved location that is indexed already, or that has gained coordinates while it has mugs,
+     * or the location a mug was created at or moved to. A new location has no mugs yet.
+     */
+    private Location indexable(ChangeEvent event) {
+        if (event.getResource() == ChangeEvent.Resource.MUG) {
+            return event.getData() instanceof Mug mug ? mugLocation(mug) : null;
+        }
+        if (event.getResource() != ChangeEvent.Resource.LOCATION) {
+            return null;
+        }
+        Location location = (Location) event.getData();
+        if (entries.containsKey(location.getId())) {
+            return location;
+        }
+        boolean joins = event.getType() == ChangeEvent.Type.UPDATED && hasCoordinates(location)
+                && mugCounts.findMugCount(location.getId()).orElse(0L) > 0;
+        return joins ? location : null;
+    }
+
+    /**
+     * Loads the location a mug was saved at, unless it is indexed already. A mug's own location
+     * may carry no more than its id.
+     */
+    private Location mugLocation(Mug mug) {
+        if (mug.getLocation() == null || entries.containsKey(mug.getLocation().getId())) {
+            return null;
+        }
+        return repository.findById(mug.getLocation().getId())
+                .map(locationMapper::toModel)
+                .filter(LocationGridIndex::hasCoordinates)
+                .orElse(null);
+    }
+
+    private static boolean hasCoordinates(Location location) {
+        Address address = location.getAddress();
+        return address != null && address.getLatitude() != null && address.getLongitude() != null;
+    }
+
+    /**
+     * Adds or moves a location. A location without both coordinates is removed.
+     *
+     * @param location the location as saved
+     */
+    public void put(Location location) {
+        if (!hasCoordinates(location)) {
+            remove(location.getId());
+            return;
+        }
+        double latitude = location.getAddress().getLatitude();
+        double longitude = location.getAddress().getLongitude();
+        Entry entry = new Entry(location, latitude, longitude, cellOf(latitude, longitude));
+        writeLock.lock();
+        try {
+            Entry previous = entries.put(location.getId(), entry);
+            if (previous != null) {
+                removeFromCell(previous);
+            }
+            cells.computeIfAbsent(entry.cell(), cell -> new ConcurrentHashMap<>()).put(location.getId(), entry);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a location, if it is indexed.
+     *
+     * @param id the id of the location
+     */
+    public void remove(UUID id) {
+        writeLock.lock();
+        try {
+            Entry previous = entries.remove(id);
+            if (previous != null) {
+                removeFromCell(previous);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of indexed locations.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the locations nearest to a point, closest first.
+     *
+     * @param latitude  latitude of the point, in degrees
+     * @param longitude longitude of the point, in degrees
+     * @param radiusKm  only return locations within this distance; {@code null} for no limit
+     * @param limit     the maximum number of locations to return
+     * @return up to {@code limit} locations ordered by distance
+     */
+    public List<NearbyLocation> nearest(double latitude, double longitude, Double radiusKm, int limit) {
+        if (radiusKm != null) {
+            return withinRadius(latitude, longitude, radiusKm, limit);
+        }
+        double radius = CELL_KM;
+        while (true) {
+            List<NearbyLocation> found = withinRadius(latitude, longitude, radius, limit);
+            if (found.size() >= limit || radius >= MAX_DISTANCE_KM) {
+                return found;
+            }
+            // Matches grow with the area searched, so scale the radius by the square root of
+            // the shortfall, with some headroom to avoid creeping up on the answer.
+            double growth = found.isEmpty() ? 4 : Math.max(1.5, 1.2 * Math.sqrt((double) limit / found.size()));
+            radius = Math.min(radius * growth, MAX_DISTANCE_KM);
+        }
+    }
+
+    private List<NearbyLocation> withinRadius(double latitude, double longitude, double radiusKm, int limit) {
+        // Max-heap on distance holding the best `limit` candidates seen so far.
+        PriorityQueue<NearbyLocation> best = new PriorityQueue<>(
+                Comparator.comparingDouble(NearbyLocation::getDistanceKm).reversed());
+        for (Map<UUID, Entry> cell : candidateCells(latitude, longitude, radiusKm)) {
+            for (Entry entry : cell.values()) {
+                double distance = distanceKm(latitude, longitude, entry.latitude(), entry.longitude());
+                if (distance > radiusKm) {
+                    continue;
+                }
+                if (best.size() < limit) {
+                    best.add(new NearbyLocation(entry.location(), distance));
+                } else if (distance < best.peek().getDistanceKm()) {
+                    best.poll();
+                    best.add(new NearbyLocation(entry.location(), distance));
+                }
+            }
+        }
+        List<NearbyLocation> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble(NearbyLocation::getDistanceKm));
+        return result;
+    }
+
+    /**
+     * Returns the occupied cells that overlap the bounding box of a circle, or every
+     * occupied cell when that is fewer to visit.
+     */
+    private Collection<Map<UUID, Entry>> candidateCells(double latitude, double longitude, double radiusKm) {
+        double angularRadius = radiusKm / EARTH_RADIUS_KM;
+        double minLatitude = latitude - Math.toDegrees(angularRadius);
+        double maxLatitude = latitude + Math.toDegrees(angularRadius);
+        double lonSpread = Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+        if (minLatitude <= -90 || maxLatitude >= 90 || angularRadius >= Math.PI / 2 || lonSpread >= 1) {
+            return cells.values();
+        }
+        double lonDelta = Math.toDegrees(Math.asin(lonSpread));
+        int firstLat = latIndex(minLatitude);
+        int lastLat = latIndex(maxLatitude);
+        int firstLon = (int) Math.floor((longitude - lonDelta + 180) / CELL_DEGREES);
+        int lonCount = Math.min(LON_CELLS, (int) Math.floor((longitude + lonDelta + 180) / CELL_DEGREES) - firstLon + 1);
+        if ((long) (lastLat - firstLat + 1) * lonCount > cells.size()) {
+            return cells.values();
+        }
+        List<Map<UUID, Entry>> overlapping = new ArrayList<>();
+        for (int lat = firstLat; lat <= lastLat; lat++) {
+            for (int i = 0; i < lonCount; i++) {
+                Map<UUID, Entry> cell = cells.get(key(lat, Math.floorMod(firstLon + i, LON_CELLS)));
+                if (cell != null) {
+                    overlapping.add(cell);
+                }
+            }
+        }
+        return overlapping;
+    }
+
+    private void removeFromCell(Entry entry) {
+        Map<UUID, Entry> cell = cells.get(entry.cell());
+        if (cell != null) {
+            cell.remove(entry.location().getId());
+            if (cell.isEmpty()) {
+                cells.remove(entry.cell());
+            }
+        }
+    }
+
+    private static long cellOf(double latitude, double longitude) {
+        return key(latIndex(latitude), Math.floorMod((int) Math.floor((longitude + 180) / CELL_DEGREES), LON_CELLS));
+    }
+
+    private static int latIndex(double latitude) {
+        return Math.min(LAT_CELLS - 1, (int) Math.floor((latitude + 90) / CELL_DEGREES));
+    }
+
+    private static long key(int latIndex, int lonIndex) {
+        return (long) latIndex * LON_CELLS + lonIndex;
+    }
+
+    /**
+     * Great-circle (haversine) distance between two points.
+     */
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -1,62 +1,249 @@
 package com.overmild.mugs.service;
 
+import com.overmild.mugs.entity.CollectionVersionEntity;
 import com.overmild.mugs.entity.LocationEntity;
+import com.overmild.mugs.entity.MugCountEntity;
+import com.overmild.mugs.exception.BadRequestException;
 import com.overmild.mugs.exception.ResourceNotFoundException;
 import com.overmild.mugs.mapper.LocationMapper;
+import com.overmild.mugs.model.BatchGetResult;
+import com.overmild.mugs.model.ChangeEvent;
+import com.overmild.mugs.model.CursorPage;
 import com.overmild.mugs.model.Location;
+import com.overmild.mugs.model.LocationFilter;
+import com.overmild.mugs.model.NearbyLocation;
+import com.overmild.mugs.model.PurgeJob;
+import com.overmild.mugs.repository.CollectionVersionRepository;
+import com.overmild.mugs.repository.FieldProjectionRepository;
 import com.overmild.mugs.repository.LocationRepository;
-import jakarta.transaction.Transactional;
+import com.overmild.mugs.repository.LocationSpecifications;
+import com.overmild.mugs.repository.MugCountRepository;
+import com.overmild.mugs.repository.MugRepository;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.JsonNode;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
 
 /**
- * Service class for managing location operations.
- * Provides business logic for CRUD operations on locations.
+ * Reads and writes locations.
  *
- * <p>This service acts as an intermediary between the controller layer
- * and the data access layer, handling location entities and converting them
- * to/from domain models.</p>
+ * <p>Single locations are read through Hibernate's second-level cache, which {@code CacheConfig}
+ * sets up. Nearby searches are answered from the in-memory {@link LocationGridIndex} rather than
+ * the database. Deleting a location deletes the mugs kept there, through {@link MugPurger} when
+ * there are too many to delete within the request.</p>
  */
 @Slf4j
 @Transactional
 @Service
+@Timed("mugs.service")
 @RequiredArgsConstructor
 public class LocationService {
 
+    /** Name of the {@link SingleFlight} loads of single locations. */
+    static final String LOCATION_FLIGHT = "location";
+
     private final LocationRepository repository;
     private final LocationMapper locationMapper;
+    private final LocationGridIndex locationIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final FieldProjectionRepository fieldProjections;
+    private final JsonMergePatch mergePatch;
+    private final MugCountRepository mugCounts;
+    private final MugRepository mugRepository;
+    private final MugPurger purger;
+    private final SingleFlight singleFlight;
+    private final CollectionVersionRepository versions;
 
     /**
-     * Retrieves all locations from the database.
+     * Retrieves one page of locations, ordered by id.
      *
-     * @return a list of all locations in the system
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of locations to return; clamped to {@link KeysetCursor#MAX_LIMIT}
+     * @return the page of locations and the cursor for the next page, if any
+     * @throws com.overmild.mugs.exception.BadRequestException if the cursor or limit is invalid
      */
-    public List<Location> getAllLocations() {
-        log.info("Fetching all locations from the database");
-        return repository.findAll()
-                .stream()
-                .map(locationMapper::toModel)
-                .toList();
+    @Transactional(readOnly = true)
+    public CursorPage<Location> getAllLocations(String cursor, int limit) {
+        UUID after = KeysetCursor.decode(cursor);
+        int pageSize = KeysetCursor.pageSize(limit);
+        log.info("Fetching locations after {} with limit {}", after, pageSize);
+        List<LocationEntity> rows = after == null
+                ? repository.findAllByOrderByIdAsc(KeysetCursor.fetchLimit(pageSize))
+                : repository.findAllByIdGreaterThanOrderByIdAsc(after, KeysetCursor.fetchLimit(pageSize));
+        return KeysetCursor.page(rows, pageSize, LocationEntity::getId, locationMapper::toModel);
+    }
+
+    /**
+     * Retrieves one page of the locations whose address matches {@code filter}, ordered by id.
+     *
+     * <p>Paginated like {@link #getAllLocations(String, int)}. Each criterion is an indexed,
+     * case-insensitive equality match, so only matching rows are read.</p>
+     *
+     * @param filter the address criteria; must not be empty
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of locations to return; clamped to {@link KeysetCursor#MAX_LIMIT}
+     * @return the page of matching locations and the cursor for the next page, if any
+     * @throws BadRequestException if the cursor or limit is invalid
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Location> findLocations(LocationFilter filter, String cursor, int limit) {
+        UUID after = KeysetCursor.decode(cursor);
+        int pageSize = KeysetCursor.pageSize(limit);
+        log.info("Fetching locations matching {} after {} with limit {}", filter, after, pageSize);
+        List<LocationEntity> rows = repository.findBy(LocationSpecifications.addressMatches(filter, after),
+                query -> query.sortBy(Sort.by("id")).limit(KeysetCursor.fetchLimit(pageSize).max()).all());
+        return KeysetCursor.page(rows, pageSize, LocationEntity::getId, locationMapper::toModel);
+    }
+
+    /**
+     * Retrieves one page of locations with only the requested fields, ordered by id.
+     *
+     * <p>Paginated like {@link #getAllLocations(String, int)}, but only the columns behind
+     * {@code fields} are selected. When {@code filter} is not empty only matching locations
+     * are returned, as with {@link #findLocations(LocationFilter, String, int)}.</p>
+     *
+     * @param filter the address criteria, possibly empty
+     * @param fields the comma-separated location properties to return, as parsed by {@link SparseFields}
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of locations to return; clamped to {@link KeysetCursor#MAX_LIMIT}
+     * @return the page of partial locations and the cursor for the next page, if any
+     * @throws BadRequestException if a field, the cursor or the limit is invalid
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Map<String, Object>> getLocationFields(LocationFilter filter, String fields,
+                                                             String cursor, int limit) {
+        List<String> paths = SparseFields.parse(fields, SparseFields.LOCATION);
+        UUID after = KeysetCursor.decode(cursor);
+        int pageSize = KeysetCursor.pageSize(limit);
+        log.info("Fetching location fields {} matching {} after {} with limit {}", paths, filter, after, pageSize);
+        List<Map<String, Object>> rows = fieldProjections.findPage(LocationEntity.class, paths,
+                filter.isEmpty() ? null : LocationSpecifications.addressMatches(filter, null),
+                after, KeysetCursor.fetchLimit(pageSize));
+        return KeysetCursor.page(rows, pageSize, row -> (UUID) row.get("id"), Function.identity());
+    }
+
+    /**
+     * Full-text searches location names and descriptions, best matches first.
+     *
+     * <p>Results are ranked, so they are paginated by offset with an {@link OffsetCursor}.</p>
+     *
+     * @param query  the search terms, in web search syntax
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of locations to return; clamped to {@link KeysetCursor#MAX_LIMIT}
+     * @return the page of matching locations and the cursor for the next page, if any
+     * @throws BadRequestException if the query is blank or the cursor or limit is invalid
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Location> searchLocations(String query, String cursor, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new BadRequestException("q must not be blank");
+        }
+        int offset = OffsetCursor.decode(cursor);
+        int pageSize = KeysetCursor.pageSize(limit);
+        log.info("Searching locations for '{}' from offset {} with limit {}", query, offset, pageSize);
+        List<LocationEntity> rows = repository.search(query, pageSize + 1, offset);
+        return OffsetCursor.page(rows, pageSize, offset, locationMapper::toModel);
+    }
+
+    /**
+     * Finds the locations nearest to a point, closest first, from the in-memory
+     * {@link LocationGridIndex}. Runs without a transaction and issues no SQL.
+     *
+     * @param latitude  latitude of the point, in degrees
+     * @param longitude longitude of the point, in degrees
+     * @param radiusKm  only return locations within this many kilometres; {@code null} for the
+     *                  {@code limit} nearest at any distance. Clamped to
+     *                  {@link LocationGridIndex#MAX_DISTANCE_KM}, which already covers the globe
+     * @param limit     the maximum number of locations to return; clamped to {@link KeysetCursor#MAX_LIMIT}
+     * @return the matching locations with their distances
+     * @throws BadRequestException if a coordinate is out of range or not a number, or the radius
+     *                             is not a positive number
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<NearbyLocation> getNearbyLocations(double latitude, double longitude, Double radiusKm, int limit) {
+        if (!Double.isFinite(latitude) || !Double.isFinite(longitude)
+                || latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new BadRequestException("lat must be within [-90, 90] and lon within [-180, 180]");
+        }
+        if (radiusKm != null && !(Double.isFinite(radiusKm) && radiusKm > 0)) {
+            throw new BadRequestException("radiusKm must be a positive number");
+        }
+        Double radius = radiusKm != null ? Double.valueOf(Math.min(radiusKm, LocationGridIndex.MAX_DISTANCE_KM)) : null;
+        return locationIndex.nearest(latitude, longitude, radius, KeysetCursor.pageSize(limit));
     }
 
     /**
      * Retrieves a location by its unique identifier.
      *
+     * <p>Concurrent calls for the same location share one load through {@link SingleFlight},
+     * so a location missing from the second-level cache is queried once.</p>
+     *
      * @param id the UUID of the location to retrieve
      * @return the location with the specified ID
      * @throws ResourceNotFoundException if no location with the given ID exists
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Location getLocationById(UUID id) {
         log.info("Fetching location with ID: {}", id);
-        return repository.findById(id)
+        return singleFlight.load(LOCATION_FLIGHT, id, () -> repository.findById(id)
                 .map(locationMapper::toModel)
+                .orElseThrow(() -> new ResourceNotFoundException("Location not found: " + id)));
+    }
+
+    /**
+     * Retrieves many locations by id in one transaction.
+     *
+     * @param ids the UUIDs of the locations to retrieve
+     * @return one result per id, in request order, carrying the location or marking it not found
+     */
+    @Transactional(readOnly = true)
+    public List<BatchGetResult<Location>> getLocationsByIds(List<UUID> ids) {
+        log.info("Fetching {} locations by ID", ids.size());
+        return BatchGet.get(ids, repository::findAllById, LocationEntity::getId, locationMapper::toModel);
+    }
+
+    /**
+     * Returns the last modification time of a location, for building its entity tag.
+     *
+     * <p>Loads the location through the persistence context, which is backed by the
+     * second-level cache, so a following {@link #getLocationById(UUID)} in the same
+     * request does not query again.</p>
+     *
+     * @param id the UUID of the location
+     * @return when the location was last modified
+     * @throws ResourceNotFoundException if no location with the given ID exists
+     */
+    @Transactional(readOnly = true)
+    public Instant getLocationModifiedAt(UUID id) {
+        return repository.findById(id)
+                .map(LocationEntity::getModifiedAt)
                 .orElseThrow(() -> new ResourceNotFoundException("Location not found: " + id));
     }
 
+    /**
+     * Returns the current version of the location collection, for building the entity tag
+     * of the location listing. Every create, update and delete of a location raises it.
+     *
+     * @return the version, 0 if no location has been written yet
+     */
+    @Transactional(readOnly = true)
+    public long getLocationsVersion() {
+        return versions.findVersion(CollectionVersionEntity.Name.LOCATIONS).orElse(0L);
+    }
+
     /**
      * Creates a new location in the database.
      *
@@ -66,13 +253,20 @@ public class LocationService {
     public Location createLocation(Location location) {
         log.info("Creating new location with id: {}", location.getId());
         LocationEntity entity = locationMapper.toEntity(location);
-        return locationMapper.toModel(repository.save(entity));
+        Location created = locationMapper.toModel(repository.save(entity));
+        mugCounts.create(created.getId(), MugCountEntity.OwnerType.LOCATION);
+        versions.raise(CollectionVersionEntity.Name.LOCATIONS);
+        eventPublisher.publishEvent(ChangeEvent.created(ChangeEvent.Resource.LOCATION, created.getId(), created));
+        return created;
     }
 
     /**
      * Updates an existing location in the database.
      *
-     * <p>All fields of the location are updated. The location must exist and have a non-null ID.</p>
+     * <p>All fields of the location are updated. The location must exist and have a non-null ID.
+     * It is usually loaded from the second-level cache and updated in place, so the PUT is a
+     * single UPDATE, skipped if nothing changed. The change is flushed before the location is
+     * returned, so the response carries the new {@code modifiedAt}.</p>
      *
      * @param location the location object containing updated information
      * @return the updated location
@@ -80,24 +274,94 @@ public class LocationService {
      */
     public Location updateLocation(Location location) {
         log.info("Updating location with ID: {}", location.getId());
-        if (location.getId() == null || repository.findById(location.getId()).isEmpty()) {
+        if (location.getId() == null) {
             throw new ResourceNotFoundException("Location not found: " + location.getId());
         }
-        var entity = locationMapper.toEntity(location);
-        var updatedEntity = repository.save(entity);
-        return locationMapper.toModel(updatedEntity);
+        LocationEntity entity = repository.findById(location.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("Location not found: " + location.getId()));
+        return applyUpdate(location, entity);
     }
 
     /**
-     * Deletes a location from the database by its unique identifier.
+     * Applies a JSON Merge Patch to an existing location.
      *
-     * <p>This is a hard delete operation. If the location does not exist,
-     * this method will complete without throwing an exception.</p>
+     * <p>The patch is merged into the location's current state, with {@code address} merged
+     * member by member, and the result is validated and saved like a
+     * {@link #updateLocation(Location) PUT}. Only the columns whose values changed are
+     * written.</p>
+     *
+     * @param id    the UUID of the location to patch
+     * @param patch the merge patch
+     * @return the patched location
+     * @throws ResourceNotFoundException if the location doesn't exist
+     */
+    public Location patchLocation(UUID id, JsonNode patch) {
+        log.info("Patching location with ID: {}", id);
+        LocationEntity entity = repository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Location not found: " + id));
+        return applyUpdate(mergePatch.apply(locationMapper.toModel(entity), patch, Location.class), entity);
+    }
+
+    private Location applyUpdate(Location location, LocationEntity entity) {
+        Instant modifiedAt = entity.getModifiedAt();
+        locationMapper.updateEntity(location, entity);
+        Location updated = locationMapper.toModel(repository.saveAndFlush(entity));
+        if (!Objects.equals(modifiedAt, entity.getModifiedAt())) {
+            // Hibernate only writes, and stamps, an entity that changed.
+            versions.raise(CollectionVersionEntity.Name.LOCATIONS);
+        }
+        forgetLoads(updated.getId());
+        eventPublisher.publishEvent(ChangeEvent.updated(ChangeEvent.Resource.LOCATION, updated.getId(), updated));
+        return updated;
+    }
+
+    /**
+     * Deletes a location and the mugs kept at it from the database by the location's unique
+     * identifier.
+     *
+     * <p>This is a hard delete operation. If the location does not exist, this method will complete
+     * without throwing an exception or publishing an event. The mugs are taken off the mug counts
+     * of their users and deleted with one statement, without being loaded. A location with more
+     * than {@code mugs.purge.sync-threshold} mugs is deleted by a background {@link MugPurger
+     * purge} instead, which this method starts and returns.</p>
      *
      * @param id the UUID of the location to delete
+     * @return the purge deleting the location, or empty if it has already been deleted
      */
-    public void deleteLocation(UUID id) {
+    public Optional<PurgeJob> deleteLocation(UUID id) {
         log.info("Deleting location with ID: {}", id);
-        repository.deleteById(id);
+        long mugs = mugCounts.findMugCount(id).orElseGet(() -> mugCounts.countMugsAtLocation(id));
+        if (purger.runsInBackground(mugs)) {
+            log.info("Purging location {} and {} mugs in the background", id, mugs);
+            return Optional.of(purger.start(ChangeEvent.Resource.LOCATION, id,
+                    limit -> mugRepository.findIdsByLocationId(id, limit), purged -> deleteWithMugs(id, purged)));
+        }
+        deleteWithMugs(id, 0);
+        return Optional.empty();
+    }
+
+    private long deleteWithMugs(UUID id, long purged) {
+        mugCounts.subtractMugsAtLocation(id);
+        int mugs = mugRepository.deleteAllByLocationId(id);
+        boolean deleted = repository.removeById(id) > 0;
+        if (deleted) {
+            mugCounts.deleteByOwnerId(id);
+            versions.raise(CollectionVersionEntity.Name.LOCATIONS);
+            forgetLoads(id);
+        }
+        if (purged + mugs > 0) {
+            eventPublisher.publishEvent(ChangeEvent.mugsDeleted(ChangeEvent.Resource.LOCATION, id, purged + mugs));
+        }
+        if (deleted) {
+            // Also takes the location out of the LocationGridIndex.
+            eventPublisher.publishEvent(ChangeEvent.deleted(ChangeEvent.Resource.LOCATION, id));
+        }
+        return mugs;
+    }
+
+    private void forgetLoads(UUID id) {
+        singleFlight.forget(LOCATION_FLIGHT, id);
+        // Any user's mugs may be at this location.
+        singleFlight.forgetAll(MugService.MUGS_BY_USER_FLIGHT);
     }
 }
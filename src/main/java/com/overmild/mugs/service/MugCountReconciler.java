@@ -0,0 +1,88 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.entity.MugCountEntity;
+import com.overmild.mugs.repository.MugCountRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Repairs the per-user and per-location mug counts against {@code mugs_mug}.
+ *
+ * <p>The counts are kept exact by every write that goes through the services, so a pass
+ * normally changes nothing. It creates the counters of users and locations written before
+ * counting existed or by other means, corrects counters that have drifted, for example
+ * after rows were changed by hand, and deletes the counters of owners that are gone. Drifted
+ * counters are locked before they are corrected, so a mug write that changes one either
+ * commits first and is counted, or waits for the correction and is applied on top of it.
+ * Each step runs in its own transaction, and only drifted counters are ever locked.</p>
+ *
+ * <p>Runs on the {@code mugs.mug-counts.reconcile-cron} schedule, on one instance at a time
+ * through a {@link ClusterLock}; corrections are counted by {@code mugs.mug-counts.repaired}.</p>
+ */
+@Slf4j
+@Component
+public class MugCountReconciler {
+
+    static final String LOCK = "mug-count-reconciliation";
+
+    private final MugCountRepository mugCounts;
+    private final ClusterLock clusterLock;
+    private final TransactionTemplate transactions;
+    private final Counter repaired;
+
+    public MugCountReconciler(MugCountRepository mugCounts, ClusterLock clusterLock,
+                              PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.mugCounts = mugCounts;
+        this.clusterLock = clusterLock;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.repaired = Counter.builder("mugs.mug-counts.repaired")
+                .description("Mug count rows created, corrected or deleted by reconciliation")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs one reconciliation pass, unless another instance is running one.
+     *
+     * @return the number of counter rows created, corrected or deleted
+     */
+    @Scheduled(cron = "${mugs.mug-counts.reconcile-cron}")
+    public int reconcile() {
+        return clusterLock.callExclusively(LOCK, this::reconcilePass).orElseGet(() -> {
+            log.info("Skipping mug count reconciliation; another instance is running it");
+            return 0;
+        });
+    }
+
+    private int reconcilePass() {
+        int created = mugCounts.createMissingUserCounts() + mugCounts.createMissingLocationCounts();
+        int corrected = repair(mugCounts::findDriftedUserCountsForUpdate, mugCounts::repairUserCounts)
+                + repair(mugCounts::findDriftedLocationCountsForUpdate, mugCounts::repairLocationCounts);
+        int deleted = mugCounts.deleteOrphanedCounts();
+        int total = created + corrected + deleted;
+        if (total > 0) {
+            log.warn("Reconciled mug counts: {} created, {} corrected, {} deleted", created, corrected, deleted);
+        } else {
+            log.info("Mug counts are consistent");
+        }
+        repaired.increment(total);
+        return total;
+    }
+
+    private int repair(Supplier<List<MugCountEntity>> lockDrifted, ToIntFunction<Collection<UUID>> correct) {
+        return transactions.execute(status -> {
+            List<UUID> drifted = lockDrifted.get().stream().map(MugCountEntity::getOwnerId).toList();
+            return drifted.isEmpty() ? 0 : correct.applyAsInt(drifted);
+        });
+    }
+}
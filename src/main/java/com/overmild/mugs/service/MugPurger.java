@@ -0,0 +1,196 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.config.PurgeProperties;
+import com.overmild.mugs.model.ChangeEvent;
+import com.overmild.mugs.model.PurgeJob;
+import com.overmild.mugs.repository.MugCountRepository;
+import com.overmild.mugs.repository.MugRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Deletes users and locations with too many mugs to delete within the request.
+ *
+ * <p>A purge runs on its own virtual thread. It deletes the owner's mugs
+ * {@code mugs.purge.chunk-size} at a time, each chunk in a short transaction of its own, so
+ * no transaction holds locks on more than one chunk of rows. Once fewer than a chunk remain,
+ * the owner's own delete runs and removes them together with the owner. Until then the owner
+ * can still be read.</p>
+ *
+ * <p>Jobs are kept in memory, so {@code GET /purges/{id}} only knows the purges started on
+ * this instance, and a purge cut short by a shutdown is not resumed: deleting the owner again
+ * picks up where it stopped. Finished jobs are forgotten after {@code mugs.purge.retention}.</p>
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(PurgeProperties.class)
+public class MugPurger implements DisposableBean {
+
+    private final PurgeProperties properties;
+    private final MugRepository mugRepository;
+    private final MugCountRepository mugCounts;
+    private final TransactionTemplate transactions;
+    private final SingleFlight singleFlight;
+    private final Map<UUID, Job> jobs = new ConcurrentHashMap<>();
+    private final ReentrantLock startLock = new ReentrantLock();
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public MugPurger(PurgeProperties properties, MugRepository mugRepository, MugCountRepository mugCounts,
+                     PlatformTransactionManager transactionManager, SingleFlight singleFlight) {
+        this.properties = properties;
+        this.mugRepository = mugRepository;
+        this.mugCounts = mugCounts;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * Tells whether an owner with {@code mugs} mugs must be purged in the background.
+     *
+     * @param mugs the number of mugs the user or location has
+     * @return {@code true} if there are more than {@code mugs.purge.sync-threshold}
+     */
+    public boolean runsInBackground(long mugs) {
+        return mugs > properties.syncThreshold();
+    }
+
+    /**
+     * Starts purging a user or location, or returns the purge of it already running.
+     *
+     * @param resource whether a user or a location is deleted
+     * @param ownerId  the id of the user or location
+     * @param chunk    selects the ids of up to {@code limit} of the owner's remaining mugs
+     * @param delete   given how many mugs the purge has deleted so far, deletes the owner and
+     *                 any mugs it still has and returns how many; run in a transaction once
+     *                 fewer than a chunk remain
+     * @return the state of the purge
+     */
+    public PurgeJob start(ChangeEvent.Resource resource, UUID ownerId,
+                          Function<Limit, List<UUID>> chunk, LongUnaryOperator delete) {
+        startLock.lock();
+        try {
+            prune();
+            Optional<Job> running = jobs.values().stream()
+                    .filter(job -> job.ownerId.equals(ownerId) && job.status == PurgeJob.Status.RUNNING)
+                    .findFirst();
+            if (running.isPresent()) {
+                return running.get().snapshot();
+            }
+            Job job = new Job(UUID.randomUUID(), resource, ownerId);
+            jobs.put(job.id, job);
+            workers.execute(() -> run(job, chunk, delete));
+            return job.snapshot();
+        } finally {
+            startLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current state of a purge.
+     *
+     * @param id the id of the purge
+     * @return the purge, or empty if it is unknown or finished longer ago than the retention
+     */
+    public Optional<PurgeJob> getJob(UUID id) {
+        prune();
+        return Optional.ofNullable(jobs.get(id)).map(Job::snapshot);
+    }
+
+    private void run(Job job, Function<Limit, List<UUID>> chunk, LongUnaryOperator delete) {
+        log.info("Purging {} {}", job.resource, job.ownerId);
+        try {
+            Limit limit = Limit.of(properties.chunkSize());
+            int deleted;
+            do {
+                deleted = transactions.execute(status -> deleteChunk(chunk.apply(limit)));
+                job.mugsDeleted.addAndGet(deleted);
+                if (deleted > 0) {
+                    forgetMugLoads(job);
+                }
+            } while (deleted == properties.chunkSize());
+            job.mugsDeleted.addAndGet(transactions.execute(status -> delete.applyAsLong(job.mugsDeleted.get())));
+            job.finish(PurgeJob.Status.COMPLETED, null);
+            log.info("Purged {} {} and {} mugs", job.resource, job.ownerId, job.mugsDeleted.get());
+        } catch (RuntimeException e) {
+            log.warn("Purge of {} {} failed after {} mugs", job.resource, job.ownerId, job.mugsDeleted.get(), e);
+            job.finish(PurgeJob.Status.FAILED, e.getMessage());
+        }
+    }
+
+    private int deleteChunk(List<UUID> mugIds) {
+        if (mugIds.isEmpty()) {
+            return 0;
+        }
+        mugCounts.subtractMugs(mugIds);
+        mugRepository.deleteAllByIdInBatch(mugIds);
+        return mugIds.size();
+    }
+
+    /**
+     * Keeps loads of the purged mugs that started before a chunk committed from being shared
+     * with later callers. A location's mugs may belong to any user.
+     */
+    private void forgetMugLoads(Job job) {
+        if (job.resource == ChangeEvent.Resource.USER) {
+            singleFlight.forget(MugService.MUGS_BY_USER_FLIGHT, job.ownerId);
+        } else {
+            singleFlight.forgetAll(MugService.MUGS_BY_USER_FLIGHT);
+        }
+    }
+
+    private void prune() {
+        Instant cutoff = Instant.now().minus(properties.retention());
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdownNow();
+    }
+
+    private static final class Job {
+
+        final UUID id;
+        final ChangeEvent.Resource resource;
+        final UUID ownerId;
+        final Instant startedAt = Instant.now();
+        final AtomicLong mugsDeleted = new AtomicLong();
+        volatile PurgeJob.Status status = PurgeJob.Status.RUNNING;
+        volatile Instant finishedAt;
+        volatile String error;
+
+        Job(UUID id, ChangeEvent.Resource resource, UUID ownerId) {
+            this.id = id;
+            this.resource = resource;
+            this.ownerId = ownerId;
+        }
+
+        void finish(PurgeJob.Status status, String error) {
+            this.error = error;
+            this.finishedAt = Instant.now();
+            this.status = status;
+        }
+
+        PurgeJob snapshot() {
+            return new PurgeJob(id, resource, ownerId, status, mugsDeleted.get(), startedAt, finishedAt, error);
+        }
+    }
+}
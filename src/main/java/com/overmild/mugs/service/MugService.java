@@ -1,46 +1,123 @@
 package com.overmild.mugs.service;
 
+import com.overmild.mugs.entity.LocationEntity;
 import com.overmild.mugs.entity.MugEntity;
+import com.overmild.mugs.entity.UserEntity;
+import com.overmild.mugs.exception.BadRequestException;
 import com.overmild.mugs.exception.ResourceNotFoundException;
 import com.overmild.mugs.mapper.MugMapper;
+import com.overmild.mugs.model.BatchGetResult;
+import com.overmild.mugs.model.ChangeEvent;
+import com.overmild.mugs.model.CursorPage;
 import com.overmild.mugs.model.Mug;
+import com.overmild.mugs.model.MugImportResult;
+import com.overmild.mugs.repository.FieldProjectionRepository;
+import com.overmild.mugs.repository.LocationRepository;
+import com.overmild.mugs.repository.MugCountRepository;
 import com.overmild.mugs.repository.MugRepository;
-import jakarta.transaction.Transactional;
+import com.overmild.mugs.repository.UserRepository;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
- * Service class for managing mug operations.
- * Provides business logic for CRUD operations on mugs.
+ * Reads and writes mugs.
  *
- * <p>This service acts as an intermediary between the controller layer
- * and the data access layer, handling mug entities and converting them
- * to/from domain models.</p>
+ * <p>Every write that adds, moves or removes a mug adjusts the per-user and per-location counts
+ * in {@code mugs_mug_count} in the same transaction. Imports are inserted
+ * {@value #IMPORT_CHUNK_SIZE} rows at a time and announced with a single change event.</p>
  */
 @Slf4j
 @Service
+@Timed("mugs.service")
 @RequiredArgsConstructor
 public class MugService {
 
+    /**
+     * Rows persisted between flushes during a bulk import. Matches
+     * {@code hibernate.jdbc.batch_size} so each flush is sent as one JDBC batch.
+     */
+    static final int IMPORT_CHUNK_SIZE = 50;
+
+    /** Name of the {@link SingleFlight} loads of a user's mugs, keyed by user id. */
+    static final String MUGS_BY_USER_FLIGHT = "mugs-by-user";
+
     private final MugRepository repository;
     private final MugMapper mugMapper;
+    private final EntityManager entityManager;
+    private final UserRepository userRepository;
+    private final LocationRepository locationRepository;
+    private final Validator validator;
+    private final FieldProjectionRepository fieldProjections;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JsonMergePatch mergePatch;
+    private final MugCountRepository mugCounts;
+    private final SingleFlight singleFlight;
 
     /**
-     * Retrieves all mugs from the database.
+     * Retrieves one page of mugs, ordered by id.
+     *
+     * <p>Each mug is fetched together with its user and location.</p>
      *
-     * @return a list of all mugs in the system
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of mugs to return; clamped to {@link KeysetCursor#MAX_LIMIT}
+     * @return the page of mugs and the cursor for the next page, if any
+     * @throws com.overmild.mugs.exception.BadRequestException if the cursor or limit is invalid
      */
-    @Transactional
-    public List<Mug> getAllMugs() {
-        log.info("Fetching all mugs from the database");
-        return repository.findAll()
-                .stream()
-                .map(mugMapper::toModel)
-                .toList();
+    @Transactional(readOnly = true)
+    public CursorPage<Mug> getAllMugs(String cursor, int limit) {
+        UUID after = KeysetCursor.decode(cursor);
+        int pageSize = KeysetCursor.pageSize(limit);
+        log.info("Fetching mugs after {} with limit {}", after, pageSize);
+        List<MugEntity> rows = after == null
+                ? repository.findAllByOrderByIdAsc(KeysetCursor.fetchLimit(pageSize))
+                : repository.findAllByIdGreaterThanOrderByIdAsc(after, KeysetCursor.fetchLimit(pageSize));
+        return KeysetCursor.page(rows, pageSize, MugEntity::getId, mugMapper::toModel);
+    }
+
+    /**
+     * Retrieves one page of mugs with only the requested fields, ordered by id.
+     *
+     * <p>Paginated like {@link #getAllMugs(String, int)}, but only the columns behind
+     * {@code fields} are selected. The user or location is joined only when one of its
+     * fields other than {@code id} is requested.</p>
+     *
+     * @param fields the comma-separated mug properties to return, as parsed by {@link SparseFields}
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of mugs to return; clamped to {@link KeysetCursor#MAX_LIMIT}
+     * @return the page of partial mugs and the cursor for the next page, if any
+     * @throws com.overmild.mugs.exception.BadRequestException if a field, the cursor or the limit is invalid
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Map<String, Object>> getMugFields(String fields, String cursor, int limit) {
+        List<String> paths = SparseFields.parse(fields, SparseFields.MUG);
+        UUID after = KeysetCursor.decode(cursor);
+        int pageSize = KeysetCursor.pageSize(limit);
+        log.info("Fetching mug fields {} after {} with limit {}", paths, after, pageSize);
+        List<Map<String, Object>> rows = fieldProjections.findPage(
+                MugEntity.class, paths, null, after, KeysetCursor.fetchLimit(pageSize));
+        return KeysetCursor.page(rows, pageSize, row -> (UUID) row.get("id"), Function.identity());
     }
 
     /**
@@ -50,72 +127,363 @@ public class MugService {
      * @return the mug with the specified ID
      * @throws ResourceNotFoundException if no mug with the given ID exists
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public Mug getMugById(UUID id) {
         log.info("Fetching mug with ID: {}", id);
-        return repository.findById(id)
+        return repository.findWithUserAndLocationById(id)
                 .map(mugMapper::toModel)
                 .orElseThrow(() -> new ResourceNotFoundException("Mug not found: " + id));
     }
 
+    /**
+     * Retrieves many mugs by id in one transaction, each with its user and location.
+     *
+     * @param ids the UUIDs of the mugs to retrieve
+     * @return one result per id, in request order, carrying the mug or marking it not found
+     */
+    @Transactional(readOnly = true)
+    public List<BatchGetResult<Mug>> getMugsByIds(List<UUID> ids) {
+        log.info("Fetching {} mugs by ID", ids.size());
+        return BatchGet.get(ids, repository::findAllWithUserAndLocationByIdIn, MugEntity::getId, mugMapper::toModel);
+    }
+
     /**
      * Retrieves all mugs for a specific user.
-     * Uses an optimized query with JOIN FETCH to load locations in a single query.
+     * Uses an optimized query with JOIN FETCH to load users and locations in a single query.
+     * Concurrent calls for the same user share that query through {@link SingleFlight}.
      *
      * @param userId the UUID of the user whose mugs to retrieve
      * @return a list of all mugs belonging to the user
      */
-    @Transactional
     public List<Mug> getMugsByUserId(UUID userId) {
         log.info("Fetching all mugs for user with ID: {}", userId);
-        return repository.findAllByUserId(userId)
+        return singleFlight.load(MUGS_BY_USER_FLIGHT, userId, () -> repository.findAllByUserId(userId)
                 .stream()
                 .map(mugMapper::toModel)
-                .toList();
+                .toList());
     }
 
     /**
-     * Creates a new mug in the database.
+     * Returns the number of mugs a user owns.
+     *
+     * <p>Read from the user's counter row by primary key, so the cost does not depend on how
+     * many mugs there are. A user whose counter has not been created yet by
+     * {@link MugCountReconciler} is counted from {@code mugs_mug} instead.</p>
+     *
+     * @param userId the UUID of the user
+     * @return the number of mugs owned by the user
+     * @throws ResourceNotFoundException if no user with the given ID exists
+     */
+    @Transactional(readOnly = true)
+    public long getMugCountByUserId(UUID userId) {
+        log.info("Fetching mug count for user with ID: {}", userId);
+        return mugCounts.findMugCount(userId).orElseGet(() -> {
+            if (!userRepository.existsById(userId)) {
+                throw new ResourceNotFoundException("User not found: " + userId);
+            }
+            return mugCounts.countMugsOfUser(userId);
+        });
+    }
+
+    /**
+     * Returns the number of mugs kept at a location.
+     *
+     * <p>Read from the location's counter row like {@link #getMugCountByUserId(UUID)}.</p>
+     *
+     * @param locationId the UUID of the location
+     * @return the number of mugs at the location
+     * @throws ResourceNotFoundException if no location with the given ID exists
+     */
+    @Transactional(readOnly = true)
+    public long getMugCountByLocationId(UUID locationId) {
+        log.info("Fetching mug count for location with ID: {}", locationId);
+        return mugCounts.findMugCount(locationId).orElseGet(() -> {
+            if (!locationRepository.existsById(locationId)) {
+                throw new ResourceNotFoundException("Location not found: " + locationId);
+            }
+            return mugCounts.countMugsAtLocation(locationId);
+        });
+    }
+
+    /**
+     * Streams every mug, with its user and location, to {@code sink} one at a time.
+     *
+     * <p>Rows are read through a JDBC cursor rather than materialized as a list. Each
+     * mug is detached once it has been handed to the sink, and the persistence context
+     * is cleared every {@link MugRepository#EXPORT_FETCH_SIZE} rows so the users and
+     * locations it has accumulated can be collected too. Heap use therefore stays flat
+     * regardless of how many mugs are exported.</p>
+     *
+     * @param sink receives each mapped mug in turn
+     */
+    @Transactional(readOnly = true)
+    public void exportMugs(Consumer<Mug> sink) {
+        log.info("Exporting all mugs");
+        long count = 0;
+        try (Stream<MugEntity> mugs = repository.streamAllWithUserAndLocation()) {
+            for (MugEntity entity : (Iterable<MugEntity>) mugs::iterator) {
+                sink.accept(mugMapper.toModel(entity));
+                entityManager.detach(entity);
+                if (++count % MugRepository.EXPORT_FETCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        log.info("Exported {} mugs", count);
+    }
+
+    /**
+     * Creates a new mug in the database and adds it to the mug counts of its user and
+     * location.
      *
      * @param mug the mug object to create
      * @return the created mug with all fields populated, including generated ID
      */
+    @Transactional
     public Mug createMug(Mug mug) {
         log.info("Creating new mug with id: {}", mug.getId());
-        MugEntity entity = mugMapper.toEntity(mug);
-        return mugMapper.toModel(repository.save(entity));
+        MugEntity entity = repository.save(mugMapper.toEntity(mug));
+        mugCounts.add(entity.getUser().getId(), 1);
+        mugCounts.add(entity.getLocation().getId(), 1);
+        singleFlight.forget(MUGS_BY_USER_FLIGHT, entity.getUser().getId());
+        Mug created = mugMapper.toModel(entity);
+        eventPublisher.publishEvent(ChangeEvent.created(ChangeEvent.Resource.MUG, created.getId(), created));
+        return created;
+    }
+
+    /**
+     * Creates many mugs in a single transaction.
+     *
+     * <p>Rows are consumed from {@code mugs} lazily and processed in chunks of
+     * {@value #IMPORT_CHUNK_SIZE}. For each chunk the referenced users and locations are
+     * checked with one query each, valid rows are persisted, and the persistence context
+     * is flushed and cleared, so Hibernate sends each chunk as a JDBC batch insert and
+     * memory use does not grow with the size of the import. The mug counts of the users and
+     * locations involved are updated once each, and the change feed is sent one
+     * {@link ChangeEvent.Type#BULK_CREATED} event, at the end.</p>
+     *
+     * <p>Rows that fail validation or reference a missing user or location are reported as
+     * {@link MugImportResult.Status#REJECTED} and skipped; the rest are created. Any id on an
+     * incoming row is ignored and a new one is generated. A row that {@code mugs} cannot read,
+     * signalled by {@link Iterator#next()} throwing a {@link JacksonException}, is rejected the
+     * same way and the import carries on with the next row.</p>
+     *
+     * @param mugs the mugs to create, in request order
+     * @return one result per input row, in the same order
+     */
+    @Transactional
+    public List<MugImportResult> importMugs(Iterator<Mug> mugs) {
+        log.info("Importing mugs in chunks of {}", IMPORT_CHUNK_SIZE);
+        List<MugImportResult> results = new ArrayList<>();
+        Map<UUID, Long> created = new HashMap<>();
+        List<ImportRow> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        while (mugs.hasNext()) {
+            chunk.add(nextImportRow(mugs));
+            if (chunk.size() == IMPORT_CHUNK_SIZE) {
+                importChunk(chunk, results, created);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, results, created);
+        }
+        created.forEach(mugCounts::add);
+        long imported = results.stream()
+                .filter(r -> r.getStatus() == MugImportResult.Status.CREATED)
+                .count();
+        if (imported > 0) {
+            singleFlight.forgetAll(MUGS_BY_USER_FLIGHT);
+            eventPublisher.publishEvent(ChangeEvent.mugsImported(imported));
+        }
+        log.info("Imported {} mugs", imported);
+        return results;
+    }
+
+    private static ImportRow nextImportRow(Iterator<Mug> mugs) {
+        try {
+            return new ImportRow(mugs.next(), null);
+        } catch (JacksonException e) {
+            return new ImportRow(null, "Malformed row: " + e.getOriginalMessage());
+        }
+    }
+
+    private void importChunk(List<ImportRow> chunk, List<MugImportResult> results, Map<UUID, Long> created) {
+        Set<UUID> userIds = new HashSet<>();
+        Set<UUID> locationIds = new HashSet<>();
+        for (ImportRow row : chunk) {
+            Mug mug = row.mug();
+            if (mug == null) {
+                continue;
+            }
+            if (mug.getUser() != null && mug.getUser().getId() != null) {
+                userIds.add(mug.getUser().getId());
+            }
+            if (mug.getLocation() != null && mug.getLocation().getId() != null) {
+                locationIds.add(mug.getLocation().getId());
+            }
+        }
+        Set<UUID> existingUsers = userIds.isEmpty() ? Set.of() : userRepository.findExistingIds(userIds);
+        Set<UUID> existingLocations = locationIds.isEmpty() ? Set.of() : locationRepository.findExistingIds(locationIds);
+
+        for (ImportRow row : chunk) {
+            int index = results.size();
+            Mug mug = row.mug();
+            List<String> errors = mug == null
+                    ? List.of(row.malformed())
+                    : importErrors(mug, existingUsers, existingLocations);
+            if (!errors.isEmpty()) {
+                results.add(MugImportResult.rejected(index, errors));
+                continue;
+            }
+            MugEntity entity = mugMapper.toEntity(mug);
+            entity.setId(null);
+            entity.setUser(entityManager.getReference(UserEntity.class, mug.getUser().getId()));
+            entity.setLocation(entityManager.getReference(LocationEntity.class, mug.getLocation().getId()));
+            entityManager.persist(entity);
+            results.add(MugImportResult.created(index, entity.getId()));
+            created.merge(mug.getUser().getId(), 1L, Long::sum);
+            created.merge(mug.getLocation().getId(), 1L, Long::sum);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private List<String> importErrors(Mug mug, Set<UUID> existingUsers, Set<UUID> existingLocations) {
+        List<String> errors = new ArrayList<>();
+        for (ConstraintViolation<Mug> violation : validator.validate(mug)) {
+            errors.add(violation.getPropertyPath() + ": " + violation.getMessage());
+        }
+        if (mug.getUser() == null || mug.getUser().getId() == null) {
+            errors.add("user.id: must not be null");
+        } else if (!existingUsers.contains(mug.getUser().getId())) {
+            errors.add("User not found: " + mug.getUser().getId());
+        }
+        if (mug.getLocation() == null || mug.getLocation().getId() == null) {
+            errors.add("location.id: must not be null");
+        } else if (!existingLocations.contains(mug.getLocation().getId())) {
+            errors.add("Location not found: " + mug.getLocation().getId());
+        }
+        return errors;
     }
 
     /**
      * Updates an existing mug in the database.
      *
-     * <p>All fields of the mug are updated. The mug must exist and have a non-null ID.</p>
+     * <p>All fields of the mug are updated, so the request must carry the full representation,
+     * including {@code user.id} and {@code location.id}. The mug must exist and have a non-null
+     * ID. It is loaded together with its user and location, updated in place and flushed before
+     * it is returned, so a PUT costs one SELECT and one UPDATE. A user or location is only
+     * looked up when the mug is moved to a different one. Moving a mug locks its row first and
+     * moves it between the mug counts of the old and new user or location.</p>
      *
      * @param mug the mug object containing updated information
      * @return the updated mug
-     * @throws ResourceNotFoundException if the mug doesn't exist or ID is null
+     * @throws ResourceNotFoundException if the mug, or the user or location it is moved to,
+     *                                   doesn't exist, or ID is null
+     * @throws BadRequestException       if the user or location ID is missing
      */
+    @Transactional
     public Mug updateMug(Mug mug) {
         log.info("Updating mug with ID: {}", mug.getId());
-        if (mug.getId() == null || repository.findById(mug.getId()).isEmpty()) {
+        if (mug.getId() == null) {
             throw new ResourceNotFoundException("Mug not found: " + mug.getId());
         }
-        var entity = mugMapper.toEntity(mug);
-        var updatedEntity = repository.save(entity);
-        return mugMapper.toModel(updatedEntity);
+        MugEntity entity = repository.findWithUserAndLocationById(mug.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("Mug not found: " + mug.getId()));
+        return applyUpdate(mug, entity);
+    }
+
+    /**
+     * Applies a JSON Merge Patch to an existing mug.
+     *
+     * <p>The patch is merged into the mug's current state and the result is validated and
+     * saved like a {@link #updateMug(Mug) PUT}. Only the columns whose values changed are
+     * written. Moving a mug is done by patching {@code user.id} or {@code location.id}.</p>
+     *
+     * @param id    the UUID of the mug to patch
+     * @param patch the merge patch
+     * @return the patched mug
+     * @throws ResourceNotFoundException if the mug, or the user or location it is moved to,
+     *                                   doesn't exist
+     * @throws BadRequestException       if the patch removes the user or location
+     */
+    @Transactional
+    public Mug patchMug(UUID id, JsonNode patch) {
+        log.info("Patching mug with ID: {}", id);
+        MugEntity entity = repository.findWithUserAndLocationById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Mug not found: " + id));
+        return applyUpdate(mergePatch.apply(mugMapper.toModel(entity), patch, Mug.class), entity);
+    }
+
+    private Mug applyUpdate(Mug mug, MugEntity entity) {
+        singleFlight.forget(MUGS_BY_USER_FLIGHT, entity.getUser().getId());
+        UUID userId = mug.getUser() == null ? null : mug.getUser().getId();
+        UUID locationId = mug.getLocation() == null ? null : mug.getLocation().getId();
+        if (userId == null) {
+            throw new BadRequestException("user.id: must not be null");
+        }
+        if (locationId == null) {
+            throw new BadRequestException("location.id: must not be null");
+        }
+        if (isMove(userId, entity.getUser()) || isMove(locationId, entity.getLocation())) {
+            // Re-read the owners under a row lock so that concurrent moves of the same mug
+            // each take it from the owner the previous one left it with.
+            entityManager.refresh(entity, LockModeType.PESSIMISTIC_WRITE);
+        }
+        mugMapper.updateEntity(mug, entity);
+        if (isMove(userId, entity.getUser())) {
+            UUID from = entity.getUser().getId();
+            entity.setUser(userRepository.findById(userId)
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found: " + userId)));
+            mugCounts.add(from, -1);
+            mugCounts.add(userId, 1);
+            singleFlight.forget(MUGS_BY_USER_FLIGHT, userId);
+        }
+        if (isMove(locationId, entity.getLocation())) {
+            UUID from = entity.getLocation().getId();
+            entity.setLocation(locationRepository.findById(locationId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Location not found: " + locationId)));
+            mugCounts.add(from, -1);
+            mugCounts.add(locationId, 1);
+        }
+        Mug updated = mugMapper.toModel(repository.saveAndFlush(entity));
+        eventPublisher.publishEvent(ChangeEvent.updated(ChangeEvent.Resource.MUG, updated.getId(), updated));
+        return updated;
+    }
+
+    private static boolean isMove(UUID targetId, UserEntity current) {
+        return targetId != null && !targetId.equals(current.getId());
+    }
+
+    private static boolean isMove(UUID targetId, LocationEntity current) {
+        return targetId != null && !targetId.equals(current.getId());
     }
 
     /**
      * Deletes a mug from the database by its unique identifier.
      *
      * <p>This is a hard delete operation. If the mug does not exist,
-     * this method will complete without throwing an exception.</p>
+     * this method will complete without throwing an exception. The mug is read under a row
+     * lock and removed from the mug counts of the user and location it belonged to. Deleting a
+     * mug that does not exist changes nothing and publishes no event.</p>
      *
      * @param id the UUID of the mug to delete
      */
     @Transactional
     public void deleteMug(UUID id) {
         log.info("Deleting mug with ID: {}", id);
-        repository.deleteById(id);
+        repository.findForUpdateById(id).ifPresent(entity -> {
+            repository.delete(entity);
+            mugCounts.add(entity.getUser().getId(), -1);
+            mugCounts.add(entity.getLocation().getId(), -1);
+            singleFlight.forget(MUGS_BY_USER_FLIGHT, entity.getUser().getId());
+            eventPublisher.publishEvent(ChangeEvent.deleted(ChangeEvent.Resource.MUG, id));
+        });
+    }
+
+    /**
+     * A row of a bulk import: the mug read from it, or why it could not be read.
+     */
+    private record ImportRow(Mug mug, String malformed) {
     }
 }
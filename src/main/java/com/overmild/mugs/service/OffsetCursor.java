@@ -0,0 +1,80 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.exception.BadRequestException;
+import com.overmild.mugs.model.CursorPage;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Helpers for paginating results that are not ordered by a unique key, such as
+ * relevance-ranked search.
+ *
+ * <p>The cursor is the URL-safe Base64 encoding of the number of rows already returned,
+ * so clients page through it exactly as they do through {@link KeysetCursor} listings.
+ * Use keyset pagination wherever the order allows it: an offset page costs as much as
+ * every page before it.</p>
+ */
+public final class OffsetCursor {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private OffsetCursor() {
+    }
+
+    /**
+     * Encodes the offset of the first row of the next page as an opaque cursor.
+     *
+     * @param offset the number of rows already returned
+     * @return the cursor string
+     */
+    public static String encode(int offset) {
+        return ENCODER.encodeToString(ByteBuffer.allocate(Integer.BYTES).putInt(offset).array());
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode(int)}.
+     *
+     * @param cursor the cursor string, may be {@code null} or blank for the first page
+     * @return the number of rows to skip
+     * @throws BadRequestException if the cursor is malformed
+     */
+    public static int decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            byte[] bytes = DECODER.decode(cursor);
+            if (bytes.length != Integer.BYTES) {
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+            int offset = ByteBuffer.wrap(bytes).getInt();
+            if (offset < 0) {
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+            return offset;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Builds a page from rows fetched with a limit of {@code pageSize + 1}.
+     *
+     * @param rows     the rows returned by the repository
+     * @param pageSize the requested page size
+     * @param offset   the offset the rows were fetched from
+     * @param mapper   maps a row to its API model
+     * @return the page, with a {@code next} cursor if more rows exist
+     */
+    public static <E, T> CursorPage<T> page(List<E> rows, int pageSize, int offset, Function<E, T> mapper) {
+        boolean hasNext = rows.size() > pageSize;
+        List<E> pageRows = hasNext ? rows.subList(0, pageSize) : rows;
+        List<T> items = pageRows.stream().map(mapper).toList();
+        String next = hasNext ? encode(offset + pageSize) : null;
+        return new CursorPage<>(items, next);
+    }
+}
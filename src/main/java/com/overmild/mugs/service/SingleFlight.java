@@ -0,0 +1,148 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.config.SingleFlightProperties;
+import com.overmild.mugs.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical reads into one database load.
+ *
+ * <p>The first caller for a key runs the load in a read-only transaction of its own. Callers
+ * asking for the same key while it runs wait for it and get its result, or its exception,
+ * instead of querying again. Nothing is kept once the load finishes, so this is not a cache:
+ * it only removes the duplicate queries of a burst. Results are shared between callers and
+ * must be immutable.</p>
+ *
+ * <p>A caller that waits longer than {@code mugs.single-flight.timeout} fails with a
+ * {@link ServiceUnavailableException} rather than piling up behind a slow load; the load
+ * itself carries on for the caller that started it. Writes {@link #forget forget} the keys
+ * they change once they commit, so a caller arriving after a write never shares a load that
+ * started before it.</p>
+ *
+ * <p>Calls made inside a transaction are not coalesced. They run the load directly in that
+ * transaction, so they see its uncommitted writes.</p>
+ */
+@Component
+@EnableConfigurationProperties(SingleFlightProperties.class)
+public class SingleFlight {
+
+    private final Duration timeout;
+    private final TransactionTemplate readOnly;
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    public SingleFlight(SingleFlightProperties properties, PlatformTransactionManager transactionManager,
+                        MeterRegistry meterRegistry) {
+        this.timeout = properties.timeout();
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Returns the result of {@code loader}, sharing one call of it between concurrent callers
+     * with the same name and key.
+     *
+     * @param name   the kind of load, such as {@code "user"}
+     * @param key    identifies the load within {@code name}
+     * @param loader reads the value; run in a read-only transaction
+     * @return the loaded value
+     * @throws ServiceUnavailableException if another caller's load took longer than the timeout
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String name, Object key, Supplier<T> loader) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loader.get();
+        }
+        Key flightKey = new Key(name, key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = flights.putIfAbsent(flightKey, flight);
+        if (running != null) {
+            meterRegistry.counter("mugs.single-flight.shared", "name", name).increment();
+            return (T) await(running, flightKey);
+        }
+        try {
+            T value = readOnly.execute(status -> loader.get());
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            flights.remove(flightKey, flight);
+        }
+    }
+
+    /**
+     * Stops callers from joining a load of {@code key} that is already running. Inside a
+     * transaction this happens when the transaction commits.
+     *
+     * @param name the kind of load
+     * @param key  identifies the load within {@code name}
+     */
+    public void forget(String name, Object key) {
+        afterCommit(() -> flights.remove(new Key(name, key)));
+    }
+
+    /**
+     * Like {@link #forget(String, Object)}, for every key of {@code name}, when a write
+     * changes data that all of them may include.
+     *
+     * @param name the kind of load
+     */
+    public void forgetAll(String name) {
+        afterCommit(() -> flights.keySet().removeIf(key -> key.name().equals(name)));
+    }
+
+    private Object await(CompletableFuture<Object> flight, Key key) {
+        try {
+            return flight.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (ex.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new ServiceUnavailableException("Timed out after " + timeout.toMillis()
+                    + "ms waiting for " + key.name() + " " + key.key(), timeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for " + key.name() + " " + key.key(),
+                    timeout);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private record Key(String name, Object key) {
+    }
+}
@@ -0,0 +1,76 @@
+package com.overmild.mugs.service;
+
+import com.overmild.mugs.exception.BadRequestException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Parses the {@code fields} request parameter of the list endpoints into the attribute
+ * paths to select.
+ *
+ * <p>{@code fields} is a comma-separated list of model properties. A nested property is
+ * written with dots ({@code user.email}, {@code location.address.city}) and naming an
+ * object selects all of its properties ({@code user}). {@code id} is always selected,
+ * because it is needed for the page cursor.</p>
+ */
+public final class SparseFields {
+
+    static final List<String> USER = List.of("id", "firstName", "lastName", "email");
+
+    static final List<String> ADDRESS = List.of(
+            "line1", "line2", "city", "state", "zipCode", "country", "latitude", "longitude");
+
+    static final List<String> LOCATION = Stream.of(
+            List.of("id", "name", "description"),
+            prefixed("address", ADDRESS),
+            List.of("photoUrl")
+    ).flatMap(List::stream).toList();
+
+    static final List<String> MUG = Stream.of(
+            List.of("id", "displayName"),
+            prefixed("user", USER),
+            prefixed("location", LOCATION)
+    ).flatMap(List::stream).toList();
+
+    private SparseFields() {
+    }
+
+    /**
+     * Resolves a {@code fields} parameter against the properties a resource exposes.
+     *
+     * @param fields     the comma-separated requested fields
+     * @param properties every leaf property path of the resource, in response order
+     * @return the leaf property paths to select, starting with {@code id}
+     * @throws BadRequestException if a requested field does not exist
+     */
+    public static List<String> parse(String fields, List<String> properties) {
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add("id");
+        for (String field : fields.split(",")) {
+            String name = field.strip();
+            if (name.isEmpty()) {
+                continue;
+            }
+            List<String> matches = properties.stream()
+                    .filter(path -> path.equals(name) || path.startsWith(name + "."))
+                    .toList();
+            if (matches.isEmpty()) {
+                throw new BadRequestException("Unknown field: " + name);
+            }
+            selected.addAll(matches);
+        }
+        return List.copyOf(selected);
+    }
+
+    private static List<String> prefixed(String prefix, List<String> paths) {
+        List<String> result = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            result.add(prefix + "." + path);
+        }
+        return result;
+    }
+}
@@ -1,62 +1,162 @@
 package com.overmild.mugs.service;
 
+import com.overmild.mugs.entity.CollectionVersionEntity;
+import com.overmild.mugs.entity.MugCountEntity;
 import com.overmild.mugs.entity.UserEntity;
 import com.overmild.mugs.exception.ConflictException;
 import com.overmild.mugs.exception.ResourceNotFoundException;
 import com.overmild.mugs.mapper.UserMapper;
+import com.overmild.mugs.model.BatchGetResult;
+import com.overmild.mugs.model.ChangeEvent;
+import com.overmild.mugs.model.CursorPage;
+import com.overmild.mugs.model.PurgeJob;
 import com.overmild.mugs.model.User;
+import com.overmild.mugs.repository.CollectionVersionRepository;
+import com.overmild.mugs.repository.FieldProjectionRepository;
+import com.overmild.mugs.repository.MugCountRepository;
+import com.overmild.mugs.repository.MugRepository;
 import com.overmild.mugs.repository.UserRepository;
-import jakarta.transaction.Transactional;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.JsonNode;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
 
 /**
- * Service class for managing user operations.
- * Provides business logic for CRUD operations on users.
+ * Reads and writes users.
  *
- * <p>This service acts as an intermediary between the controller layer
- * and the data access layer, handling user entities and converting them
- * to/from domain models.</p>
+ * <p>Emails are unique: a create or update that would repeat one fails with a
+ * {@link ConflictException}. Concurrent reads of the same user share one query through
+ * {@link SingleFlight}. Deleting a user deletes their mugs too, through {@link MugPurger} when
+ * there are too many to delete within the request.</p>
  */
 @Slf4j
 @Service
+@Timed("mugs.service")
 @RequiredArgsConstructor
 public class UserService {
 
+    /** Name of the {@link SingleFlight} loads of single users. */
+    static final String USER_FLIGHT = "user";
+
     private final UserRepository repository;
     private final UserMapper userMapper;
+    private final FieldProjectionRepository fieldProjections;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JsonMergePatch mergePatch;
+    private final MugCountRepository mugCounts;
+    private final MugRepository mugRepository;
+    private final MugPurger purger;
+    private final SingleFlight singleFlight;
+    private final CollectionVersionRepository versions;
 
     /**
-     * Retrieves all users from the database.
+     * Retrieves one page of users, ordered by id.
      *
-     * @return a list of all users in the system
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of users to return; clamped to {@link KeysetCursor#MAX_LIMIT}
+     * @return the page of users and the cursor for the next page, if any
+     * @throws com.overmild.mugs.exception.BadRequestException if the cursor or limit is invalid
      */
-    public List<User> getAllUsers() {
-        log.info("Fetching all users from the database");
-        return repository.findAll()
-                .stream()
-                .map(userMapper::toModel)
-                .toList();
+    @Transactional(readOnly = true)
+    public CursorPage<User> getAllUsers(String cursor, int limit) {
+        UUID after = KeysetCursor.decode(cursor);
+        int pageSize = KeysetCursor.pageSize(limit);
+        log.info("Fetching users after {} with limit {}", after, pageSize);
+        List<UserEntity> rows = after == null
+                ? repository.findAllByOrderByIdAsc(KeysetCursor.fetchLimit(pageSize))
+                : repository.findAllByIdGreaterThanOrderByIdAsc(after, KeysetCursor.fetchLimit(pageSize));
+        return KeysetCursor.page(rows, pageSize, UserEntity::getId, userMapper::toModel);
+    }
+
+    /**
+     * Retrieves one page of users with only the requested fields, ordered by id.
+     *
+     * <p>Paginated like {@link #getAllUsers(String, int)}, but only the columns behind
+     * {@code fields} are selected.</p>
+     *
+     * @param fields the comma-separated user properties to return, as parsed by {@link SparseFields}
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of users to return; clamped to {@link KeysetCursor#MAX_LIMIT}
+     * @return the page of partial users and the cursor for the next page, if any
+     * @throws com.overmild.mugs.exception.BadRequestException if a field, the cursor or the limit is invalid
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Map<String, Object>> getUserFields(String fields, String cursor, int limit) {
+        List<String> paths = SparseFields.parse(fields, SparseFields.USER);
+        UUID after = KeysetCursor.decode(cursor);
+        int pageSize = KeysetCursor.pageSize(limit);
+        log.info("Fetching user fields {} after {} with limit {}", paths, after, pageSize);
+        List<Map<String, Object>> rows = fieldProjections.findPage(
+                UserEntity.class, paths, null, after, KeysetCursor.fetchLimit(pageSize));
+        return KeysetCursor.page(rows, pageSize, row -> (UUID) row.get("id"), Function.identity());
     }
 
     /**
      * Retrieves a user by their unique identifier.
      *
+     * <p>Concurrent calls for the same user share one query through {@link SingleFlight}.</p>
+     *
      * @param id the UUID of the user to retrieve
      * @return the user with the specified ID
      * @throws ResourceNotFoundException if no user with the given ID exists
      */
     public User getUserById(UUID id) {
         log.info("Fetching user with ID: {}", id);
-        return repository.findById(id)
+        return singleFlight.load(USER_FLIGHT, id, () -> repository.findById(id)
                 .map(userMapper::toModel)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found: " + id)));
+    }
+
+    /**
+     * Retrieves many users by id in one transaction.
+     *
+     * @param ids the UUIDs of the users to retrieve
+     * @return one result per id, in request order, carrying the user or marking it not found
+     */
+    @Transactional(readOnly = true)
+    public List<BatchGetResult<User>> getUsersByIds(List<UUID> ids) {
+        log.info("Fetching {} users by ID", ids.size());
+        return BatchGet.get(ids, repository::findAllById, UserEntity::getId, userMapper::toModel);
+    }
+
+    /**
+     * Returns the last modification time of a user, for building its entity tag.
+     *
+     * <p>Selects only the timestamp, so answering a conditional GET with 304 does not
+     * read the rest of the row.</p>
+     *
+     * @param id the UUID of the user
+     * @return when the user was last modified
+     * @throws ResourceNotFoundException if no user with the given ID exists
+     */
+    @Transactional(readOnly = true)
+    public Instant getUserModifiedAt(UUID id) {
+        return repository.findModifiedAtById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found: " + id));
     }
 
+    /**
+     * Returns the current version of the user collection, for building the entity tag
+     * of the user listing. Every create, update and delete of a user raises it.
+     *
+     * @return the version, 0 if no user has been written yet
+     */
+    @Transactional(readOnly = true)
+    public long getUsersVersion() {
+        return versions.findVersion(CollectionVersionEntity.Name.USERS).orElse(0L);
+    }
+
     /**
      * Creates a new user in the database.
      *
@@ -64,19 +164,27 @@ public class UserService {
      * @return the created user with all fields populated, including generated ID
      * @throws ConflictException if a user with the same email already exists
      */
+    @Transactional
     public User createUser(User user) {
         log.info("Creating new user with id");
         if (repository.existsByEmail(user.getEmail())) {
             throw new ConflictException("A user with email '" + user.getEmail() + "' already exists");
         }
         UserEntity entity = userMapper.toEntity(user);
-        return userMapper.toModel(repository.save(entity));
+        User created = userMapper.toModel(repository.save(entity));
+        mugCounts.create(created.getId(), MugCountEntity.OwnerType.USER);
+        versions.raise(CollectionVersionEntity.Name.USERS);
+        eventPublisher.publishEvent(ChangeEvent.created(ChangeEvent.Resource.USER, created.getId(), created));
+        return created;
     }
 
     /**
      * Updates an existing user in the database.
      *
-     * <p>All fields of the user are updated. The user must exist and have a non-null ID.</p>
+     * <p>All fields of the user are updated. The user must exist and have a non-null ID.
+     * The loaded entity is updated in place and flushed before it is returned, so the response
+     * carries the new {@code modifiedAt} and a PUT costs one SELECT and, if anything changed,
+     * one UPDATE.</p>
      *
      * @param user the user object containing updated information
      * @return the updated user
@@ -86,28 +194,94 @@ public class UserService {
     @Transactional
     public User updateUser(User user) {
         log.info("Updating user with ID: {}", user.getId());
-        if (user.getId() == null || repository.findById(user.getId()).isEmpty()) {
+        if (user.getId() == null) {
             throw new ResourceNotFoundException("User not found: " + user.getId());
         }
-        if (repository.existsByEmailAndIdNot(user.getEmail(), user.getId())) {
+        UserEntity entity = repository.findById(user.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("User not found: " + user.getId()));
+        return applyUpdate(user, entity);
+    }
+
+    /**
+     * Applies a JSON Merge Patch to an existing user.
+     *
+     * <p>The patch is merged into the user's current state and the result is validated and
+     * saved like a {@link #updateUser(User) PUT}. Only the columns whose values changed are
+     * written.</p>
+     *
+     * @param id    the UUID of the user to patch
+     * @param patch the merge patch
+     * @return the patched user
+     * @throws ResourceNotFoundException if the user doesn't exist
+     * @throws ConflictException if another user already has the patched email
+     */
+    @Transactional
+    public User patchUser(UUID id, JsonNode patch) {
+        log.info("Patching user with ID: {}", id);
+        UserEntity entity = repository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found: " + id));
+        return applyUpdate(mergePatch.apply(userMapper.toModel(entity), patch, User.class), entity);
+    }
+
+    private User applyUpdate(User user, UserEntity entity) {
+        if (!Objects.equals(entity.getEmail(), user.getEmail())
+                && repository.existsByEmailAndIdNot(user.getEmail(), user.getId())) {
             throw new ConflictException("A user with email '" + user.getEmail() + "' already exists");
         }
-        var entity = userMapper.toEntity(user);
-        var updatedEntity = repository.save(entity);
-        return userMapper.toModel(updatedEntity);
+        Instant modifiedAt = entity.getModifiedAt();
+        userMapper.updateEntity(user, entity);
+        User updated = userMapper.toModel(repository.saveAndFlush(entity));
+        if (!Objects.equals(modifiedAt, entity.getModifiedAt())) {
+            // Hibernate only writes, and stamps, an entity that changed.
+            versions.raise(CollectionVersionEntity.Name.USERS);
+        }
+        singleFlight.forget(USER_FLIGHT, updated.getId());
+        singleFlight.forget(MugService.MUGS_BY_USER_FLIGHT, updated.getId());
+        eventPublisher.publishEvent(ChangeEvent.updated(ChangeEvent.Resource.USER, updated.getId(), updated));
+        return updated;
     }
 
     /**
-     * Deletes a user from the database by their unique identifier.
+     * Deletes a user and their mugs from the database by the user's unique identifier.
      *
-     * <p>This is a hard delete operation. If the user does not exist,
-     * this method will complete without throwing an exception.</p>
+     * <p>This is a hard delete operation. If the user does not exist, this method will complete
+     * without throwing an exception or publishing an event. The user's mugs are taken off the mug
+     * counts of their locations and deleted with a single statement, without being loaded. A user
+     * with more than {@code mugs.purge.sync-threshold} mugs is instead deleted by a background
+     * {@link MugPurger purge}, which this method starts and returns.</p>
      *
      * @param id the UUID of the user to delete
+     * @return the purge deleting the user, or empty if the user has already been deleted
      */
     @Transactional
-    public void deleteUser(UUID id) {
+    public Optional<PurgeJob> deleteUser(UUID id) {
         log.info("Deleting user with ID: {}", id);
-        repository.deleteById(id);
+        long mugs = mugCounts.findMugCount(id).orElseGet(() -> mugCounts.countMugsOfUser(id));
+        if (purger.runsInBackground(mugs)) {
+            log.info("Purging user {} and {} mugs in the background", id, mugs);
+            return Optional.of(purger.start(ChangeEvent.Resource.USER, id,
+                    limit -> mugRepository.findIdsByUserId(id, limit), purged -> deleteWithMugs(id, purged)));
+        }
+        deleteWithMugs(id, 0);
+        return Optional.empty();
+    }
+
+    private long deleteWithMugs(UUID id, long purged) {
+        mugCounts.subtractMugsOfUser(id);
+        int mugs = mugRepository.deleteAllByUserId(id);
+        boolean deleted = repository.removeById(id) > 0;
+        if (deleted) {
+            mugCounts.deleteByOwnerId(id);
+            versions.raise(CollectionVersionEntity.Name.USERS);
+            singleFlight.forget(USER_FLIGHT, id);
+            singleFlight.forget(MugService.MUGS_BY_USER_FLIGHT, id);
+        }
+        if (purged + mugs > 0) {
+            eventPublisher.publishEvent(ChangeEvent.mugsDeleted(ChangeEvent.Resource.USER, id, purged + mugs));
+        }
+        if (deleted) {
+            eventPublisher.publishEvent(ChangeEvent.deleted(ChangeEvent.Resource.USER, id));
+        }
+        return mugs;
     }
 }
@@ -0,0 +1,9 @@
+/**
+ * Business logic between the controllers and the repositories.
+ *
+ * <p>Services load and save entities through the repositories and hand the controllers domain
+ * models, converted by the MapStruct mappers in {@code com.overmild.mugs.mapper}. Writes publish
+ * a {@link com.overmild.mugs.model.ChangeEvent} for the change feed, and listings are paginated
+ * with {@link com.overmild.mugs.service.KeysetCursor}.</p>
+ */
+package com.overmild.mugs.service;
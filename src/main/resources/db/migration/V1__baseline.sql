@@ -0,0 +1,51 @@
+-- The tables as Hibernate's ddl-auto left them before migrations were introduced. Databases
+-- created that way are baselined at version 0 (spring.flyway.baseline-on-migrate and
+-- baseline-version), so this migration also runs on them: every statement is IF NOT EXISTS
+-- and only adds the tables such a database is missing. Indexes are built by the later,
+-- non-transactional migrations, so that existing tables stay writable while they are created.
+
+CREATE TABLE IF NOT EXISTS mugs_user (
+    id          uuid                        NOT NULL,
+    first_name  varchar(255)                NOT NULL,
+    last_name   varchar(255)                NOT NULL,
+    email       varchar(255),
+    created_at  timestamp(6) with time zone NOT NULL,
+    modified_at timestamp(6) with time zone NOT NULL,
+    PRIMARY KEY (id),
+    UNIQUE (email)
+);
+
+CREATE TABLE IF NOT EXISTS mugs_location (
+    id                uuid                        NOT NULL,
+    name              varchar(255)                NOT NULL,
+    description       varchar(255),
+    address_line1     varchar(255),
+    address_line2     varchar(255),
+    address_city      varchar(255),
+    address_state     varchar(255),
+    address_zip_code  varchar(255),
+    address_country   varchar(255),
+    address_latitude  float(53),
+    address_longitude float(53),
+    photo_url         varchar(255),
+    created_at        timestamp(6) with time zone NOT NULL,
+    modified_at       timestamp(6) with time zone NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS mugs_mug (
+    id           uuid         NOT NULL,
+    display_name varchar(255) NOT NULL,
+    user_id      uuid         NOT NULL,
+    location_id  uuid         NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk1wyadjsni8w2f5ha5esaal4bh FOREIGN KEY (user_id) REFERENCES mugs_user,
+    CONSTRAINT fkjem44k702s24y4vs246q5y24v FOREIGN KEY (location_id) REFERENCES mugs_location
+);
+
+CREATE TABLE IF NOT EXISTS mugs_mug_count (
+    owner_id   uuid         NOT NULL,
+    owner_type varchar(255) NOT NULL CHECK (owner_type IN ('USER', 'LOCATION')),
+    mug_count  bigint       NOT NULL,
+    PRIMARY KEY (owner_id)
+);
@@ -0,0 +1,12 @@
+-- Carries every mugs_mug column, so MugRepository.findAllByUserId and findIdsByUserId can
+-- read a user's mugs with an index-only scan once vacuum has marked the table's pages
+-- all-visible, instead of visiting a heap page per mug. It also serves as the index on the
+-- user_id foreign key, so there is no plain user_id index.
+--
+-- Built CONCURRENTLY so that writes to mugs_mug continue while it is created; Flyway runs
+-- such statements outside a transaction, so this file must not contain transactional ones.
+-- A build that fails leaves an INVALID index behind: drop it and run flyway repair before
+-- migrating again.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_mugs_mug_user_id_covering
+    ON mugs_mug (user_id) INCLUDE (id, location_id, display_name);
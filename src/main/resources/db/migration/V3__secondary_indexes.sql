@@ -0,0 +1,21 @@
+-- The remaining indexes of the baseline schema. Legacy databases reach this migration with
+-- their tables already full, so every index is built CONCURRENTLY and writes continue while
+-- it is created; Flyway runs the file outside a transaction. Databases indexed by the old
+-- schema-postgresql.sql already have the location indexes, which IF NOT EXISTS skips. A build
+-- that fails leaves an INVALID index behind: drop it and run flyway repair before migrating
+-- again.
+
+-- PostgreSQL does not index foreign keys; without this, a location's mugs are found by
+-- scanning mugs_mug. The user_id foreign key is covered by V2's index.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_mugs_mug_location_id ON mugs_mug (location_id);
+
+-- Case-insensitive address filters on GET /locations, in keyset (id) order.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_mugs_location_city ON mugs_location (lower(address_city), id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_mugs_location_state ON mugs_location (lower(address_state), id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_mugs_location_country ON mugs_location (lower(address_country), id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_mugs_location_zip_code ON mugs_location (lower(address_zip_code), id);
+
+-- Full-text search on GET /locations/search. The expression must match
+-- LocationRepository.search exactly for the planner to use the index.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_mugs_location_search ON mugs_location
+    USING GIN (to_tsvector('english', coalesce(name, '') || ' ' || coalesce(description, '')));
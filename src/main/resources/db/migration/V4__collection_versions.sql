@@ -0,0 +1,13 @@
+-- A version per collection, raised by every write to it, so the ETags of GET /users and
+-- GET /locations are a primary-key lookup instead of COUNT(*) and MAX(modified_at) over the
+-- table; see CollectionVersionRepository. A small new table, so this runs in a transaction.
+
+CREATE TABLE IF NOT EXISTS mugs_collection_version (
+    name    varchar(255) NOT NULL CHECK (name IN ('USERS', 'LOCATIONS')),
+    version bigint       NOT NULL,
+    PRIMARY KEY (name)
+);
+
+INSERT INTO mugs_collection_version (name, version)
+VALUES ('USERS', 1), ('LOCATIONS', 1)
+ON CONFLICT (name) DO NOTHING;
@@ -0,0 +1,18 @@
+-- Gives every user and location a mugs_mug_count row counted from mugs_mug. A database
+-- baselined from the ddl-auto schema reaches this point with its mugs but without counters,
+-- and the services only adjust counters that exist. Counters that do exist are maintained and
+-- kept as they are.
+
+INSERT INTO mugs_mug_count (owner_id, owner_type, mug_count)
+SELECT u.id, 'USER', count(m.id)
+FROM mugs_user u
+LEFT JOIN mugs_mug m ON m.user_id = u.id
+GROUP BY u.id
+ON CONFLICT (owner_id) DO NOTHING;
+
+INSERT INTO mugs_mug_count (owner_id, owner_type, mug_count)
+SELECT l.id, 'LOCATION', count(m.id)
+FROM mugs_location l
+LEFT JOIN mugs_mug m ON m.location_id = l.id
+GROUP BY l.id
+ON CONFLICT (owner_id) DO NOTHING;
@@ -0,0 +1,85 @@
+package com.overmild.mugs.config
+
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.sql.Connection
+import java.sql.SQLException
+import java.sql.SQLTransientConnectionException
+import java.time.Duration
+
+class ConnectionThrottlingDataSourceSpec extends Specification {
+
+    DataSource target = Mock()
+    ConnectionThrottlingDataSource dataSource = new ConnectionThrottlingDataSource(target, 2, Duration.ofMillis(50))
+
+    def "holds a permit until the connection is closed"() {
+        given:
+        Connection delegate = Mock()
+        target.getConnection() >> delegate
+
+        when:
+        def connection = dataSource.getConnection()
+
+        then:
+        dataSource.availablePermits() == 1
+
+        when:
+        connection.close()
+
+        then:
+        1 * delegate.close()
+        dataSource.availablePermits() == 2
+    }
+
+    def "closing a connection twice releases its permit once"() {
+        given:
+        target.getConnection() >> Mock(Connection)
+
+        when:
+        def connection = dataSource.getConnection()
+        connection.close()
+        connection.close()
+
+        then:
+        dataSource.availablePermits() == 2
+    }
+
+    def "times out when every permit is held"() {
+        given:
+        target.getConnection() >> Mock(Connection)
+        dataSource.getConnection()
+        dataSource.getConnection()
+
+        when:
+        dataSource.getConnection()
+
+        then:
+        thrown(SQLTransientConnectionException)
+        dataSource.availablePermits() == 0
+    }
+
+    def "releases the permit when the pool fails to hand out a connection"() {
+        given:
+        target.getConnection() >> { throw new SQLException("pool exhausted") }
+
+        when:
+        dataSource.getConnection()
+
+        then:
+        thrown(SQLException)
+        dataSource.availablePermits() == 2
+    }
+
+    def "delegates other calls to the pooled connection"() {
+        given:
+        Connection delegate = Mock()
+        target.getConnection() >> delegate
+
+        when:
+        dataSource.getConnection().setAutoCommit(false)
+
+        then:
+        1 * delegate.setAutoCommit(false)
+    }
+}
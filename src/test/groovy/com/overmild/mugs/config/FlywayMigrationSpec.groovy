@@ -0,0 +1,119 @@
+package com.overmild.mugs.config
+
+import com.overmild.mugs.MugsApplication
+import com.overmild.mugs.service.MugCountReconciler
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres
+import org.flywaydb.core.Flyway
+import org.springframework.boot.builder.SpringApplicationBuilder
+import org.springframework.context.ConfigurableApplicationContext
+import org.springframework.core.io.ClassPathResource
+import spock.lang.AutoCleanup
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.sql.DriverManager
+
+/**
+ * Migrates an embedded PostgreSQL, empty or as the pre-migration setup left it, and starts the
+ * application on it so Hibernate validates the entities against the migrated schema.
+ */
+class FlywayMigrationSpec extends Specification {
+
+    @Shared
+    @AutoCleanup
+    EmbeddedPostgres postgres = EmbeddedPostgres.start()
+
+    ConfigurableApplicationContext context
+
+    def cleanup() {
+        context?.close()
+    }
+
+    def "an empty database is migrated to the latest version and validates"() {
+        given:
+        def url = createDatabase("fresh")
+
+        when:
+        context = start(url)
+        def flyway = context.getBean(Flyway)
+
+        then:
+        flyway.info().applied()*.version*.version == ["1", "2", "3", "4", "5"]
+        flyway.validateWithResult().validationSuccessful
+        indexes(url).containsAll(["idx_mugs_mug_user_id_covering", "idx_mugs_location_search"])
+        !indexes(url).contains("idx_mugs_mug_user_id")
+
+        and: "the mug counts reconcile under PostgreSQL's locks"
+        context.getBean(MugCountReconciler).reconcile() == 0
+    }
+
+    def "a database created before migrations is baselined at 0 and migrated from V1"() {
+        given: "the tables as ddl-auto created them, without any indexes, and a user with a mug"
+        def url = createDatabase("legacy")
+        execute(url, new ClassPathResource("db/migration/V1__baseline.sql").getContentAsString(StandardCharsets.UTF_8)
+                .split(";").findAll { it.contains("CREATE TABLE") }.join(";"))
+        execute(url, "INSERT INTO mugs_user (id, first_name, last_name, email, created_at, modified_at) " +
+                "VALUES ('00000000-0000-0000-0000-000000000001', 'Ada', 'Lovelace', 'ada@example.com', now(), now())")
+        execute(url, "INSERT INTO mugs_location (id, name, created_at, modified_at) " +
+                "VALUES ('00000000-0000-0000-0000-000000000002', 'Cafe', now(), now())")
+        execute(url, "INSERT INTO mugs_mug (id, display_name, user_id, location_id) " +
+                "VALUES (gen_random_uuid(), 'Mug', '00000000-0000-0000-0000-000000000001', " +
+                "'00000000-0000-0000-0000-000000000002')")
+
+        when:
+        context = start(url)
+        def flyway = context.getBean(Flyway)
+
+        then:
+        def applied = flyway.info().applied()
+        applied*.version*.version == ["0", "1", "2", "3", "4", "5"]
+        applied[0].type.baseline
+        flyway.validateWithResult().validationSuccessful
+        indexes(url).containsAll(["idx_mugs_mug_user_id_covering", "idx_mugs_mug_location_id",
+                                  "idx_mugs_location_search"])
+        !indexes(url).contains("idx_mugs_mug_user_id")
+        count(url, "SELECT count(*) FROM mugs_user") == 1
+
+        and: "the counters are backfilled from the mugs"
+        count(url, "SELECT count(*) FROM mugs_mug_count WHERE mug_count = 1") == 2
+        context.getBean(MugCountReconciler).reconcile() == 0
+    }
+
+    ConfigurableApplicationContext start(String url) {
+        new SpringApplicationBuilder(MugsApplication).run(
+                "--spring.datasource.url=" + url,
+                "--spring.datasource.username=postgres",
+                "--server.port=0",
+                "--mugs.mug-counts.reconcile-cron=-")
+    }
+
+    String createDatabase(String name) {
+        execute(postgres.getJdbcUrl("postgres", "postgres"), "CREATE DATABASE " + name)
+        postgres.getJdbcUrl("postgres", name)
+    }
+
+    static void execute(String url, String sql) {
+        DriverManager.getConnection(url).withCloseable { it.createStatement().execute(sql) }
+    }
+
+    static long count(String url, String sql) {
+        DriverManager.getConnection(url).withCloseable { connection ->
+            def result = connection.createStatement().executeQuery(sql)
+            result.next()
+            result.getLong(1)
+        }
+    }
+
+    static List<String> indexes(String url) {
+        DriverManager.getConnection(url).withCloseable { connection ->
+            def result = connection.createStatement()
+                    .executeQuery("SELECT indexname FROM pg_indexes WHERE schemaname = 'public'")
+            def names = []
+            while (result.next()) {
+                names << result.getString(1)
+            }
+            names
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.overmild.mugs.config
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+class GradientLimitSpec extends Specification {
+
+    static final long MILLIS = 1_000_000
+
+    GradientLimit limit = new GradientLimit(new ConcurrencyLimitProperties(true, 10, 2, 50, 1.5, 0.2, Duration.ofSeconds(1)))
+
+    def "admits requests up to the limit"() {
+        when:
+        def admitted = (1..12).count { limit.tryAcquire() }
+
+        then:
+        admitted == 10
+        limit.inFlight == 10
+
+        when:
+        limit.release()
+
+        then:
+        limit.tryAcquire()
+    }
+
+    def "grows while latency holds steady and the limit is in use"() {
+        when:
+        100.times { busy { limit.release(10 * MILLIS) } }
+
+        then:
+        limit.limit == 50
+    }
+
+    def "shrinks when latency rises"() {
+        given:
+        100.times { busy { limit.release(10 * MILLIS) } }
+
+        when:
+        100.times { busy { limit.release(200 * MILLIS) } }
+
+        then: "halving the limit and adding its square root settles at 4"
+        limit.limit == 4
+    }
+
+    def "does not grow while less than half the limit is in use"() {
+        when:
+        100.times {
+            limit.tryAcquire()
+            limit.release(10 * MILLIS)
+        }
+
+        then:
+        limit.limit == 10
+        limit.inFlight == 0
+    }
+
+    def "clamps the initial limit"() {
+        expect:
+        new GradientLimit(new ConcurrencyLimitProperties(true, 500, 2, 50, 1.5, 0.2, Duration.ofSeconds(1))).limit == 50
+    }
+
+    /** Runs {@code release} with as many requests in flight as the limit admits. */
+    private void busy(Closure release) {
+        int acquired = 0
+        while (limit.tryAcquire()) {
+            acquired++
+        }
+        release()
+        (acquired - 1).times { limit.release() }
+    }
+}
@@ -0,0 +1,52 @@
+package com.overmild.mugs.config
+
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.model.ChangeEvent
+import com.overmild.mugs.model.Mug
+import org.springframework.aot.hint.MemberCategory
+import org.springframework.aot.hint.RuntimeHints
+import org.springframework.aot.hint.TypeReference
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates
+import spock.lang.Specification
+
+class NativeHintsSpec extends Specification {
+
+    RuntimeHints hints = new RuntimeHints()
+
+    def setup() {
+        new NativeHints().registerHints(hints, getClass().classLoader)
+    }
+
+    def "registers entities for field access and construction"() {
+        expect:
+        RuntimeHintsPredicates.reflection().onType(MugEntity)
+                .withMemberCategories(MemberCategory.ACCESS_DECLARED_FIELDS, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)
+                .test(hints)
+    }
+
+    def "registers the generated mappers, which exist"() {
+        expect:
+        RuntimeHintsPredicates.reflection().onType(TypeReference.of(mapper)).test(hints)
+        Class.forName(mapper)
+
+        where:
+        mapper << ["com.overmild.mugs.mapper.UserMapperImpl",
+                   "com.overmild.mugs.mapper.LocationMapperImpl",
+                   "com.overmild.mugs.mapper.MugMapperImpl"]
+    }
+
+    def "registers JSON bindings for models written outside controller signatures"() {
+        expect:
+        RuntimeHintsPredicates.reflection().onMethodInvocation(model, "get" + property).test(hints)
+
+        where:
+        model       | property
+        ChangeEvent | "Data"
+        Mug         | "DisplayName"
+    }
+
+    def "registers the Hibernate session listener for instantiation by name"() {
+        expect:
+        RuntimeHintsPredicates.reflection().onConstructorInvocation(RequestTraceSessionListener.getConstructor()).test(hints)
+    }
+}
@@ -0,0 +1,126 @@
+package com.overmild.mugs.config
+
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.UserRepository
+import com.overmild.mugs.service.UserService
+import org.springframework.beans.factory.InitializingBean
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.boot.test.context.TestConfiguration
+import org.springframework.context.annotation.Bean
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.transaction.support.TransactionTemplate
+import spock.lang.Specification
+
+import jakarta.persistence.EntityManager
+import jakarta.persistence.EntityManagerFactory
+import javax.sql.DataSource
+
+/**
+ * Runs the read/write routing against two separate in-memory databases: rows written
+ * through the application land on the primary, while read-only service methods only see
+ * what is on the replica.
+ */
+@SpringBootTest(properties = [
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "mugs.datasource.replica.url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1",
+        "mugs.datasource.replica.username=sa",
+])
+@ActiveProfiles("test")
+class ReadReplicaRoutingSpec extends Specification {
+
+    /** Hibernate only creates the schema on the primary, so copy it to the replica before anything reads. */
+    @TestConfiguration
+    static class ReplicaSchema {
+
+        @Bean
+        InitializingBean replicaSchema(EntityManagerFactory entityManagerFactory,
+                                       @Qualifier("primaryDataSource") DataSource primary,
+                                       @Qualifier("replicaDataSource") DataSource replica) {
+            return {
+                def ddl = new JdbcTemplate(primary).queryForList("SCRIPT NODATA", String)
+                def replicaJdbc = new JdbcTemplate(replica)
+                ddl.findAll { !it.startsWith("CREATE USER") }.each { replicaJdbc.execute(it) }
+            } as InitializingBean
+        }
+    }
+
+    @Autowired
+    UserService userService
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    EntityManager entityManager
+
+    @Autowired
+    TransactionTemplate transactionTemplate
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    DataSource primary
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    DataSource replica
+
+    def cleanup() {
+        new JdbcTemplate(primary).execute("DELETE FROM mugs_user")
+        new JdbcTemplate(replica).execute("DELETE FROM mugs_user")
+    }
+
+    def "writes go to the primary and read-only reads to the replica"() {
+        when:
+        def saved = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+
+        then: "the write is on the primary only"
+        count(primary) == 1
+        count(replica) == 0
+
+        and: "read-only service methods do not see it until it reaches the replica"
+        userService.getAllUsers(null, 10).items.isEmpty()
+
+        when:
+        new JdbcTemplate(replica).update(
+                "INSERT INTO mugs_user (id, first_name, last_name, email, created_at, modified_at) VALUES (?, ?, ?, ?, ?, ?)",
+                saved.id, "Replica", "Copy", "ada@example.com", saved.createdAt, saved.modifiedAt)
+
+        then:
+        userService.getUserById(saved.id).firstName == "Replica"
+    }
+
+    def "reads inside a read-write transaction stay on the primary"() {
+        given:
+        def saved = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+
+        expect:
+        transactionTemplate.execute { userService.getUserById(saved.id) }.firstName == "Ada"
+    }
+
+    def "read-only transactions load entities read-only and never flush"() {
+        given:
+        def saved = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        new JdbcTemplate(replica).update(
+                "INSERT INTO mugs_user (id, first_name, last_name, email, created_at, modified_at) VALUES (?, ?, ?, ?, ?, ?)",
+                saved.id, "Ada", "Lovelace", "ada@example.com", saved.createdAt, saved.modifiedAt)
+        def readOnly = new TransactionTemplate(transactionTemplate.transactionManager)
+        readOnly.readOnly = true
+
+        when:
+        readOnly.executeWithoutResult {
+            def entity = entityManager.find(UserEntity, saved.id)
+            assert entityManager.unwrap(org.hibernate.Session).isReadOnly(entity)
+            entity.firstName = "Changed"
+        }
+
+        then:
+        new JdbcTemplate(replica).queryForObject("SELECT first_name FROM mugs_user", String) == "Ada"
+    }
+
+    private static int count(DataSource dataSource) {
+        new JdbcTemplate(dataSource).queryForObject("SELECT count(*) FROM mugs_user", Integer)
+    }
+}
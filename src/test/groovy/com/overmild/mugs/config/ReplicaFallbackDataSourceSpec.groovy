@@ -0,0 +1,106 @@
+package com.overmild.mugs.config
+
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.sql.Connection
+import java.sql.SQLException
+import java.sql.SQLNonTransientConnectionException
+import java.sql.SQLTransientConnectionException
+import java.time.Duration
+
+class ReplicaFallbackDataSourceSpec extends Specification {
+
+    DataSource replica = Mock()
+    DataSource primary = Mock()
+    Connection replicaConnection = Mock()
+    Connection primaryConnection = Mock()
+
+    def "hands out replica connections while the replica is up"() {
+        given:
+        def dataSource = new ReplicaFallbackDataSource(replica, primary, Duration.ofMinutes(1))
+
+        when:
+        def connection = dataSource.getConnection()
+
+        then:
+        1 * replica.getConnection() >> replicaConnection
+        0 * primary.getConnection()
+        connection.is(replicaConnection)
+        !dataSource.replicaSuspended()
+    }
+
+    def "falls back to the primary and stops trying the replica until the retry interval passes"() {
+        given:
+        def dataSource = new ReplicaFallbackDataSource(replica, primary, Duration.ofMinutes(1))
+
+        when:
+        def first = dataSource.getConnection()
+        def second = dataSource.getConnection()
+
+        then:
+        1 * replica.getConnection() >> { throw replicaDown() }
+        2 * primary.getConnection() >> primaryConnection
+        first.is(primaryConnection)
+        second.is(primaryConnection)
+        dataSource.replicaSuspended()
+    }
+
+    def "tries the replica again once the retry interval has passed"() {
+        given:
+        def dataSource = new ReplicaFallbackDataSource(replica, primary, Duration.ZERO)
+
+        when:
+        def first = dataSource.getConnection()
+        def second = dataSource.getConnection()
+
+        then:
+        2 * replica.getConnection() >> { throw replicaDown() } >> replicaConnection
+        1 * primary.getConnection() >> primaryConnection
+        first.is(primaryConnection)
+        second.is(replicaConnection)
+    }
+
+    def "rethrows pool timeouts without suspending the replica"() {
+        given:
+        def dataSource = new ReplicaFallbackDataSource(replica, primary, Duration.ofMinutes(1))
+
+        when:
+        dataSource.getConnection()
+
+        then:
+        1 * replica.getConnection() >> {
+            throw new SQLTransientConnectionException("replica - Connection is not available, request timed out after 2000ms.")
+        }
+        0 * primary.getConnection()
+        def ex = thrown(SQLTransientConnectionException)
+        ex.message.contains("request timed out")
+        !dataSource.replicaSuspended()
+
+        when:
+        def connection = dataSource.getConnection()
+
+        then:
+        1 * replica.getConnection() >> replicaConnection
+        connection.is(replicaConnection)
+    }
+
+    def "treats SQLState class 08 and non-transient connection errors as connectivity failures"() {
+        expect:
+        ReplicaFallbackDataSource.isConnectivityFailure(exception) == outage
+
+        where:
+        exception                                                 | outage
+        replicaDown()                                             | true
+        new SQLNonTransientConnectionException("refused")         | true
+        new SQLException("refused", "08001")                      | true
+        new SQLTransientConnectionException("timed out")          | false
+        new SQLException("canceling statement", "57014")          | false
+    }
+
+    /** How Hikari reports a pool whose database cannot be reached. */
+    private static SQLException replicaDown() {
+        new SQLTransientConnectionException("replica - Connection is not available, request timed out after 2000ms.",
+                "08001", new SQLException("Connection to replica-host:5432 refused", "08001"))
+    }
+}
@@ -0,0 +1,119 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import com.overmild.mugs.service.BatchGet
+import com.overmild.mugs.support.SqlCapture
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.MediaType
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Runs the batch lookups against an in-memory database and checks the queries they send.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class BatchGetQuerySpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    MockMvc mockMvc
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).build()
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+    }
+
+    def "POST /users:batchGet loads each chunk of ids with one padded IN query"() {
+        given:
+        def users = userRepository.saveAll((1..300).collect {
+            new UserEntity(firstName: "User$it", lastName: "Test", email: "user$it@example.com")
+        })
+        def ids = users*.id + [UUID.randomUUID()]
+
+        when:
+        def statements = SqlCapture.capture {
+            mockMvc.perform(post("/users:batchGet")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(body(ids)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath('$.length()').value(301))
+                    .andExpect(jsonPath('$[0].id').value(ids[0].toString()))
+                    .andExpect(jsonPath('$[299].item.email').value("user300@example.com"))
+                    .andExpect(jsonPath('$[300].status').value("NOT_FOUND"))
+        }
+
+        then: "128, 128 and the remaining 45 ids padded to 64"
+        statements.size() == 3
+        statements.collect { it.count('?') } == [BatchGet.CHUNK_SIZE, BatchGet.CHUNK_SIZE, 64]
+    }
+
+    def "POST /mugs:batchGet loads mugs with their users and locations in one query"() {
+        given:
+        def user = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        def location = locationRepository.save(new LocationEntity(name: "Kitchen"))
+        def mugs = (1..3).collect {
+            mugRepository.save(new MugEntity(displayName: "Mug $it", user: user, location: location))
+        }
+
+        when:
+        def statements = SqlCapture.capture {
+            mockMvc.perform(post("/mugs:batchGet")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(body(mugs*.id.reverse())))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath('$[0].item.displayName').value("Mug 3"))
+                    .andExpect(jsonPath('$[0].item.user.email').value("ada@example.com"))
+                    .andExpect(jsonPath('$[2].item.location.name').value("Kitchen"))
+        }
+
+        then:
+        statements.size() == 1
+    }
+
+    def "POST /locations:batchGet returns locations in request order"() {
+        given:
+        def kitchen = locationRepository.save(new LocationEntity(name: "Kitchen"))
+        def office = locationRepository.save(new LocationEntity(name: "Office"))
+
+        expect:
+        mockMvc.perform(post("/locations:batchGet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body([office.id, kitchen.id])))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$[0].item.name').value("Office"))
+                .andExpect(jsonPath('$[1].item.name').value("Kitchen"))
+    }
+
+    private static String body(List<UUID> ids) {
+        """{"ids":[${ids.collect { "\"$it\"" }.join(',')}]}"""
+    }
+}
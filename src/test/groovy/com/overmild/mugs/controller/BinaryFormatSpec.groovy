@@ -0,0 +1,156 @@
+package com.overmild.mugs.controller
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper
+import com.overmild.mugs.config.BinaryFormatConfig
+import com.overmild.mugs.entity.AddressEmbeddable
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.model.Address
+import com.overmild.mugs.model.Location
+import com.overmild.mugs.model.Mug
+import com.overmild.mugs.model.User
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.MediaType
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+import spock.lang.Unroll
+import tools.jackson.databind.json.JsonMapper
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Negotiates CBOR and Smile with the Accept and Content-Type headers and checks they carry
+ * the same data as the JSON representation.
+ */
+@SpringBootTest(properties = "mugs.purge.sync-threshold=0")
+@ActiveProfiles("test")
+class BinaryFormatSpec extends Specification {
+
+    static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile")
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    @Autowired
+    JsonMapper jsonMapper
+
+    MockMvc mockMvc
+    JsonMapper json = JsonMapper.builder().build()
+    UserEntity ada
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).build()
+        ada = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        def cafe = locationRepository.save(new LocationEntity(name: "Cafe", address: new AddressEmbeddable(city: "Austin")))
+        mugRepository.saveAll((1..5).collect { new MugEntity(displayName: "Mug $it", user: ada, location: cafe) })
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+    }
+
+    @Unroll
+    def "Accept: #mediaType gets the mugs in that format"() {
+        given:
+        def expected = json.readValue(mockMvc.perform(get("/mugs?limit=5").accept(MediaType.APPLICATION_JSON))
+                .andReturn().response.contentAsByteArray, Map)
+
+        when:
+        def response = mockMvc.perform(get("/mugs?limit=5").accept(mediaType))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(mediaType))
+                .andReturn().response
+
+        then:
+        def body = mapper.readValue(response.contentAsByteArray, Map)
+        body == expected
+        body.items.size() == 5
+        !new String(response.contentAsByteArray).startsWith("{")
+
+        where:
+        mediaType                  | mapper
+        MediaType.APPLICATION_CBOR | new CBORMapper()
+        SMILE                      | new SmileMapper()
+    }
+
+    def "clients that accept anything get JSON"() {
+        expect:
+        mockMvc.perform(get("/mugs?limit=5").accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+    }
+
+    def "a CBOR request body is read into the model"() {
+        given:
+        ObjectMapper cbor = new CBORMapper()
+        def grace = [firstName: "Grace", lastName: "Hopper", email: "grace@example.com"]
+
+        when:
+        def response = mockMvc.perform(post("/users")
+                .contentType(MediaType.APPLICATION_CBOR)
+                .accept(MediaType.APPLICATION_CBOR)
+                .content(cbor.writeValueAsBytes(grace)))
+                .andExpect(status().isOk())
+                .andReturn().response
+
+        then:
+        def user = cbor.readValue(response.contentAsByteArray, Map)
+        user.subMap(grace.keySet()) == grace
+        user.id
+        userRepository.findAll()*.email.contains("grace@example.com")
+    }
+
+    def "instants are written as ISO-8601 strings"() {
+        when:
+        def response = mockMvc.perform(delete("/users/${ada.id}").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isAccepted())
+                .andReturn().response
+
+        then:
+        def job = new CBORMapper().readValue(response.contentAsByteArray, Map)
+        job.ownerId == ada.id.toString()
+        job.startedAt ==~ /\d{4}-\d\d-\d\dT.*Z/
+    }
+
+    def "JSON and CBOR round-trip a mug identically"() {
+        given:
+        def cbor = BinaryFormatConfig.cborMapper(jsonMapper)
+        def mug = new Mug(UUID.randomUUID(), "Mug",
+                new Location(UUID.randomUUID(), "Cafe", "Cozy", new Address(line1: "1 Main St", city: "Austin"), null),
+                new User(UUID.randomUUID(), "Ada", "Lovelace", "ada@example.com"))
+
+        when:
+        def fromJson = jsonMapper.readValue(jsonMapper.writeValueAsBytes(mug), Mug)
+        def fromCbor = cbor.readValue(cbor.writeValueAsBytes(mug), Mug)
+
+        then:
+        fromJson == mug
+        fromCbor == fromJson
+        cbor.readValue(cbor.writeValueAsBytes(mug), Map) == jsonMapper.readValue(jsonMapper.writeValueAsBytes(mug), Map)
+    }
+}
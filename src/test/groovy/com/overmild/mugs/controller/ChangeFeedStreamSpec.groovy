@@ -0,0 +1,137 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.MediaType
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+import tools.jackson.databind.json.JsonMapper
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Streams GET /changes while locations and users are written through the API.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ChangeFeedStreamSpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    MockMvc mockMvc
+    JsonMapper json = JsonMapper.builder().build()
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).build()
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+    }
+
+    def "committed writes are streamed to subscribers"() {
+        given:
+        def stream = mockMvc.perform(get("/changes").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn().response
+
+        when:
+        def id = json.readTree(mockMvc.perform(post("/locations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content('{"name":"Congress Coffee"}'))
+                .andExpect(status().isOk())
+                .andReturn().response.contentAsString).get("id").asString()
+        mockMvc.perform(delete("/locations/$id")).andExpect(status().isOk())
+
+        then:
+        conditions.eventually {
+            assert stream.contentAsString.contains("event:location.deleted")
+        }
+        def events = stream.contentAsString.split("\n\n").findAll { !it.startsWith(":") }
+        events[0].contains("event:location.created")
+        json.readTree(events[0].find(/(?m)^data:(.*)$/) { it[1] }).get("data").get("name").asString() == "Congress Coffee"
+        events[1].contains("event:location.deleted")
+        events[1].contains(id)
+    }
+
+    def "deleting a user announces its mugs with one bulk event before the user"() {
+        given:
+        def ada = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        def cafe = locationRepository.save(new LocationEntity(name: "Cafe"))
+        mugRepository.saveAll((1..3).collect { new MugEntity(displayName: "Mug $it", user: ada, location: cafe) })
+        def stream = mockMvc.perform(get("/changes").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn().response
+
+        when:
+        mockMvc.perform(delete("/users/${ada.id}")).andExpect(status().isOk())
+
+        then:
+        conditions.eventually {
+            assert stream.contentAsString.contains("event:user.deleted")
+        }
+        def events = stream.contentAsString.split("\n\n").findAll { !it.startsWith(":") }
+        events.size() == 2
+        events[0].contains("event:mug.bulk_deleted")
+        def bulk = json.readTree((events[0] =~ /(?m)^data:(.*)$/)[0][1])
+        bulk.get("id").asString() == ada.id.toString()
+        bulk.get("data").get("owner").asString() == "USER"
+        bulk.get("data").get("ownerId").asString() == ada.id.toString()
+        bulk.get("data").get("count").asLong() == 3
+        events[1].contains("event:user.deleted")
+        events[1].contains(ada.id.toString())
+    }
+
+    def "an import is announced with one bulk event"() {
+        given:
+        def ada = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        def cafe = locationRepository.save(new LocationEntity(name: "Cafe"))
+        def rows = (1..3).collect {
+            [displayName: "Mug " + it, user: [id: ada.id.toString()], location: [id: cafe.id.toString()]]
+        }
+        def stream = mockMvc.perform(get("/changes").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn().response
+
+        when:
+        mockMvc.perform(post("/mugs/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json.writeValueAsString(rows)))
+                .andExpect(status().isOk())
+
+        then:
+        conditions.eventually {
+            assert stream.contentAsString.contains("event:mug.bulk_created")
+        }
+        def events = stream.contentAsString.split("\n\n").findAll { !it.startsWith(":") }
+        events.size() == 1
+        json.readTree((events[0] =~ /(?m)^data:(.*)$/)[0][1]).get("data").get("count").asLong() == 3
+    }
+}
@@ -0,0 +1,94 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.config.ConcurrencyLimitFilter
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+@SpringBootTest(properties = [
+        "mugs.concurrency-limit.initial-limit=2",
+        "mugs.concurrency-limit.min-limit=2",
+        "mugs.concurrency-limit.retry-after=3s"
+])
+@ActiveProfiles("test")
+class ConcurrencyLimitSpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    ConcurrencyLimitFilter filter
+
+    @Autowired
+    MeterRegistry meterRegistry
+
+    MockMvc mockMvc
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).addFilters(filter).build()
+    }
+
+    def "rejects requests over the route's limit with 503 and Retry-After"() {
+        given:
+        def limit = filter.getLimit("GET /mugs")
+        2.times { limit.tryAcquire() }
+
+        when:
+        def result = mockMvc.perform(get("/mugs"))
+
+        then:
+        result.andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "3"))
+                .andExpect(jsonPath('$.status').value(503))
+                .andExpect(jsonPath('$.message').value("Too many concurrent GET /mugs requests"))
+        meterRegistry.get("mugs.concurrency.rejected").tag("route", "GET /mugs").counter().count() >= 1
+        meterRegistry.get("mugs.api.errors").tag("exception", "ServiceUnavailableException").counter().count() >= 1
+
+        and: "other routes are unaffected"
+        mockMvc.perform(get("/users")).andExpect(status().isOk())
+
+        when:
+        2.times { limit.release() }
+
+        then:
+        mockMvc.perform(get("/mugs")).andExpect(status().isOk())
+        limit.inFlight == 0
+    }
+
+    def "publishes the limit of every controller route"() {
+        expect:
+        meterRegistry.get("mugs.concurrency.limit").tag("route", route).gauge().value() >= 2
+
+        where:
+        route << ["GET /mugs", "POST /users", "DELETE /locations/{id}", "GET /purges/{id}", "GET /locations/nearby"]
+    }
+
+    def "routes under the same path have separate limits"() {
+        given:
+        def limit = filter.getLimit("GET /mugs/{id}")
+        2.times { limit.tryAcquire() }
+
+        when:
+        def result = mockMvc.perform(get("/mugs/{id}", UUID.randomUUID()))
+
+        then:
+        result.andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath('$.message').value("Too many concurrent GET /mugs/{id} requests"))
+
+        and: "the collection route keeps its own limit"
+        mockMvc.perform(get("/mugs")).andExpect(status().isOk())
+
+        cleanup:
+        2.times { limit.release() }
+    }
+}
@@ -1,34 +1,138 @@
 package com.overmild.mugs.controller
 
+import com.overmild.mugs.exception.BadRequestException
 import com.overmild.mugs.exception.GlobalExceptionHandler
 import com.overmild.mugs.exception.ResourceNotFoundException
+import com.overmild.mugs.model.BatchGetResult
+import com.overmild.mugs.model.ChangeEvent
+import com.overmild.mugs.model.CursorPage
 import com.overmild.mugs.model.Location
+import com.overmild.mugs.model.LocationFilter
+import com.overmild.mugs.model.NearbyLocation
+import com.overmild.mugs.model.PurgeJob
 import com.overmild.mugs.service.LocationService
+import com.overmild.mugs.service.MugService
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.springframework.http.MediaType
 import org.springframework.test.web.servlet.MockMvc
 import org.springframework.test.web.servlet.setup.MockMvcBuilders
 import spock.lang.Specification
 
+import java.time.Instant
+
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
 
 class LocationControllerSpec extends Specification {
 
     LocationService locationService = Mock()
+    MugService mugService = Mock()
     MockMvc mockMvc = MockMvcBuilders
-            .standaloneSetup(new LocationController(locationService))
-            .setControllerAdvice(new GlobalExceptionHandler())
+            .standaloneSetup(new LocationController(locationService, mugService))
+            .setControllerAdvice(new GlobalExceptionHandler(new SimpleMeterRegistry()))
             .build()
 
+    def setup() {
+        locationService.getLocationsVersion() >> 0L
+    }
+
     def "GET /locations returns 200"() {
         given:
-        locationService.getAllLocations() >> []
+        locationService.getAllLocations(null, 50) >> new CursorPage([], null)
 
         expect:
         mockMvc.perform(get("/locations"))
                 .andExpect(status().isOk())
     }
 
+    def "GET /locations passes cursor and limit and returns the next cursor"() {
+        given:
+        locationService.getAllLocations("abc", 10) >> new CursorPage([], "def")
+
+        expect:
+        mockMvc.perform(get("/locations").param("cursor", "abc").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$.next').value("def"))
+    }
+
+    def "GET /locations returns 400 when the cursor is invalid"() {
+        given:
+        locationService.getAllLocations("bad", 50) >> { throw new BadRequestException("Invalid cursor: bad") }
+
+        expect:
+        mockMvc.perform(get("/locations").param("cursor", "bad"))
+                .andExpect(status().isBadRequest())
+    }
+
+    def "GET /locations with address parameters returns only matching locations"() {
+        given:
+        def match = new Location(UUID.randomUUID(), "Cafe A", null, null, null)
+
+        when:
+        def result = mockMvc.perform(get("/locations").param("city", "Springfield").param("country", "US"))
+
+        then:
+        1 * locationService.findLocations(new LocationFilter("Springfield", null, "US", null), null, 50) >>
+                new CursorPage([match], null)
+        0 * locationService.getAllLocations(_, _)
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath('$.items[0].name').value("Cafe A"))
+    }
+
+    def "GET /locations with fields and address parameters returns partial matching locations"() {
+        when:
+        def result = mockMvc.perform(get("/locations").param("city", "Springfield").param("fields", "name"))
+
+        then:
+        1 * locationService.getLocationFields(new LocationFilter("Springfield", null, null, null), "name", null, 50) >>
+                new CursorPage([[id: UUID.randomUUID(), name: "Cafe A"]], null)
+        0 * locationService.findLocations(_, _, _)
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath('$.items[0].name').value("Cafe A"))
+                .andExpect(jsonPath('$.items[0].address').doesNotExist())
+    }
+
+    def "GET /locations/search returns ranked matches and the next cursor"() {
+        given:
+        def match = new Location(UUID.randomUUID(), "Harbor Cafe", "espresso by the water", null, null)
+        locationService.searchLocations("harbor espresso", null, 10) >> new CursorPage([match], "AAAACg")
+
+        expect:
+        mockMvc.perform(get("/locations/search").param("q", "harbor espresso").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$.items[0].name').value("Harbor Cafe"))
+                .andExpect(jsonPath('$.next').value("AAAACg"))
+    }
+
+    def "GET /locations/search returns 400 without a query"() {
+        expect:
+        mockMvc.perform(get("/locations/search"))
+                .andExpect(status().isBadRequest())
+    }
+
+    def "GET /locations/nearby returns the nearest locations with their distances"() {
+        given:
+        def cafe = new Location(UUID.randomUUID(), "Cafe A", null, null, null)
+        locationService.getNearbyLocations(30.27, -97.74, 5d, 50) >> [new NearbyLocation(cafe, 1.25d)]
+
+        expect:
+        mockMvc.perform(get("/locations/nearby").param("lat", "30.27").param("lon", "-97.74").param("radiusKm", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$[0].location.name').value("Cafe A"))
+                .andExpect(jsonPath('$[0].distanceKm').value(1.25d))
+    }
+
+    def "GET /locations/nearby returns 400 when the service rejects the coordinates"() {
+        given:
+        locationService.getNearbyLocations(95d, 0d, null, 50) >> { throw new BadRequestException("lat out of range") }
+
+        expect:
+        mockMvc.perform(get("/locations/nearby").param("lat", "95").param("lon", "0"))
+                .andExpect(status().isBadRequest())
+    }
+
     def "GET /locations/{id} returns 200"() {
         given:
         def id = UUID.randomUUID()
@@ -39,6 +143,93 @@ class LocationControllerSpec extends Specification {
                 .andExpect(status().isOk())
     }
 
+    def "POST /locations:batchGet returns a result per id in request order"() {
+        given:
+        def found = UUID.randomUUID()
+        def missing = UUID.randomUUID()
+        locationService.getLocationsByIds([found, missing]) >> [
+                BatchGetResult.found(found, new Location(found, "Cafe", "A nice cafe", null, null)),
+                BatchGetResult.notFound(missing)
+        ]
+
+        expect:
+        mockMvc.perform(post("/locations:batchGet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""{"ids":["$found","$missing"]}"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$[0].item.name').value("Cafe"))
+                .andExpect(jsonPath('$[1].id').value(missing.toString()))
+                .andExpect(jsonPath('$[1].status').value("NOT_FOUND"))
+    }
+
+    def "GET /locations/{id} returns an ETag and 304 when If-None-Match matches"() {
+        given:
+        def id = UUID.randomUUID()
+        def modifiedAt = Instant.parse("2026-01-01T00:00:00.000001Z")
+        locationService.getLocationModifiedAt(id) >> modifiedAt
+        locationService.getLocationById(id) >> new Location(id, "Cafe", "A nice cafe", null, null)
+
+        when:
+        def etag = mockMvc.perform(get("/locations/{id}", id))
+                .andExpect(status().isOk())
+                .andReturn().response.getHeader("ETag")
+
+        then:
+        etag == '"' + id + '-1767225600000001"'
+
+        when:
+        def result = mockMvc.perform(get("/locations/{id}", id).header("If-None-Match", etag))
+
+        then:
+        result.andExpect(status().isNotModified())
+        0 * locationService.getLocationById(_)
+    }
+
+    def "GET /locations returns 304 when the collection has not changed"() {
+        given:
+        locationService.getAllLocations(null, 50) >> new CursorPage([], null)
+        def etag = mockMvc.perform(get("/locations"))
+                .andReturn().response.getHeader("ETag")
+
+        when:
+        def result = mockMvc.perform(get("/locations").header("If-None-Match", etag))
+
+        then:
+        result.andExpect(status().isNotModified())
+        0 * locationService.getAllLocations(_, _)
+    }
+
+    def "GET /locations returns 200 with a new ETag when the collection has changed"() {
+        given:
+        locationService.getAllLocations(null, 50) >> new CursorPage([], null)
+        def etag = mockMvc.perform(get("/locations"))
+                .andReturn().response.getHeader("ETag")
+
+        when:
+        def result = mockMvc.perform(get("/locations").header("If-None-Match", etag))
+
+        then:
+        1 * locationService.getLocationsVersion() >> 1L
+        result.andExpect(status().isOk())
+        result.andReturn().response.getHeader("ETag") != etag
+    }
+
+    def "GET /locations tags each query and media type of the collection differently"() {
+        given:
+        locationService.getAllLocations(_, _) >> new CursorPage([], null)
+
+        when:
+        def tags = [get("/locations"),
+                    get("/locations").param("limit", "10"),
+                    get("/locations").param("limit", "10").param("cursor", "abc"),
+                    get("/locations").accept(MediaType.APPLICATION_JSON)]
+                .collect { mockMvc.perform(it).andReturn().response.getHeader("ETag") }
+
+        then:
+        tags.every { it ==~ /"0-[0-9a-f]{16}"/ }
+        tags.toSet().size() == 4
+    }
+
     def "GET /locations/{id} returns 404 when location not found"() {
         given:
         def id = UUID.randomUUID()
@@ -95,12 +286,28 @@ class LocationControllerSpec extends Specification {
     def "DELETE /locations/{id} returns 200"() {
         given:
         def id = UUID.randomUUID()
+        locationService.deleteLocation(id) >> Optional.empty()
 
         expect:
         mockMvc.perform(delete("/locations/{id}", id))
                 .andExpect(status().isOk())
     }
 
+    def "DELETE /locations/{id} returns 202 with the purge when it runs in the background"() {
+        given:
+        def id = UUID.randomUUID()
+        def job = new PurgeJob(UUID.randomUUID(), ChangeEvent.Resource.LOCATION, id, PurgeJob.Status.RUNNING, 0,
+                Instant.parse("2026-01-01T00:00:00Z"), null, null)
+        locationService.deleteLocation(id) >> Optional.of(job)
+
+        expect:
+        mockMvc.perform(delete("/locations/{id}", id))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "http://localhost/purges/" + job.id))
+                .andExpect(jsonPath('$.status').value("RUNNING"))
+                .andExpect(jsonPath('$.ownerId').value(id.toString()))
+    }
+
     def "old singular route GET /location/{id} is no longer available"() {
         expect:
         mockMvc.perform(get("/location/{id}", UUID.randomUUID()))
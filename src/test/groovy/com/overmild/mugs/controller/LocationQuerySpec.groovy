@@ -0,0 +1,161 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.AddressEmbeddable
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.MediaType
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+import tools.jackson.databind.json.JsonMapper
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Runs the address filters on GET /locations and the proximity queries on
+ * GET /locations/nearby against a real database.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class LocationQuerySpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    MockMvc mockMvc
+    JsonMapper json = JsonMapper.builder().build()
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).build()
+        [
+                ["Austin Roasters", "Austin", "TX", "US", "78701"],
+                ["Austin Bakery", "AUSTIN", "TX", "US", "78702"],
+                ["Dallas Diner", "Dallas", "TX", "US", "75201"],
+                ["Austin Tea", "Austin", "MN", "US", "55912"],
+                ["Paris Cafe", "Paris", null, "FR", "75001"],
+        ].each { name, city, state, country, zipCode ->
+            locationRepository.save(new LocationEntity(name: name,
+                    address: new AddressEmbeddable(city: city, state: state, country: country, zipCode: zipCode)))
+        }
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+    }
+
+    def "GET #query returns #expected"() {
+        when:
+        def body = mockMvc.perform(get("/locations?$query"))
+                .andExpect(status().isOk())
+                .andReturn().response.contentAsString
+
+        then:
+        json.readTree(body).get("items").collect { it.get("name").asString() }.toSet() == expected as Set
+
+        where:
+        query                     | expected
+        "city=austin"             | ["Austin Roasters", "Austin Bakery", "Austin Tea"]
+        "city=Austin&state=tx"    | ["Austin Roasters", "Austin Bakery"]
+        "country=FR"              | ["Paris Cafe"]
+        "zipCode=75201"           | ["Dallas Diner"]
+        "city=Houston"            | []
+    }
+
+    def "filtered pages follow the cursor until every match has been returned"() {
+        given:
+        def names = []
+        String cursor = null
+
+        when:
+        def pages = 0
+        while (pages == 0 || cursor != null) {
+            def uri = "/locations?city=austin&limit=2" + (cursor ? "&cursor=$cursor" : "")
+            def page = json.readTree(mockMvc.perform(get(uri)).andReturn().response.contentAsString)
+            names += page.get("items").collect { it.get("name").asString() }
+            cursor = page.get("next").isNull() ? null : page.get("next").asString()
+            pages++
+        }
+
+        then:
+        pages == 2
+        names.toSet() == ["Austin Roasters", "Austin Bakery", "Austin Tea"] as Set
+        names.size() == 3
+    }
+
+    def "the nearby index follows locations with mugs created, moved and deleted through the API"() {
+        given:
+        def nearby = { double lat, double lon ->
+            def body = mockMvc.perform(get("/locations/nearby?lat=$lat&lon=$lon&radiusKm=5"))
+                    .andExpect(status().isOk())
+                    .andReturn().response.contentAsString
+            json.readTree(body).collect { it.get("location").get("name").asString() }
+        }
+        def user = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+
+        when:
+        def created = json.readTree(mockMvc.perform(post("/locations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content('{"name":"Congress Coffee","address":{"latitude":30.2747,"longitude":-97.7404}}'))
+                .andExpect(status().isOk())
+                .andReturn().response.contentAsString)
+        def id = created.get("id").asString()
+
+        then: "a location without mugs is not listed"
+        nearby(30.27, -97.74) == []
+
+        when:
+        mockMvc.perform(post("/mugs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""{"displayName":"Mug","user":{"id":"${user.id}"},"location":{"id":"$id"}}"""))
+                .andExpect(status().isOk())
+
+        then:
+        nearby(30.27, -97.74) == ["Congress Coffee"]
+
+        when:
+        mockMvc.perform(put("/locations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""{"id":"$id","name":"Congress Coffee","address":{"latitude":32.7767,"longitude":-96.7970}}"""))
+                .andExpect(status().isOk())
+
+        then:
+        nearby(30.27, -97.74) == []
+        nearby(32.78, -96.80) == ["Congress Coffee"]
+
+        when:
+        mockMvc.perform(delete("/locations/$id")).andExpect(status().isOk())
+
+        then:
+        nearby(32.78, -96.80) == []
+    }
+
+    def "POST /locations rejects out-of-range coordinates"() {
+        expect:
+        mockMvc.perform(post("/locations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content('{"name":"Nowhere","address":{"latitude":91,"longitude":0}}'))
+                .andExpect(status().isBadRequest())
+    }
+}
@@ -0,0 +1,148 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.AddressEmbeddable
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import com.overmild.mugs.service.JsonMergePatch
+import com.overmild.mugs.support.SqlCapture
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.ResultActions
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Sends merge patches to the PATCH endpoints and checks that only the changed columns are
+ * written.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class MergePatchSpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    MockMvc mockMvc
+    UserEntity user
+    LocationEntity location
+    MugEntity mug
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).build()
+        user = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        location = locationRepository.save(new LocationEntity(name: "Cafe", description: "Cozy",
+                address: new AddressEmbeddable(line1: "1 Main St", city: "Austin")))
+        mug = mugRepository.save(new MugEntity(displayName: "Mug", user: user, location: location))
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+    }
+
+    ResultActions send(String path, String body) {
+        mockMvc.perform(patch(path).contentType(JsonMergePatch.MEDIA_TYPE).content(body))
+    }
+
+    List<String> updates(Closure work) {
+        SqlCapture.capture(work).findAll { it.startsWith("update") }
+    }
+
+    def "PATCH /mugs/{id} writes only the display name"() {
+        when:
+        def statements = updates {
+            send("/mugs/${mug.id}", '{"displayName":"Renamed"}')
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath('$.displayName').value("Renamed"))
+                    .andExpect(jsonPath('$.user.email').value("ada@example.com"))
+        }
+
+        then:
+        statements == ["update mugs_mug set display_name=? where id=?"]
+        mugRepository.findById(mug.id).get().displayName == "Renamed"
+    }
+
+    def "PATCH /locations/{id} of the photo leaves the address alone"() {
+        when:
+        def statements = updates {
+            send("/locations/${location.id}", '{"photoUrl":"https://example.com/p.jpg"}')
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath('$.address.city').value("Austin"))
+        }
+
+        then:
+        statements.size() == 2
+        statements[0] == "update mugs_location set modified_at=?,photo_url=? where id=?"
+        statements[1].startsWith("update mugs_collection_version ")
+    }
+
+    def "PATCH /locations/{id} merges into the address"() {
+        expect:
+        send("/locations/${location.id}", '{"address":{"city":"Dallas"}}')
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$.address.line1').value("1 Main St"))
+                .andExpect(jsonPath('$.address.city').value("Dallas"))
+        locationRepository.findById(location.id).get().address.line1 == "1 Main St"
+    }
+
+    def "PATCH /users/{id} with unchanged values writes nothing"() {
+        when:
+        def statements = updates {
+            send("/users/${user.id}", '{"firstName":"Ada"}').andExpect(status().isOk())
+        }
+
+        then:
+        statements.isEmpty()
+        userRepository.findById(user.id).get().modifiedAt == user.modifiedAt
+    }
+
+    def "PATCH /users/{id} validates the patched user like PUT does"() {
+        expect:
+        send("/users/${user.id}", '{"lastName":null,"email":"not-an-email"}')
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath('$.message').value("Validation failed"))
+                .andExpect(jsonPath('$.details.length()').value(2))
+        userRepository.findById(user.id).get().email == "ada@example.com"
+    }
+
+    def "PATCH /mugs/{id} returns 400 when a patched value cannot be read"() {
+        expect:
+        send("/mugs/${mug.id}", '{"user":{"id":"not-a-uuid"}}')
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath('$.message').value("Malformed request body"))
+    }
+
+    def "PATCH /users/{id} returns 409 when the email belongs to another user"() {
+        given:
+        userRepository.save(new UserEntity(firstName: "Grace", lastName: "Hopper", email: "grace@example.com"))
+
+        expect:
+        send("/users/${user.id}", '{"email":"grace@example.com"}').andExpect(status().isConflict())
+    }
+
+    def "PATCH of a missing resource returns 404"() {
+        expect:
+        send("/locations/${UUID.randomUUID()}", '{"name":"Nowhere"}').andExpect(status().isNotFound())
+    }
+}
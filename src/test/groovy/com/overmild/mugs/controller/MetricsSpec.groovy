@@ -0,0 +1,67 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.UserRepository
+import jakarta.servlet.Filter
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.boot.web.servlet.FilterRegistrationBean
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Checks that the Prometheus scrape exposes the meters dashboards and alerts rely on.
+ */
+@SpringBootTest(properties = "management.defaults.metrics.export.enabled=true")
+@ActiveProfiles("test")
+class MetricsSpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    UserRepository userRepository
+
+    MockMvc mockMvc
+
+    def setup() {
+        mockMvc = webAppContextSetup(context)
+                .addFilters(context.getBeansOfType(FilterRegistrationBean).values()*.filter as Filter[])
+                .build()
+    }
+
+    def cleanup() {
+        userRepository.deleteAllInBatch()
+    }
+
+    def "the Prometheus scrape reports endpoint, service, Hibernate, pool and error meters"() {
+        given:
+        def user = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        mockMvc.perform(get("/users/${user.id}")).andExpect(status().isOk())
+        mockMvc.perform(get("/users/${UUID.randomUUID()}")).andExpect(status().isNotFound())
+
+        when:
+        def scrape = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().response.contentAsString
+
+        then:
+        scrape =~ /http_server_requests_seconds_bucket\{.*status="200".*uri="\/users\/\{id}"/
+        scrape =~ /http_server_requests_seconds_bucket\{.*status="404".*uri="\/users\/\{id}"/
+        scrape =~ /mugs_service_seconds_bucket\{.*class="com.overmild.mugs.service.UserService".*method="getUserById"/
+        scrape.contains('hibernate_query_executions_total')
+        scrape.contains('hibernate_entities_loads_total')
+        scrape.contains('hibernate_second_level_cache_requests_total{')
+        scrape.contains('hibernate_flushes_total')
+        scrape.contains('hibernate_connections_obtained_total')
+        scrape.contains('hikaricp_connections_acquire_seconds')
+        scrape.contains('hikaricp_connections_usage_seconds')
+        scrape =~ /mugs_api_errors_total\{.*exception="ResourceNotFoundException".*status="404".*} 1\.0/
+    }
+}
@@ -1,34 +1,114 @@
 package com.overmild.mugs.controller
 
+import com.overmild.mugs.exception.BadRequestException
 import com.overmild.mugs.exception.GlobalExceptionHandler
 import com.overmild.mugs.exception.ResourceNotFoundException
+import com.overmild.mugs.model.BatchGetResult
+import com.overmild.mugs.model.CursorPage
 import com.overmild.mugs.model.Mug
+import com.overmild.mugs.model.MugImportResult
+import com.overmild.mugs.service.JsonMergePatch
 import com.overmild.mugs.service.MugService
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import jakarta.validation.ConstraintViolationException
+import jakarta.validation.Validation
 import org.springframework.http.MediaType
 import org.springframework.test.web.servlet.MockMvc
 import org.springframework.test.web.servlet.setup.MockMvcBuilders
 import spock.lang.Specification
+import tools.jackson.core.JacksonException
+import tools.jackson.core.JsonGenerator
+import tools.jackson.databind.JavaType
+import tools.jackson.databind.exc.InvalidDefinitionException
+import tools.jackson.databind.json.JsonMapper
+
+import java.util.function.Consumer
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
 
 class MugControllerSpec extends Specification {
 
     MugService mugService = Mock()
     MockMvc mockMvc = MockMvcBuilders
-            .standaloneSetup(new MugController(mugService))
-            .setControllerAdvice(new GlobalExceptionHandler())
+            .standaloneSetup(new MugController(mugService, JsonMapper.builder().build()))
+            .setControllerAdvice(new GlobalExceptionHandler(new SimpleMeterRegistry()))
             .build()
 
     def "GET /mugs returns 200"() {
         given:
-        mugService.getAllMugs() >> []
+        mugService.getAllMugs(null, 50) >> new CursorPage([], null)
 
         expect:
         mockMvc.perform(get("/mugs"))
                 .andExpect(status().isOk())
     }
 
+    def "GET /mugs passes cursor and limit and returns the next cursor"() {
+        given:
+        mugService.getAllMugs("abc", 10) >> new CursorPage([], "def")
+
+        expect:
+        mockMvc.perform(get("/mugs").param("cursor", "abc").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$.next').value("def"))
+    }
+
+    def "GET /mugs returns 400 when the cursor is invalid"() {
+        given:
+        mugService.getAllMugs("bad", 50) >> { throw new BadRequestException("Invalid cursor: bad") }
+
+        expect:
+        mockMvc.perform(get("/mugs").param("cursor", "bad"))
+                .andExpect(status().isBadRequest())
+    }
+
+    def "GET /mugs with fields returns only the requested properties"() {
+        given:
+        def id = UUID.randomUUID()
+        mugService.getMugFields("displayName", null, 50) >> new CursorPage([[id: id, displayName: "Classic"]], null)
+
+        expect:
+        mockMvc.perform(get("/mugs").param("fields", "displayName"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$.items[0].displayName').value("Classic"))
+                .andExpect(jsonPath('$.items[0].user').doesNotExist())
+    }
+
+    def "GET /mugs returns 400 for an unknown field"() {
+        given:
+        mugService.getMugFields("price", null, 50) >> { throw new BadRequestException("Unknown field: price") }
+
+        expect:
+        mockMvc.perform(get("/mugs").param("fields", "price"))
+                .andExpect(status().isBadRequest())
+    }
+
+    def "GET /mugs/export streams one JSON document per line"() {
+        given:
+        def first = new Mug(UUID.randomUUID(), "First", null, null)
+        def second = new Mug(UUID.randomUUID(), "Second", null, null)
+        mugService.exportMugs(_) >> { Consumer<Mug> sink -> sink.accept(first); sink.accept(second) }
+
+        when:
+        def started = mockMvc.perform(get("/mugs/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+        def response = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().response
+
+        then:
+        def lines = response.contentAsString.readLines()
+        lines.size() == 2
+        lines[0].contains('"displayName":"First"')
+        lines[1].contains('"displayName":"Second"')
+    }
+
     def "GET /mugs/{id} returns 200"() {
         given:
         def id = UUID.randomUUID()
@@ -49,6 +129,27 @@ class MugControllerSpec extends Specification {
                 .andExpect(status().isNotFound())
     }
 
+    def "POST /mugs:batchGet returns a result per id in request order"() {
+        given:
+        def found = UUID.randomUUID()
+        def missing = UUID.randomUUID()
+        mugService.getMugsByIds([found, missing, found]) >> [
+                BatchGetResult.found(found, new Mug(found, "My Mug", null, null)),
+                BatchGetResult.notFound(missing),
+                BatchGetResult.found(found, new Mug(found, "My Mug", null, null))
+        ]
+
+        expect:
+        mockMvc.perform(post("/mugs:batchGet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""{"ids":["$found","$missing","$found"]}"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$.length()').value(3))
+                .andExpect(jsonPath('$[0].item.displayName').value("My Mug"))
+                .andExpect(jsonPath('$[1].status').value("NOT_FOUND"))
+                .andExpect(jsonPath('$[2].status').value("FOUND"))
+    }
+
     def "POST /mugs returns 200"() {
         given:
         mugService.createMug(_) >> new Mug(UUID.randomUUID(), "My Mug", null, null)
@@ -68,6 +169,70 @@ class MugControllerSpec extends Specification {
                 .andExpect(status().isBadRequest())
     }
 
+    def "POST /mugs/batch imports a JSON array"() {
+        given:
+        def id = UUID.randomUUID()
+
+        when:
+        def result = mockMvc.perform(post("/mugs/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content('[{"displayName":"One"},{"displayName":"Two"}]'))
+
+        then:
+        1 * mugService.importMugs({ Iterator<Mug> it -> it.toList()*.displayName == ["One", "Two"] }) >>
+                [MugImportResult.created(0, id), MugImportResult.rejected(1, ["user.id: must not be null"])]
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath('$[0].status').value("CREATED"))
+                .andExpect(jsonPath('$[1].errors[0]').value("user.id: must not be null"))
+    }
+
+    def "POST /mugs/batch imports NDJSON"() {
+        when:
+        def result = mockMvc.perform(post("/mugs/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content('{"displayName":"One"}\n{"displayName":"Two"}\n'))
+
+        then:
+        1 * mugService.importMugs({ Iterator<Mug> it -> it.toList()*.displayName == ["One", "Two"] }) >> []
+        result.andExpect(status().isOk())
+    }
+
+    def "POST /mugs/batch hands malformed NDJSON lines to the import as unreadable rows"() {
+        given:
+        def rows = []
+
+        when:
+        def result = mockMvc.perform(post("/mugs/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content('{"displayName":"One"}\n\n{"displayName":\n{"displayName":"Two"}\n'))
+
+        then:
+        1 * mugService.importMugs(_) >> { Iterator<Mug> it ->
+            while (it.hasNext()) {
+                try {
+                    rows << it.next().displayName
+                } catch (JacksonException e) {
+                    rows << null
+                }
+            }
+            []
+        }
+        result.andExpect(status().isOk())
+        rows == ["One", null, "Two"]
+    }
+
+    def "a response that cannot be written is not reported as a malformed request"() {
+        given:
+        mugService.getMugById(_) >> { throw InvalidDefinitionException.from((JsonGenerator) null, "No serializer", (JavaType) null) }
+
+        when:
+        mockMvc.perform(get("/mugs/{id}", UUID.randomUUID()))
+
+        then:
+        def e = thrown(Exception)
+        e.cause instanceof InvalidDefinitionException
+    }
+
     def "PUT /mugs returns 200"() {
         given:
         def id = UUID.randomUUID()
@@ -92,6 +257,45 @@ class MugControllerSpec extends Specification {
                 .andExpect(status().isNotFound())
     }
 
+    def "PATCH /mugs/{id} passes the merge patch to the service"() {
+        given:
+        def id = UUID.randomUUID()
+
+        when:
+        def response = mockMvc.perform(patch("/mugs/{id}", id)
+                .contentType(JsonMergePatch.MEDIA_TYPE)
+                .content('{"displayName":"Patched Mug"}'))
+
+        then:
+        1 * mugService.patchMug(id, { it.get("displayName").asString() == "Patched Mug" }) >>
+                new Mug(id, "Patched Mug", null, null)
+        response.andExpect(status().isOk())
+                .andExpect(jsonPath('$.displayName').value("Patched Mug"))
+    }
+
+    def "PATCH /mugs/{id} requires a merge patch body"() {
+        expect:
+        mockMvc.perform(patch("/mugs/{id}", UUID.randomUUID())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content('{"displayName":"Patched Mug"}'))
+                .andExpect(status().isUnsupportedMediaType())
+    }
+
+    def "PATCH /mugs/{id} returns 400 with the violations when the patched mug is invalid"() {
+        given:
+        def violations = Validation.buildDefaultValidatorFactory().validator
+                .validate(new Mug(null, " ", null, null))
+        mugService.patchMug(_, _) >> { throw new ConstraintViolationException(violations) }
+
+        expect:
+        mockMvc.perform(patch("/mugs/{id}", UUID.randomUUID())
+                .contentType(JsonMergePatch.MEDIA_TYPE)
+                .content('{"displayName":" "}'))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath('$.message').value("Validation failed"))
+                .andExpect(jsonPath('$.details[0]').value("displayName: must not be blank"))
+    }
+
     def "DELETE /mugs/{id} returns 200"() {
         given:
         def id = UUID.randomUUID()
@@ -0,0 +1,221 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.AddressEmbeddable
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.MugCountEntity
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugCountRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import com.overmild.mugs.service.JsonMergePatch
+import com.overmild.mugs.service.MugCountReconciler
+import com.overmild.mugs.support.SqlStatementCounter
+import jakarta.persistence.EntityManagerFactory
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.MediaType
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Writes mugs through the API and checks the per-user and per-location counts follow, are
+ * read with a single statement, and are repaired by {@link MugCountReconciler}.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class MugCountSpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    @Autowired
+    MugCountRepository mugCountRepository
+
+    @Autowired
+    MugCountReconciler reconciler
+
+    MockMvc mockMvc
+    UserEntity ada
+    UserEntity grace
+    LocationEntity cafe
+    LocationEntity office
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).build()
+        mugCountRepository.deleteAllInBatch()
+        ada = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        grace = userRepository.save(new UserEntity(firstName: "Grace", lastName: "Hopper", email: "grace@example.com"))
+        cafe = locationRepository.save(new LocationEntity(name: "Cafe", address: new AddressEmbeddable(city: "Austin")))
+        office = locationRepository.save(new LocationEntity(name: "Office", address: new AddressEmbeddable(city: "Dallas")))
+        reconciler.reconcile()
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+        mugCountRepository.deleteAllInBatch()
+    }
+
+    String createMug(UserEntity user, LocationEntity location) {
+        def body = mockMvc.perform(post("/mugs").contentType(MediaType.APPLICATION_JSON)
+                .content("""{"displayName":"Mug","user":{"id":"${user.id}"},"location":{"id":"${location.id}"}}"""))
+                .andExpect(status().isOk())
+                .andReturn().response.contentAsString
+        (body =~ /"id":"([^"]+)"/)[0][1]
+    }
+
+    long count(String path) {
+        def body = mockMvc.perform(get(path)).andExpect(status().isOk()).andReturn().response.contentAsString
+        (body =~ /"count":(\d+)/)[0][1] as long
+    }
+
+    def "creating mugs counts them for their user and location"() {
+        when:
+        createMug(ada, cafe)
+        createMug(ada, cafe)
+        createMug(ada, office)
+
+        then:
+        count("/users/${ada.id}/mugs/count") == 3
+        count("/users/${grace.id}/mugs/count") == 0
+        count("/locations/${cafe.id}/mugs/count") == 2
+        count("/locations/${office.id}/mugs/count") == 1
+    }
+
+    def "a count is read with one statement however many mugs there are"() {
+        given:
+        def counter = new SqlStatementCounter(entityManagerFactory)
+        mockMvc.perform(post("/mugs/batch").contentType(MediaType.APPLICATION_JSON).content("[" + (1..120).collect {
+            """{"displayName":"Mug $it","user":{"id":"${ada.id}"},"location":{"id":"${cafe.id}"}}"""
+        }.join(",") + "]")).andExpect(status().isOk())
+
+        when:
+        def statements = counter.count {
+            mockMvc.perform(get("/users/${ada.id}/mugs/count"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath('$.id').value(ada.id.toString()))
+                    .andExpect(jsonPath('$.count').value(120))
+        }
+
+        then:
+        statements == 1
+        count("/locations/${cafe.id}/mugs/count") == 120
+    }
+
+    def "moving a mug moves it between the counts"() {
+        given:
+        def mug = createMug(ada, cafe)
+
+        when:
+        mockMvc.perform(patch("/mugs/$mug").contentType(JsonMergePatch.MEDIA_TYPE)
+                .content("""{"user":{"id":"${grace.id}"},"location":{"id":"${office.id}"}}"""))
+                .andExpect(status().isOk())
+
+        then:
+        count("/users/${ada.id}/mugs/count") == 0
+        count("/users/${grace.id}/mugs/count") == 1
+        count("/locations/${cafe.id}/mugs/count") == 0
+        count("/locations/${office.id}/mugs/count") == 1
+    }
+
+    def "deleting a mug takes it off the counts, once"() {
+        given:
+        def mug = createMug(ada, cafe)
+        createMug(ada, cafe)
+
+        when:
+        2.times { mockMvc.perform(delete("/mugs/$mug")).andExpect(status().is2xxSuccessful()) }
+
+        then:
+        count("/users/${ada.id}/mugs/count") == 1
+        count("/locations/${cafe.id}/mugs/count") == 1
+    }
+
+    def "deleting a user takes their mugs off the location counts"() {
+        given:
+        createMug(ada, cafe)
+        createMug(ada, office)
+        createMug(grace, cafe)
+
+        when:
+        mockMvc.perform(delete("/users/${ada.id}")).andExpect(status().isOk())
+
+        then:
+        count("/locations/${cafe.id}/mugs/count") == 1
+        count("/locations/${office.id}/mugs/count") == 0
+        !mugCountRepository.existsById(ada.id)
+        mockMvc.perform(get("/users/${ada.id}/mugs/count")).andExpect(status().isNotFound())
+    }
+
+    def "deleting a location takes its mugs off the user counts"() {
+        given:
+        createMug(ada, cafe)
+        createMug(ada, office)
+
+        when:
+        mockMvc.perform(delete("/locations/${cafe.id}")).andExpect(status().isOk())
+
+        then:
+        count("/users/${ada.id}/mugs/count") == 1
+        mockMvc.perform(get("/locations/${cafe.id}/mugs/count")).andExpect(status().isNotFound())
+    }
+
+    def "an owner without a counter row is counted from the mugs"() {
+        given:
+        createMug(ada, cafe)
+        createMug(ada, cafe)
+        mugCountRepository.deleteById(ada.id)
+
+        expect:
+        count("/users/${ada.id}/mugs/count") == 2
+    }
+
+    def "reconciliation repairs drifted, missing and orphaned counters"() {
+        given:
+        createMug(ada, cafe)
+        createMug(grace, office)
+        mugRepository.save(new MugEntity(displayName: "Unseen", user: ada, location: office))
+        mugCountRepository.deleteById(grace.id)
+        userRepository.save(new UserEntity(firstName: "Alan", lastName: "Turing", email: "alan@example.com"))
+        mugCountRepository.save(new MugCountEntity(UUID.randomUUID(), MugCountEntity.OwnerType.LOCATION, 0))
+
+        when:
+        def repaired = reconciler.reconcile()
+
+        then:
+        repaired == 5
+        count("/users/${ada.id}/mugs/count") == 2
+        count("/users/${grace.id}/mugs/count") == 1
+        count("/locations/${cafe.id}/mugs/count") == 1
+        count("/locations/${office.id}/mugs/count") == 2
+        mugCountRepository.count() == 5
+
+        and:
+        reconciler.reconcile() == 0
+    }
+}
@@ -0,0 +1,152 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.AddressEmbeddable
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugCountRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import com.overmild.mugs.service.MugCountReconciler
+import com.overmild.mugs.support.SqlCapture
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Deletes users and locations with mugs and checks the mugs are removed in bulk, or by a
+ * chunked background purge above the threshold.
+ */
+@SpringBootTest(properties = ["mugs.purge.sync-threshold=10", "mugs.purge.chunk-size=4"])
+@ActiveProfiles("test")
+class PurgeSpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    @Autowired
+    MugCountRepository mugCountRepository
+
+    @Autowired
+    MugCountReconciler reconciler
+
+    MockMvc mockMvc
+    UserEntity ada
+    UserEntity grace
+    LocationEntity cafe
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).build()
+        ada = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        grace = userRepository.save(new UserEntity(firstName: "Grace", lastName: "Hopper", email: "grace@example.com"))
+        cafe = locationRepository.save(new LocationEntity(name: "Cafe", address: new AddressEmbeddable(city: "Austin")))
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+        mugCountRepository.deleteAllInBatch()
+    }
+
+    void addMugs(UserEntity user, int count) {
+        mugRepository.saveAll((1..count).collect { new MugEntity(displayName: "Mug $it", user: user, location: cafe) })
+        reconciler.reconcile()
+    }
+
+    def "DELETE /users/{id} removes a few mugs with one statement"() {
+        given:
+        addMugs(ada, 3)
+
+        when:
+        def statements = SqlCapture.capture {
+            mockMvc.perform(delete("/users/${ada.id}")).andExpect(status().isOk())
+        }
+
+        then:
+        statements.findAll { it.startsWith("delete") } == [
+                "delete from mugs_mug me1_0 where me1_0.user_id=?",
+                "delete from mugs_mug_count mce1_0 where mce1_0.owner_id=?",
+                "delete from mugs_user where id=?"
+        ]
+        !userRepository.existsById(ada.id)
+        mugRepository.count() == 0
+    }
+
+    def "DELETE /users/{id} above the threshold purges in the background"() {
+        given:
+        addMugs(ada, 11)
+        addMugs(grace, 2)
+        def conditions = new PollingConditions(timeout: 10)
+
+        when:
+        def response = mockMvc.perform(delete("/users/${ada.id}"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath('$.resource').value("USER"))
+                .andExpect(jsonPath('$.ownerId').value(ada.id.toString()))
+                .andReturn().response
+        def location = response.getHeader("Location")
+
+        then:
+        location =~ '/purges/[0-9a-f-]{36}$'
+        conditions.eventually {
+            mockMvc.perform(get(location - "http://localhost"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath('$.status').value("COMPLETED"))
+                    .andExpect(jsonPath('$.mugsDeleted').value(11))
+        }
+        !userRepository.existsById(ada.id)
+        mugRepository.count() == 2
+        mugCountRepository.findMugCount(cafe.id).get() == 2
+        reconciler.reconcile() == 0
+    }
+
+    def "deleting an owner being purged again returns the running purge"() {
+        given:
+        addMugs(ada, 11)
+        addMugs(grace, 11)
+        def conditions = new PollingConditions(timeout: 10)
+
+        when:
+        def first = mockMvc.perform(delete("/locations/${cafe.id}"))
+                .andExpect(status().isAccepted())
+                .andReturn().response.getHeader("Location")
+        def second = mockMvc.perform(delete("/locations/${cafe.id}")).andReturn().response
+
+        then:
+        second.status == 200 || second.getHeader("Location") == first
+        conditions.eventually {
+            assert !locationRepository.existsById(cafe.id)
+        }
+        mugRepository.count() == 0
+        mugCountRepository.findMugCount(ada.id).get() == 0
+        mugCountRepository.findMugCount(grace.id).get() == 0
+    }
+
+    def "GET /purges/{id} returns 404 for an unknown purge"() {
+        expect:
+        mockMvc.perform(get("/purges/${UUID.randomUUID()}"))
+                .andExpect(status().isNotFound())
+    }
+}
@@ -0,0 +1,183 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.CollectionVersionEntity
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.CollectionVersionRepository
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import com.overmild.mugs.service.KeysetCursor
+import com.overmild.mugs.service.MugService
+import com.overmild.mugs.support.SqlStatementCounter
+import jakarta.persistence.EntityManagerFactory
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.MediaType
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Guards against N+1 regressions by running each read endpoint against a seeded
+ * in-memory database and failing when it issues more SQL statements than its budget.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class QueryBudgetSpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    @Autowired
+    CollectionVersionRepository versionRepository
+
+    MockMvc mockMvc
+    SqlStatementCounter sql
+    Map<String, UUID> ids = [:]
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).build()
+        sql = new SqlStatementCounter(entityManagerFactory)
+
+        // The rows V4__collection_versions.sql creates.
+        versionRepository.saveAll(CollectionVersionEntity.Name.values().collect { new CollectionVersionEntity(it, 1) })
+        def users = (1..3).collect {
+            userRepository.save(new UserEntity(firstName: "User$it", lastName: "Test", email: "user$it@example.com"))
+        }
+        def locations = (1..2).collect {
+            locationRepository.save(new LocationEntity(name: "Location $it"))
+        }
+        def mugs = (1..12).collect {
+            mugRepository.save(new MugEntity(displayName: "Mug $it", user: users[it % 3], location: locations[it % 2]))
+        }
+        ids.user = users[0].id
+        ids.location = locations[0].id
+        // Mug 6 belongs to the first user and location, so PUT /mugs does not move it.
+        ids.mug = mugs[5].id
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+        versionRepository.deleteAllInBatch()
+    }
+
+    def "GET #path runs at most #budget SQL statement(s)"() {
+        given:
+        def uri = path.replace('{user}', "${ids.user}")
+                .replace('{location}', "${ids.location}")
+                .replace('{mug}', "${ids.mug}")
+                .replace('{cursor}', KeysetCursor.encode(new UUID(0, 0)))
+
+        when:
+        def statements = sql.count {
+            mockMvc.perform(get(uri)).andExpect(status().isOk())
+        }
+
+        then:
+        statements <= budget
+
+        where:
+        path                                     | budget
+        "/mugs"                                  | 1
+        "/mugs?limit=5"                          | 1
+        "/mugs?cursor={cursor}"                  | 1
+        "/mugs/{mug}"                            | 1
+        "/mugs?fields=displayName"               | 1
+        "/mugs?fields=displayName,user,location" | 1
+        "/users"                                 | 2
+        "/users/{user}"                          | 2
+        "/users/{user}/mugs"                     | 1
+        "/users?fields=email"                    | 2
+        "/locations"                             | 2
+        "/locations?city=austin"                 | 2
+        "/locations?fields=name,address.city"    | 2
+        "/locations/nearby?lat=30.27&lon=-97.74" | 0
+        "/locations/{location}"                  | 1
+    }
+
+    def "conditional GET #path answers 304 within #budget SQL statement(s)"() {
+        given:
+        def uri = path.replace('{user}', "${ids.user}").replace('{location}', "${ids.location}")
+        def etag = mockMvc.perform(get(uri)).andReturn().response.getHeader("ETag")
+
+        when:
+        def statements = sql.count {
+            mockMvc.perform(get(uri).header("If-None-Match", etag)).andExpect(status().isNotModified())
+        }
+
+        then:
+        statements <= budget
+
+        where:
+        path                    | budget
+        "/users"                | 1
+        "/users/{user}"         | 1
+        "/locations"            | 1
+        "/locations/{location}" | 1
+    }
+
+    def "PUT #path runs at most #budget SQL statement(s)"() {
+        given:
+        def content = body.replace('{user}', "${ids.user}")
+                .replace('{location}', "${ids.location}")
+                .replace('{mug}', "${ids.mug}")
+
+        when:
+        def statements = sql.count {
+            mockMvc.perform(put(path).contentType(MediaType.APPLICATION_JSON).content(content))
+                    .andExpect(status().isOk())
+        }
+
+        then: "one load, one update and, for users and locations, the collection version"
+        statements <= budget
+
+        where:
+        path         | body                                                                                             | budget
+        "/mugs"      | '{"id":"{mug}","displayName":"Renamed","user":{"id":"{user}"},"location":{"id":"{location}"}}' | 2
+        "/users"     | '{"id":"{user}","firstName":"Renamed","lastName":"Test","email":"user1@example.com"}'            | 3
+        "/locations" | '{"id":"{location}","name":"Renamed"}'                                                           | 3
+    }
+
+    def "POST /mugs/batch sends each chunk as one batched insert"() {
+        given:
+        def rows = (1..120).collect {
+            """{"displayName":"Imported $it","user":{"id":"${ids.user}"},"location":{"id":"${ids.location}"}}"""
+        }
+        def chunks = Math.ceil(rows.size() / MugService.IMPORT_CHUNK_SIZE) as int
+
+        when:
+        def statements = sql.count {
+            mockMvc.perform(post("/mugs/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("[${rows.join(',')}]"))
+                    .andExpect(status().isOk())
+        }
+
+        then: "two existence checks and one batched insert per chunk, then one count update per owner"
+        statements <= chunks * 3 + 2
+        mugRepository.count() == 12 + rows.size()
+    }
+}
@@ -0,0 +1,93 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.config.RequestTraceFilter
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.UserRepository
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+
+import static org.hamcrest.Matchers.matchesPattern
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+@SpringBootTest
+@ActiveProfiles("test")
+class RequestTraceSpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    RequestTraceFilter filter
+
+    @Autowired
+    UserRepository userRepository
+
+    MockMvc mockMvc
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).addFilters(filter).build()
+    }
+
+    def cleanup() {
+        userRepository.deleteAllInBatch()
+    }
+
+    def "reports SQL, mapping and serialization time to requests that ask for it"() {
+        given:
+        def user = userRepository.save(new UserEntity(firstName: "Trace", lastName: "Test", email: "trace@example.com"))
+
+        when:
+        def response = mockMvc.perform(get("/users/{id}", user.id).header("X-Server-Timing", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$.email').value("trace@example.com"))
+                .andReturn().response
+        def timing = response.getHeader("Server-Timing")
+
+        then:
+        timing =~ /^db;dur=\d+\.\d{3};desc="[1-9]\d* statements", pool;dur=[\d.]+, map;dur=[\d.]+, ser;dur=[\d.]+, total;dur=[\d.]+$/
+        duration(timing, "ser") > 0
+        duration(timing, "map") > 0
+        response.getHeaders("Server-Timing").size() == 1
+        response.contentLength == response.contentAsByteArray.length
+    }
+
+    def "reports requests without a JSON body from the filter"() {
+        when:
+        def response = mockMvc.perform(get("/users/{id}", UUID.randomUUID()).header("X-Server-Timing", "1"))
+                .andExpect(status().isNotFound())
+                .andReturn().response
+
+        then:
+        response.getHeader("Server-Timing") =~ /^db;dur=[\d.]+;desc="1 statements", /
+        response.getHeaders("Server-Timing").size() == 1
+    }
+
+    def "leaves out Server-Timing unless asked"() {
+        expect:
+        mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Server-Timing"))
+    }
+
+    def "echoes a well-formed request id and replaces any other"() {
+        expect:
+        mockMvc.perform(get("/users").header("X-Request-Id", "abc-123"))
+                .andExpect(header().string("X-Request-Id", "abc-123"))
+        mockMvc.perform(get("/users").header("X-Request-Id", "bad id\r\n"))
+                .andExpect(header().string("X-Request-Id", matchesPattern("[0-9a-f-]{36}")))
+        mockMvc.perform(get("/users"))
+                .andExpect(header().string("X-Request-Id", matchesPattern("[0-9a-f-]{36}")))
+    }
+
+    private static double duration(String timing, String metric) {
+        (timing =~ /$metric;dur=([\d.]+)/)[0][1] as double
+    }
+}
@@ -0,0 +1,118 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.AddressEmbeddable
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.util.zip.GZIPInputStream
+
+/**
+ * Runs against the embedded server, since compression is applied by the connector and
+ * MockMvc never sees it.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class ResponseCompressionSpec extends Specification {
+
+    @Value('${local.server.port}')
+    int port
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    @Shared
+    HttpClient client = HttpClient.newHttpClient()
+
+    def setup() {
+        def user = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        def location = locationRepository.save(new LocationEntity(name: "Cafe", description: "Cozy",
+                address: new AddressEmbeddable(line1: "1 Main St", city: "Austin")))
+        mugRepository.saveAll((1..100).collect {
+            new MugEntity(displayName: "Mug $it", user: user, location: location)
+        })
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+    }
+
+    def "large JSON responses are gzipped when the client accepts it"() {
+        when:
+        def response = send("/mugs?limit=100", "gzip")
+
+        then:
+        response.statusCode() == 200
+        response.headers().firstValue("Content-Encoding").orElse(null) == "gzip"
+        def body = new GZIPInputStream(new ByteArrayInputStream(response.body())).text
+        body.contains('"displayName":"Mug 100"')
+        response.body().length < body.length() / 3
+    }
+
+    def "clients without gzip and strong-ETag responses get the plain body"() {
+        expect:
+        with(send("/mugs?limit=100", null)) {
+            statusCode() == 200
+            headers().firstValue("Content-Encoding").isEmpty()
+            new String(body()).contains('"displayName":"Mug 100"')
+        }
+        with(send("/users", "gzip")) {
+            statusCode() == 200
+            headers().firstValue("ETag").isPresent()
+            headers().firstValue("Content-Encoding").isEmpty()
+            new String(body()).contains('"email":"ada@example.com"')
+        }
+    }
+
+    def "responses below the minimum size are sent as is"() {
+        when:
+        def response = send("/mugs?limit=1", "gzip")
+
+        then:
+        response.statusCode() == 200
+        response.headers().firstValue("Content-Encoding").isEmpty()
+        response.body().length < 1024
+        new String(response.body()).contains('"displayName":"Mug')
+    }
+
+    def "CBOR responses are gzipped too"() {
+        when:
+        def response = send("/mugs?limit=100", "gzip", "application/cbor")
+
+        then:
+        response.statusCode() == 200
+        response.headers().firstValue("Content-Type").get() == "application/cbor"
+        response.headers().firstValue("Content-Encoding").orElse(null) == "gzip"
+    }
+
+    private HttpResponse<byte[]> send(String path, String acceptEncoding, String accept = null) {
+        def request = HttpRequest.newBuilder(URI.create("http://localhost:$port/mugs/api$path"))
+        if (acceptEncoding) {
+            request.header("Accept-Encoding", acceptEncoding)
+        }
+        if (accept) {
+            request.header("Accept", accept)
+        }
+        client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+    }
+}
@@ -0,0 +1,154 @@
+package com.overmild.mugs.controller
+
+import com.overmild.mugs.entity.AddressEmbeddable
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import com.overmild.mugs.support.SqlCapture
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+import tools.jackson.databind.JsonNode
+import tools.jackson.databind.json.JsonMapper
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup
+
+/**
+ * Runs the {@code fields} parameter of the list endpoints against a real database and
+ * checks both the response and the SQL behind it.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SparseFieldsQuerySpec extends Specification {
+
+    @Autowired
+    WebApplicationContext context
+
+    @Autowired
+    UserRepository userRepository
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    MugRepository mugRepository
+
+    MockMvc mockMvc
+    JsonMapper json = JsonMapper.builder().build()
+    UserEntity user
+    LocationEntity location
+
+    def setup() {
+        mockMvc = webAppContextSetup(context).build()
+        user = userRepository.save(new UserEntity(firstName: "Ada", lastName: "Lovelace", email: "ada@example.com"))
+        location = locationRepository.save(new LocationEntity(name: "Austin Roasters", description: "Coffee",
+                address: new AddressEmbeddable(city: "Austin", state: "TX", country: "US")))
+        (1..3).each {
+            mugRepository.save(new MugEntity(displayName: "Mug $it", user: user, location: location))
+        }
+    }
+
+    def cleanup() {
+        mugRepository.deleteAllInBatch()
+        locationRepository.deleteAllInBatch()
+        userRepository.deleteAllInBatch()
+    }
+
+    def "GET /mugs?fields=displayName selects only the mug columns it needs"() {
+        when:
+        JsonNode page
+        def statements = SqlCapture.capture { page = fetch("/mugs?fields=displayName") }
+
+        then:
+        page.get("items").size() == 3
+        page.get("items").every { it.propertyNames().toList() == ["id", "displayName"] }
+
+        and: "one query, with no join and no user or location columns"
+        statements.size() == 1
+        def sql = statements[0].toLowerCase()
+        !sql.contains(" join ")
+        !sql.contains("user_id")
+        !sql.contains("location_id")
+    }
+
+    def "GET /mugs?fields=user.id reads the foreign key without joining the user"() {
+        when:
+        JsonNode page
+        def statements = SqlCapture.capture { page = fetch("/mugs?fields=user.id") }
+
+        then:
+        page.get("items").every { it.get("user").get("id").asString() == user.id.toString() }
+        statements.size() == 1
+        !statements[0].toLowerCase().contains(" join ")
+    }
+
+    def "GET /mugs?fields=displayName,location.address.city joins only the location"() {
+        when:
+        JsonNode page
+        def statements = SqlCapture.capture { page = fetch("/mugs?fields=displayName,location.address.city") }
+
+        then:
+        page.get("items").every {
+            it.propertyNames().toList() == ["id", "displayName", "location"] &&
+                    it.get("location").get("address").get("city").asString() == "Austin"
+        }
+        statements.size() == 1
+        def sql = statements[0].toLowerCase()
+        sql.count(" join ") == 1
+        sql.contains("mugs_location")
+        !sql.contains("mugs_user")
+    }
+
+    def "GET /users?fields=email returns only ids and emails"() {
+        when:
+        def page = fetch("/users?fields=email")
+
+        then:
+        page.get("items").size() == 1
+        page.get("items")[0].propertyNames().toList() == ["id", "email"]
+        page.get("items")[0].get("email").asString() == "ada@example.com"
+    }
+
+    def "GET /locations?city=austin&fields=name,address.state combines filters and fields"() {
+        when:
+        def page = fetch("/locations?city=austin&fields=name,address.state")
+
+        then:
+        page.get("items").size() == 1
+        page.get("items")[0].get("name").asString() == "Austin Roasters"
+        page.get("items")[0].get("address").propertyNames().toList() == ["state"]
+    }
+
+    def "pages of partial mugs follow the cursor"() {
+        when:
+        def first = fetch("/mugs?fields=displayName&limit=2")
+        def second = fetch("/mugs?fields=displayName&limit=2&cursor=${first.get("next").asString()}")
+
+        then:
+        first.get("items").size() == 2
+        second.get("items").size() == 1
+        second.get("next").isNull()
+    }
+
+    def "GET /mugs?fields=#fields is rejected"() {
+        expect:
+        mockMvc.perform(get("/mugs?fields=$fields")).andExpect(status().isBadRequest())
+
+        where:
+        fields << ["price", "user.password", "location.mugs"]
+    }
+
+    private JsonNode fetch(String uri) {
+        json.readTree(mockMvc.perform(get(uri))
+                .andExpect(status().isOk())
+                .andReturn().response.contentAsString)
+    }
+}
@@ -1,18 +1,29 @@
 package com.overmild.mugs.controller
 
+import com.overmild.mugs.exception.BadRequestException
 import com.overmild.mugs.exception.ConflictException
 import com.overmild.mugs.exception.GlobalExceptionHandler
 import com.overmild.mugs.exception.ResourceNotFoundException
+import com.overmild.mugs.model.BatchGetRequest
+import com.overmild.mugs.model.BatchGetResult
+import com.overmild.mugs.model.ChangeEvent
+import com.overmild.mugs.model.CursorPage
 import com.overmild.mugs.model.Mug
+import com.overmild.mugs.model.PurgeJob
 import com.overmild.mugs.model.User
 import com.overmild.mugs.service.MugService
 import com.overmild.mugs.service.UserService
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.springframework.http.MediaType
 import org.springframework.test.web.servlet.MockMvc
 import org.springframework.test.web.servlet.setup.MockMvcBuilders
 import spock.lang.Specification
 
+import java.time.Instant
+
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
 
 class UserControllerSpec extends Specification {
@@ -21,18 +32,54 @@ class UserControllerSpec extends Specification {
     MugService mugService = Mock()
     MockMvc mockMvc = MockMvcBuilders
             .standaloneSetup(new UserController(userService, mugService))
-            .setControllerAdvice(new GlobalExceptionHandler())
+            .setControllerAdvice(new GlobalExceptionHandler(new SimpleMeterRegistry()))
             .build()
 
+    def setup() {
+        userService.getUsersVersion() >> 0L
+    }
+
     def "GET /users returns 200"() {
         given:
-        userService.getAllUsers() >> []
+        userService.getAllUsers(null, 50) >> new CursorPage([], null)
 
         expect:
         mockMvc.perform(get("/users"))
                 .andExpect(status().isOk())
     }
 
+    def "GET /users passes cursor and limit and returns the next cursor"() {
+        given:
+        userService.getAllUsers("abc", 10) >> new CursorPage([], "def")
+
+        expect:
+        mockMvc.perform(get("/users").param("cursor", "abc").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$.next').value("def"))
+    }
+
+    def "GET /users returns 400 when the cursor is invalid"() {
+        given:
+        userService.getAllUsers("bad", 50) >> { throw new BadRequestException("Invalid cursor: bad") }
+
+        expect:
+        mockMvc.perform(get("/users").param("cursor", "bad"))
+                .andExpect(status().isBadRequest())
+    }
+
+    def "GET /users with fields returns only the requested properties"() {
+        when:
+        def result = mockMvc.perform(get("/users").param("fields", "email"))
+
+        then:
+        1 * userService.getUserFields("email", null, 50) >>
+                new CursorPage([[id: UUID.randomUUID(), email: "john@example.com"]], null)
+        0 * userService.getAllUsers(_, _)
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath('$.items[0].email').value("john@example.com"))
+                .andExpect(jsonPath('$.items[0].firstName').doesNotExist())
+    }
+
     def "GET /users/{id} returns 200 using path variable"() {
         given:
         def id = UUID.randomUUID()
@@ -43,6 +90,74 @@ class UserControllerSpec extends Specification {
                 .andExpect(status().isOk())
     }
 
+    def "GET /users/{id} returns an ETag and 304 when If-None-Match matches"() {
+        given:
+        def id = UUID.randomUUID()
+        def modifiedAt = Instant.parse("2026-01-01T00:00:00.000001Z")
+        userService.getUserModifiedAt(id) >> modifiedAt
+        userService.getUserById(id) >> new User(id, "John", "Doe", "john@example.com")
+
+        when:
+        def etag = mockMvc.perform(get("/users/{id}", id))
+                .andExpect(status().isOk())
+                .andReturn().response.getHeader("ETag")
+
+        then:
+        etag == '"' + id + '-1767225600000001"'
+
+        when:
+        def result = mockMvc.perform(get("/users/{id}", id).header("If-None-Match", etag))
+
+        then:
+        result.andExpect(status().isNotModified())
+        0 * userService.getUserById(_)
+    }
+
+    def "GET /users returns 304 when the collection has not changed"() {
+        given:
+        userService.getAllUsers(null, 50) >> new CursorPage([], null)
+        def etag = mockMvc.perform(get("/users"))
+                .andReturn().response.getHeader("ETag")
+
+        when:
+        def result = mockMvc.perform(get("/users").header("If-None-Match", etag))
+
+        then:
+        result.andExpect(status().isNotModified())
+        0 * userService.getAllUsers(_, _)
+    }
+
+    def "GET /users returns 200 with a new ETag when the collection has changed"() {
+        given:
+        userService.getAllUsers(null, 50) >> new CursorPage([], null)
+        def etag = mockMvc.perform(get("/users"))
+                .andReturn().response.getHeader("ETag")
+
+        when:
+        def result = mockMvc.perform(get("/users").header("If-None-Match", etag))
+
+        then:
+        1 * userService.getUsersVersion() >> 1L
+        result.andExpect(status().isOk())
+        result.andReturn().response.getHeader("ETag") != etag
+    }
+
+    def "GET /users tags each query and media type of the collection differently"() {
+        given:
+        userService.getAllUsers(_, _) >> new CursorPage([], null)
+
+        when:
+        def tags = [get("/users"),
+                    get("/users").param("limit", "10"),
+                    get("/users").param("limit", "10").param("cursor", "abc"),
+                    get("/users").accept(MediaType.APPLICATION_JSON)]
+                .collect { mockMvc.perform(it).andReturn().response.getHeader("ETag") }
+
+        then:
+        tags.every { it ==~ /"0-[0-9a-f]{16}"/ }
+        tags.toSet().size() == 4
+    }
+
     def "GET /users/{id} returns 404 when user not found"() {
         given:
         def id = UUID.randomUUID()
@@ -63,6 +178,43 @@ class UserControllerSpec extends Specification {
                 .andExpect(status().isOk())
     }
 
+    def "POST /users:batchGet returns a result per id in request order"() {
+        given:
+        def found = UUID.randomUUID()
+        def missing = UUID.randomUUID()
+        userService.getUsersByIds([missing, found]) >> [
+                BatchGetResult.notFound(missing),
+                BatchGetResult.found(found, new User(found, "John", "Doe", "john@example.com"))
+        ]
+
+        expect:
+        mockMvc.perform(post("/users:batchGet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""{"ids":["$missing","$found"]}"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$[0].id').value(missing.toString()))
+                .andExpect(jsonPath('$[0].status').value("NOT_FOUND"))
+                .andExpect(jsonPath('$[1].status').value("FOUND"))
+                .andExpect(jsonPath('$[1].item.email').value("john@example.com"))
+    }
+
+    def "POST /users:batchGet returns 400 for #reason"() {
+        when:
+        def result = mockMvc.perform(post("/users:batchGet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+
+        then:
+        result.andExpect(status().isBadRequest())
+        0 * userService.getUsersByIds(_)
+
+        where:
+        reason          | body
+        "no ids"        | '{"ids":[]}'
+        "a null id"     | '{"ids":[null]}'
+        "too many ids"  | '{"ids":[' + (1..BatchGetRequest.MAX_IDS + 1).collect { "\"${UUID.randomUUID()}\"" }.join(',') + ']}'
+    }
+
     def "POST /users returns 200"() {
         given:
         userService.createUser(_) >> new User(UUID.randomUUID(), "John", "Doe", "john@example.com")
@@ -140,12 +292,28 @@ class UserControllerSpec extends Specification {
     def "DELETE /users/{id} returns 200"() {
         given:
         def id = UUID.randomUUID()
+        userService.deleteUser(id) >> Optional.empty()
 
         expect:
         mockMvc.perform(delete("/users/{id}", id))
                 .andExpect(status().isOk())
     }
 
+    def "DELETE /users/{id} returns 202 with the purge when it runs in the background"() {
+        given:
+        def id = UUID.randomUUID()
+        def job = new PurgeJob(UUID.randomUUID(), ChangeEvent.Resource.USER, id, PurgeJob.Status.RUNNING, 0,
+                Instant.parse("2026-01-01T00:00:00Z"), null, null)
+        userService.deleteUser(id) >> Optional.of(job)
+
+        expect:
+        mockMvc.perform(delete("/users/{id}", id))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "http://localhost/purges/" + job.id))
+                .andExpect(jsonPath('$.status').value("RUNNING"))
+                .andExpect(jsonPath('$.ownerId').value(id.toString()))
+    }
+
     def "old singular route GET /user/{id} is no longer available"() {
         expect:
         mockMvc.perform(get("/user/{id}", UUID.randomUUID()))
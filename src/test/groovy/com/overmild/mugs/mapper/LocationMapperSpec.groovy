@@ -6,6 +6,8 @@ import com.overmild.mugs.model.Address
 import com.overmild.mugs.model.Location
 import spock.lang.Specification
 
+import java.time.Instant
+
 class LocationMapperSpec extends Specification {
 
     LocationMapper mapper = new LocationMapperImpl()
@@ -100,6 +102,28 @@ class LocationMapperSpec extends Specification {
         entity.modifiedAt == null
     }
 
+    def "updateEntity replaces the address but keeps the id and managed fields"() {
+        given:
+        def id = UUID.randomUUID()
+        def createdAt = Instant.parse("2024-01-01T00:00:00Z")
+        def entity = new LocationEntity(id: id, name: "Old Cafe", description: "old",
+                address: new AddressEmbeddable(line1: "1 Old St", city: "Oldtown"),
+                photoUrl: "https://example.com/old.jpg", createdAt: createdAt, modifiedAt: createdAt)
+
+        when:
+        mapper.updateEntity(new Location(null, "New Cafe", null, new Address(line1: "2 New St"), null), entity)
+
+        then:
+        entity.id == id
+        entity.name == "New Cafe"
+        entity.description == null
+        entity.address.line1 == "2 New St"
+        entity.address.city == null
+        entity.photoUrl == null
+        entity.createdAt == createdAt
+        entity.modifiedAt == createdAt
+    }
+
     def "round-trip toEntity then toModel preserves all fields"() {
         given:
         def address = new Address(
@@ -4,6 +4,8 @@ import com.overmild.mugs.entity.UserEntity
 import com.overmild.mugs.model.User
 import spock.lang.Specification
 
+import java.time.Instant
+
 class UserMapperSpec extends Specification {
 
     UserMapper mapper = new UserMapperImpl()
@@ -56,6 +58,25 @@ class UserMapperSpec extends Specification {
         entity.modifiedAt == null
     }
 
+    def "updateEntity overwrites the user's fields but keeps its id and managed fields"() {
+        given:
+        def id = UUID.randomUUID()
+        def createdAt = Instant.parse("2024-01-01T00:00:00Z")
+        def entity = new UserEntity(id: id, firstName: "Bob", lastName: "Jones", email: "bob@example.com",
+                mugs: [] as Set, createdAt: createdAt, modifiedAt: createdAt)
+
+        when:
+        mapper.updateEntity(new User(UUID.randomUUID(), "Robert", "Jones", "robert@example.com"), entity)
+
+        then:
+        entity.id == id
+        entity.firstName == "Robert"
+        entity.email == "robert@example.com"
+        entity.mugs != null
+        entity.createdAt == createdAt
+        entity.modifiedAt == createdAt
+    }
+
     def "toEntity returns null for null input"() {
         expect:
         mapper.toEntity(null) == null
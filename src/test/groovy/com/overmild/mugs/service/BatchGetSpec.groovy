@@ -0,0 +1,40 @@
+package com.overmild.mugs.service
+
+import com.overmild.mugs.model.BatchGetResult
+import spock.lang.Specification
+
+import java.util.function.Function
+
+class BatchGetSpec extends Specification {
+
+    def "returns one result per requested id in request order"() {
+        given:
+        def a = UUID.randomUUID()
+        def b = UUID.randomUUID()
+        def missing = UUID.randomUUID()
+
+        when:
+        def results = BatchGet.get([b, missing, a, b], { ids -> ids.findAll { it != missing } },
+                Function.identity(), { it.toString() })
+
+        then:
+        results*.id == [b, missing, a, b]
+        results*.status == [BatchGetResult.Status.FOUND, BatchGetResult.Status.NOT_FOUND,
+                            BatchGetResult.Status.FOUND, BatchGetResult.Status.FOUND]
+        results*.item == [b.toString(), null, a.toString(), b.toString()]
+    }
+
+    def "loads distinct ids in chunks"() {
+        given:
+        def ids = (1..300).collect { UUID.randomUUID() }
+        def chunks = []
+
+        when:
+        BatchGet.get(ids + ids.take(10), { chunk -> chunks << List.copyOf(chunk); chunk }, Function.identity(),
+                Function.identity())
+
+        then:
+        chunks*.size() == [BatchGet.CHUNK_SIZE, BatchGet.CHUNK_SIZE, 300 - 2 * BatchGet.CHUNK_SIZE]
+        chunks.flatten() == ids
+    }
+}
@@ -0,0 +1,189 @@
+package com.overmild.mugs.service
+
+import com.overmild.mugs.config.ChangeFeedProperties
+import com.overmild.mugs.model.ChangeEvent
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+
+class ChangeFeedSpec extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    ChangeFeed feed(int bufferSize = 256, int replaySize = 1000) {
+        new ChangeFeed(new ChangeFeedProperties(bufferSize, replaySize, Duration.ofHours(1)), meterRegistry)
+    }
+
+    /** Records what was sent and can hold the first send until released. */
+    static class RecordingEmitter extends SseEmitter {
+
+        final List<Map> events = [].asSynchronized()
+        final CountDownLatch sending = new CountDownLatch(1)
+        final CountDownLatch release
+
+        RecordingEmitter(boolean blocked = false) {
+            release = new CountDownLatch(blocked ? 1 : 0)
+        }
+
+        @Override
+        void send(SseEmitter.SseEventBuilder builder) throws IOException {
+            sending.countDown()
+            release.await()
+            def parts = builder.build()
+            def text = parts.findAll { it.data instanceof String }*.data.join()
+            events << [
+                    id   : (text =~ /(?m)^id:(.*)$/).with { it.find() ? it.group(1) : null },
+                    name : (text =~ /(?m)^event:(.*)$/).with { it.find() ? it.group(1) : null },
+                    data : parts.find { !(it.data instanceof String) }?.data,
+            ]
+        }
+    }
+
+    static ChangeEvent mugCreated(UUID id, String data) {
+        ChangeEvent.created(ChangeEvent.Resource.MUG, id, data)
+    }
+
+    def "events are sent to subscribers named by resource and type"() {
+        given:
+        def changes = feed()
+        def emitter = new RecordingEmitter()
+        def id = UUID.randomUUID()
+        changes.subscribe(emitter, null)
+
+        when:
+        changes.publish(mugCreated(id, "v1"))
+        changes.publish(ChangeEvent.deleted(ChangeEvent.Resource.USER, id))
+
+        then:
+        conditions.eventually {
+            assert emitter.events*.name == ["mug.created", "user.deleted"]
+        }
+        emitter.events[0].data.data == "v1"
+        emitter.events[1].data.data == null
+    }
+
+    def "changes to a resource waiting to be sent are merged into the newest one"() {
+        given:
+        def changes = feed()
+        def emitter = new RecordingEmitter(true)
+        def a = UUID.randomUUID()
+        def b = UUID.randomUUID()
+        changes.subscribe(emitter, null)
+
+        when:
+        changes.publish(mugCreated(UUID.randomUUID(), "in flight"))
+        emitter.sending.await()
+        changes.publish(mugCreated(a, "v1"))
+        changes.publish(mugCreated(b, "v1"))
+        changes.publish(ChangeEvent.updated(ChangeEvent.Resource.MUG, a, "v2"))
+        emitter.release.countDown()
+
+        then:
+        conditions.eventually {
+            assert emitter.events.size() == 3
+        }
+        emitter.events[1].name == "mug.created"
+        emitter.events[1].data.id == b
+        emitter.events[2].name == "mug.created"
+        emitter.events[2].data.id == a
+        emitter.events[2].data.data == "v2"
+        emitter.events*.id.collect { it.split("-")[1] as long } == [1L, 3L, 4L]
+    }
+
+    def "a subscriber that falls too far behind loses the oldest events and is sent a reset"() {
+        given:
+        def changes = feed(2)
+        def emitter = new RecordingEmitter(true)
+        changes.subscribe(emitter, null)
+
+        when:
+        changes.publish(mugCreated(UUID.randomUUID(), "in flight"))
+        emitter.sending.await()
+        ["a", "b", "c"].each { changes.publish(mugCreated(UUID.randomUUID(), it)) }
+        emitter.release.countDown()
+
+        then:
+        conditions.eventually {
+            assert emitter.events*.name == ["mug.created", ChangeFeed.RESET, "mug.created", "mug.created"]
+        }
+        emitter.events[2..3]*.data*.data == ["b", "c"]
+        meterRegistry.get("mugs.changes.dropped").counter().count() == 1
+    }
+
+    def "a client resuming with Last-Event-ID is sent the events it missed"() {
+        given:
+        def changes = feed()
+        def first = new RecordingEmitter()
+        changes.subscribe(first, null)
+        ["a", "b", "c"].each { changes.publish(mugCreated(UUID.randomUUID(), it)) }
+        conditions.eventually {
+            assert first.events.size() == 3
+        }
+
+        when:
+        def resumed = new RecordingEmitter()
+        changes.subscribe(resumed, first.events[0].id)
+
+        then:
+        conditions.eventually {
+            assert resumed.events*.data*.data == ["b", "c"]
+        }
+        resumed.events*.id == first.events[1..2]*.id
+    }
+
+    def "a client resuming from #description is sent a reset"() {
+        given:
+        def changes = feed(256, 2)
+        def first = new RecordingEmitter()
+        changes.subscribe(first, null)
+        ["a", "b", "c"].each { changes.publish(mugCreated(UUID.randomUUID(), it)) }
+        conditions.eventually {
+            assert first.events.size() == 3
+        }
+
+        when:
+        def resumed = new RecordingEmitter()
+        changes.subscribe(resumed, lastEventId(first.events*.id))
+
+        then:
+        conditions.eventually {
+            assert resumed.events*.name == [ChangeFeed.RESET]
+        }
+        resumed.events[0].id == first.events[2].id
+
+        where:
+        description                  | lastEventId
+        "another stream"             | { ids -> "0-1" }
+        "an event no longer kept"    | { ids -> ids[0].replaceFirst(/-\d+$/, "-0") }
+        "an event not yet published" | { ids -> ids[0].replaceFirst(/-\d+$/, "-99") }
+        "a malformed id"             | { ids -> "garbage" }
+    }
+
+    def "closed streams are dropped from the subscriber gauge"() {
+        given:
+        def changes = feed()
+        def emitter = new SseEmitter() {
+            @Override
+            void send(SseEmitter.SseEventBuilder builder) throws IOException {
+                throw new IOException("Broken pipe")
+            }
+        }
+        changes.subscribe(emitter, null)
+
+        expect:
+        meterRegistry.get("mugs.changes.subscribers").gauge().value() == 1
+
+        when:
+        changes.publish(mugCreated(UUID.randomUUID(), "a"))
+
+        then:
+        conditions.eventually {
+            assert meterRegistry.get("mugs.changes.subscribers").gauge().value() == 0
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.overmild.mugs.service
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres
+import org.springframework.jdbc.datasource.DriverManagerDataSource
+import spock.lang.AutoCleanup
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.sql.Connection
+
+class ClusterLockSpec extends Specification {
+
+    @Shared
+    @AutoCleanup
+    EmbeddedPostgres postgres = EmbeddedPostgres.start()
+
+    ClusterLock lock = new ClusterLock(postgres.postgresDatabase)
+
+    def "runs the task and releases the lock when no other instance holds it"() {
+        when:
+        def result = lock.callExclusively("task") { "done" }
+
+        then:
+        result == Optional.of("done")
+        withConnection { tryLock(it, "task") }
+    }
+
+    def "skips the task while another instance holds the lock"() {
+        given:
+        def ran = false
+
+        expect:
+        withConnection { other ->
+            assert tryLock(other, "task")
+            lock.callExclusively("task") { ran = true } == Optional.empty()
+        }
+        !ran
+
+        and: "a task of another name still runs"
+        withConnection { other ->
+            assert tryLock(other, "task")
+            lock.callExclusively("other task") { "done" } == Optional.of("done")
+        }
+    }
+
+    def "releases the lock when the task fails"() {
+        when:
+        lock.callExclusively("task") { throw new IllegalStateException("failed") }
+
+        then:
+        thrown(IllegalStateException)
+        withConnection { tryLock(it, "task") }
+    }
+
+    def "always runs the task on a database without advisory locks"() {
+        given:
+        def h2 = new DriverManagerDataSource("jdbc:h2:mem:cluster-lock")
+
+        expect:
+        new ClusterLock(h2).callExclusively("task") { "done" } == Optional.of("done")
+    }
+
+    private <T> T withConnection(Closure<T> action) {
+        // Closing the connection ends its session and, with it, any advisory lock it holds.
+        Connection connection = postgres.postgresDatabase.connection
+        try {
+            return action(connection)
+        } finally {
+            connection.close()
+        }
+    }
+
+    private static boolean tryLock(Connection connection, String name) {
+        def statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")
+        statement.setLong(1, ClusterLock.key(name))
+        def result = statement.executeQuery()
+        result.next()
+        return result.getBoolean(1)
+    }
+}
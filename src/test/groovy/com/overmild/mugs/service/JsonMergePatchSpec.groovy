@@ -0,0 +1,82 @@
+package com.overmild.mugs.service
+
+import com.overmild.mugs.exception.BadRequestException
+import com.overmild.mugs.model.Address
+import com.overmild.mugs.model.Location
+import com.overmild.mugs.model.User
+import jakarta.validation.ConstraintViolationException
+import jakarta.validation.Validation
+import spock.lang.Specification
+import tools.jackson.databind.json.JsonMapper
+
+class JsonMergePatchSpec extends Specification {
+
+    JsonMapper json = JsonMapper.builder().build()
+    JsonMergePatch mergePatch = new JsonMergePatch(json, Validation.buildDefaultValidatorFactory().validator)
+
+    def "merge follows RFC 7396: #patch applied to #target gives #expected"() {
+        expect:
+        JsonMergePatch.merge(json.readTree(target), json.readTree(patch)) == json.readTree(expected)
+
+        where:
+        target              | patch                       | expected
+        '{"a":"b"}'         | '{"a":"c"}'                 | '{"a":"c"}'
+        '{"a":"b"}'         | '{"b":"c"}'                 | '{"a":"b","b":"c"}'
+        '{"a":"b"}'         | '{"a":null}'                | '{}'
+        '{"a":"b","b":"c"}' | '{"a":null}'                | '{"b":"c"}'
+        '{"a":["b"]}'       | '{"a":"c"}'                 | '{"a":"c"}'
+        '{"a":"c"}'         | '{"a":["b"]}'               | '{"a":["b"]}'
+        '{"a":{"b":"c"}}'   | '{"a":{"b":"d","c":null}}'  | '{"a":{"b":"d"}}'
+        '{"a":[{"b":"c"}]}' | '{"a":[1]}'                 | '{"a":[1]}'
+        '{"e":null}'        | '{"a":1}'                   | '{"e":null,"a":1}'
+        '[1,2]'             | '{"a":"b","c":null}'        | '{"a":"b"}'
+        '{}'                | '{"a":{"bb":{"ccc":null}}}' | '{"a":{"bb":{}}}'
+    }
+
+    def "apply merges nested objects member by member"() {
+        given:
+        def id = UUID.randomUUID()
+        def location = new Location(id, "Cafe", "Cozy", new Address(line1: "1 Main St", city: "Austin"), null)
+
+        when:
+        Location patched = mergePatch.apply(location,
+                json.readTree('{"description":null,"address":{"city":"Dallas"},"photoUrl":"https://example.com/p.jpg"}'),
+                Location)
+
+        then:
+        patched.id == id
+        patched.name == "Cafe"
+        patched.description == null
+        patched.address.line1 == "1 Main St"
+        patched.address.city == "Dallas"
+        patched.photoUrl == "https://example.com/p.jpg"
+    }
+
+    def "apply validates the patched model"() {
+        given:
+        def user = new User(UUID.randomUUID(), "Ada", "Lovelace", "ada@example.com")
+
+        when:
+        mergePatch.apply(user, json.readTree('{"firstName":null,"email":"not-an-email"}'), User)
+
+        then:
+        def e = thrown(ConstraintViolationException)
+        e.constraintViolations*.propertyPath*.toString().toSet() == ["firstName", "email"] as Set
+    }
+
+    def "apply rejects #description"() {
+        given:
+        def user = new User(UUID.randomUUID(), "Ada", "Lovelace", "ada@example.com")
+
+        when:
+        mergePatch.apply(user, json.readTree(patch), User)
+
+        then:
+        thrown(BadRequestException)
+
+        where:
+        description                     | patch
+        "a patch that is not an object" | '["firstName"]'
+        "a change of id"                | '{"id":"00000000-0000-0000-0000-000000000000"}'
+    }
+}
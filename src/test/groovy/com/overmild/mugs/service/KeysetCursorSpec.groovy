@@ -0,0 +1,70 @@
+package com.overmild.mugs.service
+
+import com.overmild.mugs.exception.BadRequestException
+import spock.lang.Specification
+
+class KeysetCursorSpec extends Specification {
+
+    def "encode then decode round-trips the id"() {
+        given:
+        def id = UUID.randomUUID()
+
+        expect:
+        KeysetCursor.decode(KeysetCursor.encode(id)) == id
+    }
+
+    def "decode returns null for a missing cursor"() {
+        expect:
+        KeysetCursor.decode(cursor) == null
+
+        where:
+        cursor << [null, "", "   "]
+    }
+
+    def "decode rejects malformed cursors"() {
+        when:
+        KeysetCursor.decode(cursor)
+
+        then:
+        thrown(BadRequestException)
+
+        where:
+        cursor << ["not base64!", "AAAA"]
+    }
+
+    def "pageSize clamps large limits and rejects non-positive ones"() {
+        expect:
+        KeysetCursor.pageSize(10) == 10
+        KeysetCursor.pageSize(10_000) == KeysetCursor.MAX_LIMIT
+
+        when:
+        KeysetCursor.pageSize(0)
+
+        then:
+        thrown(BadRequestException)
+    }
+
+    def "page trims the look-ahead row and encodes the last returned id"() {
+        given:
+        def ids = (1..4).collect { UUID.randomUUID() }
+
+        when:
+        def page = KeysetCursor.page(ids, 3, { it }, { it.toString() })
+
+        then:
+        page.items == ids.take(3)*.toString()
+        KeysetCursor.decode(page.next) == ids[2]
+    }
+
+    def "page has no next cursor when the look-ahead row is absent"() {
+        given:
+        def ids = (1..2).collect { UUID.randomUUID() }
+
+        when:
+        def page = KeysetCursor.page(ids, 3, { it }, { it.toString() })
+
+        then:
+        page.items.size() == 2
+        page.next == null
+    }
+}
@@ -0,0 +1,102 @@
+package com.overmild.mugs.service
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration
+import com.overmild.mugs.config.LocationCacheProperties
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.exception.ResourceNotFoundException
+import com.overmild.mugs.model.Location
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.support.SqlStatementCounter
+import jakarta.persistence.EntityManagerFactory
+import org.hibernate.SessionFactory
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import spock.lang.Specification
+
+import javax.cache.CacheManager
+
+@SpringBootTest
+@ActiveProfiles("test")
+class LocationCacheSpec extends Specification {
+
+    @Autowired
+    LocationService locationService
+
+    @Autowired
+    LocationRepository locationRepository
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory
+
+    @Autowired
+    CacheManager jCacheManager
+
+    @Autowired
+    LocationCacheProperties locationCacheProperties
+
+    SqlStatementCounter sql
+    UUID id
+
+    def setup() {
+        sql = new SqlStatementCounter(entityManagerFactory)
+        entityManagerFactory.cache.evictAll()
+        id = locationRepository.save(new LocationEntity(name: "Cafe")).id
+    }
+
+    def cleanup() {
+        locationRepository.deleteAllInBatch()
+    }
+
+    def "repeated reads of a location are served from the cache"() {
+        given:
+        locationService.getLocationById(id)
+
+        when:
+        def statements = sql.count { locationService.getLocationById(id) }
+
+        then: "region statistics are reset along with the counter, so only the second read is seen"
+        statements == 0
+        entityManagerFactory.unwrap(SessionFactory).statistics
+                .getDomainDataRegionStatistics(LocationEntity.CACHE_REGION).hitCount == 1
+    }
+
+    def "updateLocation is seen by the next read"() {
+        given:
+        locationService.getLocationById(id)
+
+        when:
+        locationService.updateLocation(new Location(id, "Renamed Cafe", null, null, null))
+
+        then:
+        locationService.getLocationById(id).name == "Renamed Cafe"
+    }
+
+    def "deleteLocation invalidates the cached entry"() {
+        given:
+        locationService.getLocationById(id)
+
+        when:
+        locationService.deleteLocation(id)
+        locationService.getLocationById(id)
+
+        then:
+        thrown(ResourceNotFoundException)
+    }
+
+    def "the location region is bounded by the configured size and time to live"() {
+        when:
+        def configuration = jCacheManager.getCache(LocationEntity.CACHE_REGION)
+                .getConfiguration(CaffeineConfiguration)
+
+        then:
+        configuration.maximumSize == OptionalLong.of(locationCacheProperties.maximumSize())
+        configuration.expireAfterWrite == OptionalLong.of(locationCacheProperties.timeToLive().toNanos())
+        configuration.statisticsEnabled
+    }
+
+    def "the cache manager is not the provider's shared default"() {
+        expect:
+        jCacheManager.URI != jCacheManager.cachingProvider.defaultURI
+    }
+}
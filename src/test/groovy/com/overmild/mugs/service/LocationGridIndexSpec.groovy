@@ -0,0 +1,262 @@
+package com.overmild.mugs.service
+
+import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.mapper.LocationMapper
+import com.overmild.mugs.model.Address
+import com.overmild.mugs.model.ChangeEvent
+import com.overmild.mugs.model.Location
+import com.overmild.mugs.model.Mug
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugCountRepository
+import org.springframework.data.domain.Limit
+import spock.lang.Specification
+
+class LocationGridIndexSpec extends Specification {
+
+    LocationRepository repository = Mock()
+    LocationMapper locationMapper = Mock()
+    MugCountRepository mugCounts = Mock()
+    LocationGridIndex index = new LocationGridIndex(repository, locationMapper, mugCounts)
+
+    static Location at(String name, Double latitude, Double longitude) {
+        new Location(UUID.randomUUID(), name, null, new Address(latitude: latitude, longitude: longitude), null)
+    }
+
+    def "radius queries return only locations within the radius, closest first"() {
+        given:
+        def capitol = at("Capitol", 30.2747, -97.7404)
+        def zilker = at("Zilker Park", 30.2669, -97.7729)
+        def airport = at("Airport", 30.1975, -97.6664)
+        def dallas = at("Dallas", 32.7767, -96.7970)
+        [airport, dallas, zilker, capitol].each { index.put(it) }
+
+        when:
+        def result = index.nearest(30.2747, -97.7404, 5d, 10)
+
+        then:
+        result*.location == [capitol, zilker]
+        result[0].distanceKm == 0d
+        Math.abs(result[1].distanceKm - 3.2) < 0.1
+    }
+
+    def "k-nearest queries return the closest locations at any distance"() {
+        given:
+        def austin = at("Austin", 30.2672, -97.7431)
+        def dallas = at("Dallas", 32.7767, -96.7970)
+        def paris = at("Paris", 48.8566, 2.3522)
+        [paris, dallas, austin].each { index.put(it) }
+
+        expect:
+        index.nearest(31.0, -97.0, null, 2)*.location == [austin, dallas]
+        index.nearest(31.0, -97.0, null, 5)*.location == [austin, dallas, paris]
+    }
+
+    def "queries across the antimeridian and near the poles find their neighbours"() {
+        given:
+        def fiji = at("Fiji", -17.7134, 178.065)
+        def samoa = at("Samoa", -13.759, -172.1046)
+        def northPole = at("North Pole", 89.99, 45)
+        [fiji, samoa, northPole].each { index.put(it) }
+
+        expect:
+        index.nearest(-16.0, -179.9, 1000d, 10)*.location as Set == [fiji, samoa] as Set
+        index.nearest(89.95, -135, 20d, 10)*.location == [northPole]
+    }
+
+    def "results match a brute-force scan over random locations"() {
+        given:
+        def random = new Random(42)
+        def locations = (1..2000).collect {
+            at("L$it", random.nextDouble() * 2 - 1 + 51.5, random.nextDouble() * 2 - 1)
+        }
+        locations.each { index.put(it) }
+
+        when:
+        def result = index.nearest(51.5, 0.1, radiusKm, 25)
+
+        then:
+        def expected = locations
+                .collect { [it, LocationGridIndex.distanceKm(51.5, 0.1, it.address.latitude, it.address.longitude)] }
+                .findAll { radiusKm == null || it[1] <= radiusKm }
+                .sort { it[1] }
+                .take(25)
+        result*.location == expected.collect { it[0] }
+
+        where:
+        radiusKm << [1d, 10d, null]
+    }
+
+    def "put moves an updated location and drops one whose coordinates were cleared"() {
+        given:
+        def original = at("Cafe", 30.2672, -97.7431)
+        index.put(original)
+
+        when:
+        def moved = new Location(original.id, "Cafe", null, new Address(latitude: 32.7767, longitude: -96.7970), null)
+        index.put(moved)
+
+        then:
+        index.size() == 1
+        index.nearest(30.2672, -97.7431, 50d, 10).isEmpty()
+        index.nearest(32.7767, -96.7970, 1d, 10)*.location == [moved]
+
+        when:
+        index.put(new Location(original.id, "Cafe", null, new Address(city: "Dallas"), null))
+
+        then:
+        index.size() == 0
+    }
+
+    def "remove drops a location from query results"() {
+        given:
+        def cafe = at("Cafe", 30.2672, -97.7431)
+        index.put(cafe)
+
+        when:
+        index.remove(cafe.id)
+
+        then:
+        index.size() == 0
+        index.nearest(30.2672, -97.7431, null, 10).isEmpty()
+    }
+
+    def "startup loads every location with coordinates and mugs page by page"() {
+        given:
+        def entities = (1..1001).collect { new LocationEntity(id: new UUID(0, it)) }
+        def models = entities.collect { at("L${it.id}", it.id.leastSignificantBits % 2 ? 10d : null, 20d) }
+
+        when:
+        index.afterSingletonsInstantiated()
+
+        then:
+        1 * repository.findMappedWithMugs(Limit.of(1000)) >> entities.take(1000)
+        1 * repository.findMappedWithMugsAfter(entities[999].id, Limit.of(1000)) >> entities.drop(1000)
+        entities.size() * locationMapper.toModel(_) >> { LocationEntity e -> models[entities.indexOf(e)] }
+        index.size() == 501
+    }
+
+    def "refresh picks up locations written elsewhere and drops deleted and emptied ones"() {
+        given:
+        def kept = at("Kept", 30.27, -97.74)
+        def deleted = at("Deleted elsewhere", 30.27, -97.74)
+        index.put(kept)
+        index.put(deleted)
+        def moved = at("Kept", 32.78, -96.80)
+        def added = at("Added elsewhere", 30.27, -97.74)
+        def entities = [kept, added].collect { new LocationEntity(id: it.id) }
+        repository.findMappedWithMugs(Limit.of(1000)) >> entities
+        locationMapper.toModel(entities[0]) >> new Location(kept.id, "Kept", null, moved.address, null)
+        locationMapper.toModel(entities[1]) >> added
+
+        when:
+        index.refresh()
+
+        then:
+        index.size() == 2
+        index.nearest(30.27, -97.74, 5d, 10)*.location*.name == ["Added elsewhere"]
+        index.nearest(32.78, -96.80, 5d, 10)*.location*.name == ["Kept"]
+    }
+
+    def "refresh leaves locations changed through this instance while it runs as their events left them"() {
+        given:
+        def created = at("Created during refresh", 30.27, -97.74)
+        def deleted = at("Deleted during refresh", 30.27, -97.74)
+        index.put(deleted)
+        def entity = new LocationEntity(id: deleted.id)
+        repository.findById(created.id) >> Optional.of(new LocationEntity(id: created.id))
+        locationMapper.toModel({ it.id == created.id }) >> created
+        repository.findMappedWithMugs(Limit.of(1000)) >> {
+            index.onChange(ChangeEvent.created(ChangeEvent.Resource.MUG, UUID.randomUUID(),
+                    new Mug(UUID.randomUUID(), "Mug", new Location(created.id, null, null, null, null), null)))
+            index.onChange(ChangeEvent.deleted(ChangeEvent.Resource.LOCATION, deleted.id))
+            [entity]
+        }
+        locationMapper.toModel(entity) >> deleted
+
+        when:
+        index.refresh()
+
+        then:
+        index.nearest(30.27, -97.74, 5d, 10)*.location*.name == ["Created during refresh"]
+    }
+
+    def "a new location joins the index with its first mug"() {
+        given:
+        def cafe = at("Cafe", 30.27, -97.74)
+        def entity = new LocationEntity(id: cafe.id)
+
+        when:
+        index.onChange(ChangeEvent.created(ChangeEvent.Resource.LOCATION, cafe.id, cafe))
+
+        then:
+        index.size() == 0
+        0 * mugCounts._
+
+        when:
+        index.onChange(ChangeEvent.created(ChangeEvent.Resource.MUG, UUID.randomUUID(),
+                new Mug(UUID.randomUUID(), "Mug", new Location(cafe.id, null, null, null, null), null)))
+
+        then:
+        1 * repository.findById(cafe.id) >> Optional.of(entity)
+        1 * locationMapper.toModel(entity) >> cafe
+        index.nearest(30.27, -97.74, 5d, 10)*.location == [cafe]
+
+        when: "another mug at an indexed location"
+        index.onChange(ChangeEvent.created(ChangeEvent.Resource.MUG, UUID.randomUUID(),
+                new Mug(UUID.randomUUID(), "Mug", new Location(cafe.id, null, null, null, null), null)))
+
+        then:
+        0 * repository._
+        index.nearest(30.27, -97.74, 5d, 10)*.location == [cafe]
+    }
+
+    def "an updated location joins the index only when it has coordinates and mugs"() {
+        given:
+        def withMugs = at("With mugs", 30.27, -97.74)
+        def empty = at("Empty", 30.27, -97.74)
+        def unmapped = at("Unmapped", null, null)
+        mugCounts.findMugCount(withMugs.id) >> Optional.of(2L)
+        mugCounts.findMugCount(empty.id) >> Optional.of(0L)
+
+        when:
+        [withMugs, empty, unmapped].each { index.onChange(ChangeEvent.updated(ChangeEvent.Resource.LOCATION, it.id, it)) }
+
+        then:
+        index.nearest(30.27, -97.74, 5d, 10)*.location == [withMugs]
+        0 * mugCounts.findMugCount(unmapped.id)
+    }
+
+    def "an indexed location follows its updates and deletes without a lookup"() {
+        given:
+        def cafe = at("Cafe", 30.27, -97.74)
+        index.put(cafe)
+        def moved = new Location(cafe.id, "Cafe", null, new Address(latitude: 32.78, longitude: -96.80), null)
+
+        when:
+        index.onChange(ChangeEvent.updated(ChangeEvent.Resource.LOCATION, cafe.id, moved))
+
+        then:
+        index.nearest(32.78, -96.80, 5d, 10)*.location == [moved]
+        0 * mugCounts._
+
+        when:
+        index.onChange(ChangeEvent.deleted(ChangeEvent.Resource.LOCATION, cafe.id))
+
+        then:
+        index.size() == 0
+    }
+
+    def "mug deletions and user changes leave the index alone"() {
+        given:
+        def cafe = at("Cafe", 30.27, -97.74)
+        index.put(cafe)
+
+        when:
+        index.onChange(ChangeEvent.deleted(ChangeEvent.Resource.MUG, UUID.randomUUID()))
+        index.onChange(ChangeEvent.mugsDeleted(ChangeEvent.Resource.USER, UUID.randomUUID(), 3))
+        index.onChange(ChangeEvent.deleted(ChangeEvent.Resource.USER, cafe.id))
+
+        then:
+        index.size() == 1
+    }
+}
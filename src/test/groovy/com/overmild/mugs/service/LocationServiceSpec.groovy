@@ -1,13 +1,32 @@
 package com.overmild.mugs.service
 
+import com.overmild.mugs.config.SingleFlightProperties
 import com.overmild.mugs.entity.AddressEmbeddable
 import com.overmild.mugs.entity.LocationEntity
+import com.overmild.mugs.entity.CollectionVersionEntity
+import com.overmild.mugs.entity.MugCountEntity
+import com.overmild.mugs.exception.BadRequestException
 import com.overmild.mugs.mapper.LocationMapper
 import com.overmild.mugs.model.Address
+import com.overmild.mugs.model.ChangeEvent
+import com.overmild.mugs.model.CursorPage
 import com.overmild.mugs.model.Location
+import com.overmild.mugs.model.LocationFilter
+import com.overmild.mugs.model.NearbyLocation
+import com.overmild.mugs.model.PurgeJob
+import com.overmild.mugs.repository.CollectionVersionRepository
+import com.overmild.mugs.repository.FieldProjectionRepository
 import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugCountRepository
+import com.overmild.mugs.repository.MugRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.data.domain.Limit
+import org.springframework.transaction.PlatformTransactionManager
 import spock.lang.Specification
 
+import java.time.Duration
+import java.time.Instant
 import java.util.Optional
 import java.util.UUID
 
@@ -15,7 +34,56 @@ class LocationServiceSpec extends Specification {
 
     LocationRepository repository = Mock()
     LocationMapper locationMapper = Mock()
-    LocationService service = new LocationService(repository, locationMapper)
+    LocationGridIndex locationIndex = Mock()
+    ApplicationEventPublisher eventPublisher = Mock()
+    FieldProjectionRepository fieldProjections = Mock()
+    JsonMergePatch mergePatch = Mock()
+    MugCountRepository mugCounts = Mock()
+    MugRepository mugRepository = Mock()
+    MugPurger purger = Mock()
+    CollectionVersionRepository versions = Mock()
+    SingleFlight singleFlight = new SingleFlight(new SingleFlightProperties(Duration.ofSeconds(5)),
+            Mock(PlatformTransactionManager), new SimpleMeterRegistry())
+    LocationService service = new LocationService(repository, locationMapper, locationIndex, eventPublisher,
+            fieldProjections, mergePatch, mugCounts, mugRepository, purger, singleFlight, versions)
+
+    def "getLocationModifiedAt returns the modification time of an existing location"() {
+        given:
+        def id = UUID.randomUUID()
+        def modifiedAt = Instant.now()
+        repository.findById(id) >> Optional.of(new LocationEntity(id: id, modifiedAt: modifiedAt))
+
+        expect:
+        service.getLocationModifiedAt(id) == modifiedAt
+    }
+
+    def "getLocationModifiedAt throws ResourceNotFoundException when not found"() {
+        given:
+        def id = UUID.randomUUID()
+        repository.findById(id) >> Optional.empty()
+
+        when:
+        service.getLocationModifiedAt(id)
+
+        then:
+        thrown(com.overmild.mugs.exception.ResourceNotFoundException)
+    }
+
+    def "getLocationsVersion returns the maintained collection version"() {
+        given:
+        versions.findVersion(CollectionVersionEntity.Name.LOCATIONS) >> Optional.of(7L)
+
+        expect:
+        service.getLocationsVersion() == 7L
+    }
+
+    def "getLocationsVersion is 0 before the collection has a version row"() {
+        given:
+        versions.findVersion(CollectionVersionEntity.Name.LOCATIONS) >> Optional.empty()
+
+        expect:
+        service.getLocationsVersion() == 0L
+    }
 
     def "createLocation persists and returns location with address and photoUrl"() {
         given:
@@ -40,6 +108,85 @@ class LocationServiceSpec extends Specification {
         result.photoUrl == "https://example.com/a.jpg"
         result.address.line1 == "1 Main St"
         result.address.city == "Springfield"
+        1 * mugCounts.create(savedEntity.id, MugCountEntity.OwnerType.LOCATION)
+        1 * versions.raise(CollectionVersionEntity.Name.LOCATIONS)
+        1 * eventPublisher.publishEvent({ it instanceof ChangeEvent && it.type == ChangeEvent.Type.CREATED && it.data.name == "Cafe A" })
+    }
+
+    def "getAllLocations returns mapped page of locations with next cursor"() {
+        given:
+        def first = new LocationEntity(id: UUID.randomUUID(), name: "Cafe A")
+        def second = new LocationEntity(id: UUID.randomUUID(), name: "Cafe B")
+        repository.findAllByOrderByIdAsc(Limit.of(2)) >> [first, second]
+        locationMapper.toModel(first) >> new Location(first.id, "Cafe A", null, null, null)
+
+        when:
+        CursorPage<Location> result = service.getAllLocations(null, 1)
+
+        then:
+        result.items*.name == ["Cafe A"]
+        KeysetCursor.decode(result.next) == first.id
+    }
+
+    def "getAllLocations rejects a malformed cursor"() {
+        when:
+        service.getAllLocations("not a cursor!", 10)
+
+        then:
+        thrown(BadRequestException)
+        0 * repository._
+    }
+
+    def "findLocations returns mapped page of matching locations with next cursor"() {
+        given:
+        def first = new LocationEntity(id: UUID.randomUUID(), name: "Cafe A")
+        def second = new LocationEntity(id: UUID.randomUUID(), name: "Cafe B")
+        repository.findBy(_, _) >> [first, second]
+        locationMapper.toModel(first) >> new Location(first.id, "Cafe A", null, null, null)
+
+        when:
+        CursorPage<Location> result = service.findLocations(new LocationFilter("Springfield", null, null, null), null, 1)
+
+        then:
+        result.items*.name == ["Cafe A"]
+        KeysetCursor.decode(result.next) == first.id
+    }
+
+    def "getLocationFields applies the address filter only when one is given"() {
+        when:
+        service.getLocationFields(new LocationFilter(null, null, null, null), "name", null, 10)
+        service.getLocationFields(new LocationFilter("Austin", null, null, null), "name", null, 10)
+
+        then:
+        1 * fieldProjections.findPage(LocationEntity, ["id", "name"], null, null, Limit.of(11)) >> []
+        1 * fieldProjections.findPage(LocationEntity, ["id", "name"], { it != null }, null, Limit.of(11)) >> []
+    }
+
+    def "searchLocations fetches one extra row and returns an offset cursor"() {
+        given:
+        def first = new LocationEntity(id: UUID.randomUUID(), name: "Harbor Cafe")
+        def second = new LocationEntity(id: UUID.randomUUID(), name: "Harbor Bakery")
+        locationMapper.toModel(first) >> new Location(first.id, "Harbor Cafe", null, null, null)
+
+        when:
+        CursorPage<Location> result = service.searchLocations("harbor", OffsetCursor.encode(20), 1)
+
+        then:
+        1 * repository.search("harbor", 2, 20) >> [first, second]
+        result.items*.name == ["Harbor Cafe"]
+        OffsetCursor.decode(result.next) == 21
+    }
+
+    def "searchLocations rejects a blank query"() {
+        when:
+        service.searchLocations(query, null, 10)
+
+        then:
+        thrown(BadRequestException)
+        0 * repository._
+
+        where:
+        query << [null, "", "  "]
     }
 
     def "getLocationById returns location with address and photoUrl"() {
@@ -75,28 +222,27 @@ class LocationServiceSpec extends Specification {
         thrown(com.overmild.mugs.exception.ResourceNotFoundException)
     }
 
-    def "updateLocation persists updated address and photoUrl"() {
+    def "updateLocation applies the changes to the loaded entity and flushes it before mapping"() {
         given:
         def id = UUID.randomUUID()
         def address = new Address(line1: "3 Elm St", city: "Capital City", state: "IL", zipCode: "62000", country: "US")
         def updated = new Location(id, "Cafe C", "updated", address, "https://example.com/c.jpg")
-        def entity = new LocationEntity(id: id, name: "Cafe C", description: "updated",
-                address: new AddressEmbeddable(line1: "3 Elm St", city: "Capital City", state: "IL", zipCode: "62000", country: "US"),
-                photoUrl: "https://example.com/c.jpg")
+        def entity = new LocationEntity(id: id, name: "Cafe C", description: "original")
         def expected = new Location(id, "Cafe C", "updated", address, "https://example.com/c.jpg")
 
         repository.findById(id) >> Optional.of(entity)
-        locationMapper.toEntity(updated) >> entity
-        repository.save(entity) >> entity
         locationMapper.toModel(entity) >> expected
 
         when:
         Location result = service.updateLocation(updated)
 
         then:
+        1 * locationMapper.updateEntity(updated, entity)
+        1 * repository.saveAndFlush(entity) >> entity
         result.name == "Cafe C"
         result.photoUrl == "https://example.com/c.jpg"
         result.address.line1 == "3 Elm St"
+        1 * eventPublisher.publishEvent(ChangeEvent.updated(ChangeEvent.Resource.LOCATION, id, expected))
     }
 
     def "updateLocation throws ResourceNotFoundException when location does not exist"() {
@@ -123,4 +269,108 @@ class LocationServiceSpec extends Specification {
         thrown(com.overmild.mugs.exception.ResourceNotFoundException)
         0 * repository._
     }
+
+    def "deleteLocation deletes its mugs in bulk and publishes a deleted event for the spatial index"() {
+        given:
+        def id = UUID.randomUUID()
+        mugCounts.findMugCount(id) >> Optional.empty()
+        mugCounts.countMugsAtLocation(id) >> 2
+        purger.runsInBackground(2) >> false
+
+        when:
+        def purge = service.deleteLocation(id)
+
+        then:
+        1 * mugCounts.subtractMugsAtLocation(id)
+
+        then:
+        1 * mugRepository.deleteAllByLocationId(id) >> 2
+
+        then:
+        1 * repository.removeById(id) >> 1
+        1 * mugCounts.deleteByOwnerId(id)
+        1 * eventPublisher.publishEvent(ChangeEvent.mugsDeleted(ChangeEvent.Resource.LOCATION, id, 2))
+
+        then:
+        1 * eventPublisher.publishEvent(ChangeEvent.deleted(ChangeEvent.Resource.LOCATION, id))
+        purge.isEmpty()
+    }
+
+    def "deleteLocation hands a location with too many mugs to a background purge"() {
+        given:
+        def id = UUID.randomUUID()
+        mugCounts.findMugCount(id) >> Optional.of(5000L)
+        purger.runsInBackground(5000) >> true
+
+        when:
+        service.deleteLocation(id)
+
+        then:
+        1 * purger.start(ChangeEvent.Resource.LOCATION, id, _, _) >> new PurgeJob(UUID.randomUUID(),
+                ChangeEvent.Resource.LOCATION, id, PurgeJob.Status.RUNNING, 0, Instant.now(), null, null)
+        0 * repository.removeById(_)
+        0 * eventPublisher.publishEvent(_)
+    }
+
+    def "deleteLocation of a missing location publishes nothing"() {
+        given:
+        def id = UUID.randomUUID()
+        mugCounts.findMugCount(id) >> Optional.empty()
+        mugCounts.countMugsAtLocation(id) >> 0L
+        mugRepository.deleteAllByLocationId(id) >> 0
+        repository.removeById(id) >> 0
+
+        when:
+        service.deleteLocation(id)
+
+        then:
+        0 * mugCounts.deleteByOwnerId(_)
+        0 * versions.raise(_)
+        0 * eventPublisher.publishEvent(_)
+    }
+
+    def "getNearbyLocations answers from the spatial index without touching the repository"() {
+        given:
+        def nearby = [new NearbyLocation(new Location(UUID.randomUUID(), "Cafe A", null, null, null), 0.4d)]
+
+        when:
+        def result = service.getNearbyLocations(30.27, -97.74, 5d, 10_000)
+
+        then:
+        1 * locationIndex.nearest(30.27, -97.74, 5d, KeysetCursor.MAX_LIMIT) >> nearby
+        0 * repository._
+        result == nearby
+    }
+
+    def "getNearbyLocations rejects lat=#lat lon=#lon radiusKm=#radiusKm"() {
+        when:
+        service.getNearbyLocations(lat, lon, radiusKm, 10)
+
+        then:
+        thrown(BadRequestException)
+        0 * locationIndex._
+
+        where:
+        lat                      | lon                      | radiusKm
+        91                       | 0                        | null
+        -90.5                    | 0                        | null
+        0                        | 180.1                    | null
+        0                        | -181                     | null
+        0                        | 0                        | 0d
+        0                        | 0                        | -1d
+        0                        | 0                        | Double.NaN
+        0                        | 0                        | Double.POSITIVE_INFINITY
+        Double.NaN               | 0                        | null
+        0                        | Double.NaN               | null
+        Double.POSITIVE_INFINITY | 0                        | null
+        0                        | Double.NEGATIVE_INFINITY | 5d
+    }
+
+    def "getNearbyLocations caps the radius at the greatest distance on the globe"() {
+        when:
+        service.getNearbyLocations(0, 0, 1e12d, 10)
+
+        then:
+        1 * locationIndex.nearest(0, 0, LocationGridIndex.MAX_DISTANCE_KM, 10) >> []
+    }
 }
@@ -0,0 +1,75 @@
+package com.overmild.mugs.service
+
+import com.overmild.mugs.config.PurgeProperties
+import com.overmild.mugs.model.ChangeEvent
+import com.overmild.mugs.model.PurgeJob
+import com.overmild.mugs.repository.MugCountRepository
+import com.overmild.mugs.repository.MugRepository
+import org.springframework.transaction.PlatformTransactionManager
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.function.LongUnaryOperator
+
+class MugPurgerSpec extends Specification {
+
+    MugRepository mugRepository = Mock()
+    MugCountRepository mugCounts = Mock()
+    SingleFlight singleFlight = Mock()
+    MugPurger purger = new MugPurger(new PurgeProperties(10, 2, Duration.ofHours(1)), mugRepository, mugCounts,
+            Mock(PlatformTransactionManager), singleFlight)
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    def cleanup() {
+        purger.destroy()
+    }
+
+    def "a user purge forgets the user's mug loads after every chunk"() {
+        given:
+        def ownerId = UUID.randomUUID()
+        def chunks = [[UUID.randomUUID(), UUID.randomUUID()], [UUID.randomUUID()]].iterator()
+
+        when:
+        def job = purger.start(ChangeEvent.Resource.USER, ownerId, { chunks.next() }, { purged -> 0 } as LongUnaryOperator)
+        conditions.eventually {
+            assert purger.getJob(job.id).get().status == PurgeJob.Status.COMPLETED
+        }
+
+        then:
+        2 * singleFlight.forget(MugService.MUGS_BY_USER_FLIGHT, ownerId)
+        0 * singleFlight.forgetAll(_)
+    }
+
+    def "a location purge forgets every user's mug loads after every chunk"() {
+        given:
+        def chunks = [[UUID.randomUUID(), UUID.randomUUID()], []].iterator()
+
+        when:
+        def job = purger.start(ChangeEvent.Resource.LOCATION, UUID.randomUUID(), { chunks.next() },
+                { purged -> 0 } as LongUnaryOperator)
+        conditions.eventually {
+            assert purger.getJob(job.id).get().status == PurgeJob.Status.COMPLETED
+        }
+
+        then:
+        purger.getJob(job.id).get().mugsDeleted == 2
+        1 * singleFlight.forgetAll(MugService.MUGS_BY_USER_FLIGHT)
+    }
+
+    def "starting a purge of an owner already being purged returns the running job"() {
+        given:
+        def ownerId = UUID.randomUUID()
+        def release = new CountDownLatch(1)
+        def chunk = { release.await(); [] }
+
+        when:
+        def first = purger.start(ChangeEvent.Resource.USER, ownerId, chunk, { purged -> 0 } as LongUnaryOperator)
+        def second = purger.start(ChangeEvent.Resource.USER, ownerId, chunk, { purged -> 0 } as LongUnaryOperator)
+        release.countDown()
+
+        then:
+        second.id == first.id
+    }
+}
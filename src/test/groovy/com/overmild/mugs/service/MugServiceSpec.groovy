@@ -1,44 +1,131 @@
 package com.overmild.mugs.service
 
+import com.overmild.mugs.config.SingleFlightProperties
+import com.overmild.mugs.entity.LocationEntity
 import com.overmild.mugs.entity.MugEntity
+import com.overmild.mugs.entity.UserEntity
+import com.overmild.mugs.exception.BadRequestException
 import com.overmild.mugs.exception.ResourceNotFoundException
 import com.overmild.mugs.mapper.MugMapper
+import com.overmild.mugs.model.ChangeEvent
+import com.overmild.mugs.model.CursorPage
+import com.overmild.mugs.model.Location
 import com.overmild.mugs.model.Mug
+import com.overmild.mugs.model.MugImportResult
+import com.overmild.mugs.model.User
+import com.overmild.mugs.repository.FieldProjectionRepository
+import com.overmild.mugs.repository.LocationRepository
+import com.overmild.mugs.repository.MugCountRepository
 import com.overmild.mugs.repository.MugRepository
+import com.overmild.mugs.repository.UserRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import jakarta.persistence.EntityManager
+import jakarta.persistence.LockModeType
+import jakarta.validation.Validation
+import jakarta.validation.Validator
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.data.domain.Limit
+import org.springframework.transaction.PlatformTransactionManager
 import spock.lang.Specification
+import tools.jackson.core.exc.StreamReadException
+import tools.jackson.databind.json.JsonMapper
+
+import java.time.Duration
+import java.util.stream.Stream
 
 class MugServiceSpec extends Specification {
 
     MugRepository repository = Mock()
     MugMapper mugMapper = Mock()
-    MugService service = new MugService(repository, mugMapper)
-
-    def "getAllMugs returns mapped list of mugs"() {
+    EntityManager entityManager = Mock()
+    UserRepository userRepository = Mock()
+    LocationRepository locationRepository = Mock()
+    Validator validator = Validation.buildDefaultValidatorFactory().validator
+    FieldProjectionRepository fieldProjections = Mock()
+    ApplicationEventPublisher eventPublisher = Mock()
+    JsonMergePatch mergePatch = Mock()
+    MugCountRepository mugCounts = Mock()
+    SingleFlight singleFlight = new SingleFlight(new SingleFlightProperties(Duration.ofSeconds(5)),
+            Mock(PlatformTransactionManager), new SimpleMeterRegistry())
+    MugService service = new MugService(repository, mugMapper, entityManager,
+            userRepository, locationRepository, validator, fieldProjections, eventPublisher, mergePatch, mugCounts,
+            singleFlight)
+
+    def "getAllMugs returns mapped first page of mugs"() {
         given:
         def id = UUID.randomUUID()
         def entity = new MugEntity(id: id, displayName: "Classic Mug")
         def mug = new Mug(id, "Classic Mug", null, null)
 
-        repository.findAll() >> [entity]
+        repository.findAllByOrderByIdAsc(Limit.of(51)) >> [entity]
         mugMapper.toModel(entity) >> mug
 
         when:
-        List<Mug> result = service.getAllMugs()
+        CursorPage<Mug> result = service.getAllMugs(null, 50)
 
         then:
-        result.size() == 1
-        result[0].displayName == "Classic Mug"
+        result.items.size() == 1
+        result.items[0].displayName == "Classic Mug"
+        result.next == null
     }
 
-    def "getAllMugs returns empty list when no mugs exist"() {
+    def "getAllMugs returns empty page when no mugs exist"() {
         given:
-        repository.findAll() >> []
+        repository.findAllByOrderByIdAsc(_) >> []
 
         when:
-        List<Mug> result = service.getAllMugs()
+        CursorPage<Mug> result = service.getAllMugs(null, 50)
 
         then:
-        result.isEmpty()
+        result.items.isEmpty()
+        result.next == null
+    }
+
+    def "getAllMugs returns a next cursor when more mugs exist"() {
+        given:
+        def entities = (1..3).collect { new MugEntity(id: UUID.randomUUID(), displayName: "Mug $it") }
+        repository.findAllByOrderByIdAsc(Limit.of(3)) >> entities
+        mugMapper.toModel(_) >> { MugEntity e -> new Mug(e.id, e.displayName, null, null) }
+
+        when:
+        CursorPage<Mug> result = service.getAllMugs(null, 2)
+
+        then:
+        result.items*.displayName == ["Mug 1", "Mug 2"]
+        KeysetCursor.decode(result.next) == entities[1].id
+    }
+
+    def "getAllMugs continues after the id in the cursor"() {
+        given:
+        def after = UUID.randomUUID()
+        def entity = new MugEntity(id: UUID.randomUUID(), displayName: "Next Mug")
+
+        when:
+        CursorPage<Mug> result = service.getAllMugs(KeysetCursor.encode(after), 10)
+
+        then:
+        1 * repository.findAllByIdGreaterThanOrderByIdAsc(after, Limit.of(11)) >> [entity]
+        0 * repository.findAllByOrderByIdAsc(_)
+        mugMapper.toModel(entity) >> new Mug(entity.id, "Next Mug", null, null)
+        result.items*.displayName == ["Next Mug"]
+    }
+
+    def "getMugFields selects the requested fields and pages by id"() {
+        given:
+        def first = UUID.randomUUID()
+        def second = UUID.randomUUID()
+
+        when:
+        CursorPage<Map<String, Object>> result = service.getMugFields("displayName,user.id", null, 1)
+
+        then:
+        1 * fieldProjections.findPage(MugEntity, ["id", "displayName", "user.id"], null, null, Limit.of(2)) >> [
+                [id: first, displayName: "First"],
+                [id: second, displayName: "Second"],
+        ]
+        0 * mugMapper._
+        result.items == [[id: first, displayName: "First"]]
+        KeysetCursor.decode(result.next) == first
     }
 
     def "getMugById returns mug when found"() {
@@ -47,7 +134,7 @@ class MugServiceSpec extends Specification {
         def entity = new MugEntity(id: id, displayName: "Travel Mug")
         def mug = new Mug(id, "Travel Mug", null, null)
 
-        repository.findById(id) >> Optional.of(entity)
+        repository.findWithUserAndLocationById(id) >> Optional.of(entity)
         mugMapper.toModel(entity) >> mug
 
         when:
@@ -61,7 +148,7 @@ class MugServiceSpec extends Specification {
     def "getMugById throws ResourceNotFoundException when not found"() {
         given:
         def id = UUID.randomUUID()
-        repository.findById(id) >> Optional.empty()
+        repository.findWithUserAndLocationById(id) >> Optional.empty()
 
         when:
         service.getMugById(id)
@@ -102,11 +189,153 @@ class MugServiceSpec extends Specification {
         result.isEmpty()
     }
 
+    def "exportMugs hands each mapped mug to the sink and detaches it"() {
+        given:
+        def entity1 = new MugEntity(id: UUID.randomUUID(), displayName: "Mug A")
+        def entity2 = new MugEntity(id: UUID.randomUUID(), displayName: "Mug B")
+        repository.streamAllWithUserAndLocation() >> Stream.of(entity1, entity2)
+        mugMapper.toModel(_) >> { MugEntity e -> new Mug(e.id, e.displayName, null, null) }
+        def exported = []
+
+        when:
+        service.exportMugs { exported << it }
+
+        then:
+        exported*.displayName == ["Mug A", "Mug B"]
+        1 * entityManager.detach(entity1)
+        1 * entityManager.detach(entity2)
+    }
+
+    def "exportMugs clears the persistence context every fetch-size rows"() {
+        given:
+        def entities = (1..MugRepository.EXPORT_FETCH_SIZE * 2).collect { new MugEntity(id: UUID.randomUUID()) }
+        repository.streamAllWithUserAndLocation() >> entities.stream()
+
+        when:
+        service.exportMugs { }
+
+        then:
+        2 * entityManager.clear()
+    }
+
+    def "importMugs persists valid rows and reports rejected ones in order"() {
+        given:
+        def userId = UUID.randomUUID()
+        def locationId = UUID.randomUUID()
+        def missingUserId = UUID.randomUUID()
+        def user = new User(userId, null, null, null)
+        def location = new Location(locationId, null, null, null, null)
+        def rows = [
+                new Mug(null, "Good Mug", location, user),
+                new Mug(null, "", location, user),
+                new Mug(null, "Orphan Mug", location, new User(missingUserId, null, null, null)),
+                new Mug(null, "No Location", null, user)
+        ]
+        userRepository.findExistingIds(_) >> [userId].toSet()
+        locationRepository.findExistingIds(_) >> [locationId].toSet()
+        mugMapper.toEntity(_) >> { Mug m -> new MugEntity(displayName: m.displayName) }
+        entityManager.getReference(UserEntity, userId) >> new UserEntity(id: userId)
+        entityManager.getReference(LocationEntity, locationId) >> new LocationEntity(id: locationId)
+
+        when:
+        List<MugImportResult> results = service.importMugs(rows.iterator())
+
+        then:
+        1 * entityManager.persist({ MugEntity e -> e.displayName == "Good Mug" && e.user.id == userId }) >> { MugEntity e ->
+            e.id = UUID.randomUUID()
+        }
+        1 * entityManager.flush()
+        1 * entityManager.clear()
+        results*.index == [0, 1, 2, 3]
+        results*.status == [MugImportResult.Status.CREATED, MugImportResult.Status.REJECTED,
+                            MugImportResult.Status.REJECTED, MugImportResult.Status.REJECTED]
+        results[0].id != null
+        results[1].errors.any { it.startsWith("displayName") }
+        results[2].errors == ["User not found: " + missingUserId]
+        results[3].errors == ["location.id: must not be null"]
+    }
+
+    def "importMugs rejects a row that cannot be read and carries on"() {
+        given:
+        def userId = UUID.randomUUID()
+        def locationId = UUID.randomUUID()
+        def good = new Mug(null, "Good Mug", new Location(locationId, null, null, null, null), new User(userId, null, null, null))
+        def rows = [
+                { good },
+                { throw new StreamReadException(null, "Unexpected end-of-input") },
+                { good }
+        ].iterator()
+        def mugs = [hasNext: { rows.hasNext() }, next: { rows.next().call() }] as Iterator<Mug>
+        userRepository.findExistingIds(_) >> [userId].toSet()
+        locationRepository.findExistingIds(_) >> [locationId].toSet()
+        mugMapper.toEntity(_) >> { Mug m -> new MugEntity(displayName: m.displayName) }
+
+        when:
+        def results = service.importMugs(mugs)
+
+        then:
+        2 * entityManager.persist(_)
+        results*.index == [0, 1, 2]
+        results*.status == [MugImportResult.Status.CREATED, MugImportResult.Status.REJECTED,
+                            MugImportResult.Status.CREATED]
+        results[1].errors == ["Malformed row: Unexpected end-of-input"]
+    }
+
+    def "importMugs flushes and clears once per chunk"() {
+        given:
+        def userId = UUID.randomUUID()
+        def locationId = UUID.randomUUID()
+        def rows = (1..MugService.IMPORT_CHUNK_SIZE + 1).collect {
+            new Mug(null, "Mug $it", new Location(locationId, null, null, null, null), new User(userId, null, null, null))
+        }
+        userRepository.findExistingIds(_) >> [userId].toSet()
+        locationRepository.findExistingIds(_) >> [locationId].toSet()
+        mugMapper.toEntity(_) >> { Mug m -> new MugEntity(displayName: m.displayName) }
+
+        when:
+        def results = service.importMugs(rows.iterator())
+
+        then:
+        results.size() == MugService.IMPORT_CHUNK_SIZE + 1
+        (MugService.IMPORT_CHUNK_SIZE + 1) * entityManager.persist(_)
+        2 * entityManager.flush()
+        2 * entityManager.clear()
+    }
+
+    def "importMugs announces the whole import with one bulk event"() {
+        given:
+        def userId = UUID.randomUUID()
+        def locationId = UUID.randomUUID()
+        def rows = (1..MugService.IMPORT_CHUNK_SIZE + 1).collect {
+            new Mug(null, "Mug $it", new Location(locationId, null, null, null, null), new User(userId, null, null, null))
+        } + [new Mug(null, "", new Location(locationId, null, null, null, null), new User(userId, null, null, null))]
+        userRepository.findExistingIds(_) >> [userId].toSet()
+        locationRepository.findExistingIds(_) >> [locationId].toSet()
+        mugMapper.toEntity(_) >> { Mug m -> new MugEntity(displayName: m.displayName) }
+
+        when:
+        service.importMugs(rows.iterator())
+
+        then:
+        1 * eventPublisher.publishEvent(ChangeEvent.mugsImported(MugService.IMPORT_CHUNK_SIZE + 1))
+        0 * eventPublisher.publishEvent(_)
+    }
+
+    def "importMugs publishes nothing when every row is rejected"() {
+        when:
+        service.importMugs([new Mug(null, "", null, null)].iterator())
+
+        then:
+        0 * eventPublisher.publishEvent(_)
+    }
+
     def "createMug persists and returns mug"() {
         given:
         def input = new Mug(null, "New Mug", null, null)
         def entity = new MugEntity(displayName: "New Mug")
-        def savedEntity = new MugEntity(id: UUID.randomUUID(), displayName: "New Mug")
+        def user = new UserEntity(id: UUID.randomUUID())
+        def location = new LocationEntity(id: UUID.randomUUID())
+        def savedEntity = new MugEntity(id: UUID.randomUUID(), displayName: "New Mug", user: user, location: location)
         def expected = new Mug(savedEntity.id, "New Mug", null, null)
 
         mugMapper.toEntity(input) >> entity
@@ -118,40 +347,164 @@ class MugServiceSpec extends Specification {
 
         then:
         result.displayName == "New Mug"
+        1 * mugCounts.add(user.id, 1)
+        1 * mugCounts.add(location.id, 1)
     }
 
-    def "updateMug updates and returns mug"() {
+    def "updateMug applies the changes to the loaded entity and flushes it before mapping"() {
         given:
         def id = UUID.randomUUID()
-        def updated = new Mug(id, "Updated Mug", null, null)
-        def entity = new MugEntity(id: id, displayName: "Updated Mug")
-        def savedEntity = new MugEntity(id: id, displayName: "Updated Mug")
+        def user = new UserEntity(id: UUID.randomUUID())
+        def location = new LocationEntity(id: UUID.randomUUID())
+        def updated = new Mug(id, "Updated Mug", new Location(location.id, null, null, null, null),
+                new User(user.id, null, null, null))
+        def entity = new MugEntity(id: id, displayName: "Original Mug", user: user, location: location)
         def expected = new Mug(id, "Updated Mug", null, null)
 
-        repository.findById(id) >> Optional.of(entity)
-        mugMapper.toEntity(updated) >> entity
-        repository.save(entity) >> savedEntity
-        mugMapper.toModel(savedEntity) >> expected
+        repository.findWithUserAndLocationById(id) >> Optional.of(entity)
+        mugMapper.toModel(entity) >> expected
 
         when:
         Mug result = service.updateMug(updated)
 
         then:
+        1 * mugMapper.updateEntity(updated, entity)
+        1 * repository.saveAndFlush(entity) >> entity
+        0 * userRepository._
+        0 * locationRepository._
+        0 * entityManager.refresh(*_)
+        0 * mugCounts._
+        entity.user.is(user)
+        entity.location.is(location)
         result.displayName == "Updated Mug"
+        1 * eventPublisher.publishEvent(ChangeEvent.updated(ChangeEvent.Resource.MUG, id, expected))
+    }
+
+    def "updateMug locks the mug and moves it, and its counts, to another user and location"() {
+        given:
+        def id = UUID.randomUUID()
+        def newUser = new UserEntity(id: UUID.randomUUID())
+        def newLocation = new LocationEntity(id: UUID.randomUUID())
+        def updated = new Mug(id, "Moved Mug", new Location(newLocation.id, null, null, null, null),
+                new User(newUser.id, null, null, null))
+        def oldUser = new UserEntity(id: UUID.randomUUID())
+        def oldLocation = new LocationEntity(id: UUID.randomUUID())
+        def entity = new MugEntity(id: id, displayName: "Moved Mug", user: oldUser, location: oldLocation)
+
+        repository.findWithUserAndLocationById(id) >> Optional.of(entity)
+        userRepository.findById(newUser.id) >> Optional.of(newUser)
+        locationRepository.findById(newLocation.id) >> Optional.of(newLocation)
+        repository.saveAndFlush(entity) >> entity
+        mugMapper.toModel(entity) >> updated
+
+        when:
+        service.updateMug(updated)
+
+        then:
+        1 * entityManager.refresh(entity, LockModeType.PESSIMISTIC_WRITE)
+        entity.user.is(newUser)
+        entity.location.is(newLocation)
+        1 * mugCounts.add(oldUser.id, -1)
+        1 * mugCounts.add(newUser.id, 1)
+        1 * mugCounts.add(oldLocation.id, -1)
+        1 * mugCounts.add(newLocation.id, 1)
+    }
+
+    def "updateMug throws ResourceNotFoundException when moved to a missing user"() {
+        given:
+        def id = UUID.randomUUID()
+        def missing = UUID.randomUUID()
+        def location = new LocationEntity(id: UUID.randomUUID())
+        def entity = new MugEntity(id: id, displayName: "Mug", user: new UserEntity(id: UUID.randomUUID()),
+                location: location)
+        repository.findWithUserAndLocationById(id) >> Optional.of(entity)
+        userRepository.findById(missing) >> Optional.empty()
+
+        when:
+        service.updateMug(new Mug(id, "Mug", new Location(location.id, null, null, null, null),
+                new User(missing, null, null, null)))
+
+        then:
+        def e = thrown(ResourceNotFoundException)
+        e.message == "User not found: " + missing
+    }
+
+    def "updateMug requires the user and location of the full representation"() {
+        given:
+        def id = UUID.randomUUID()
+        def user = new UserEntity(id: UUID.randomUUID())
+        def location = new LocationEntity(id: UUID.randomUUID())
+        def entity = new MugEntity(id: id, displayName: "Mug", user: user, location: location)
+        repository.findWithUserAndLocationById(id) >> Optional.of(entity)
+
+        when:
+        service.updateMug(new Mug(id, "Mug", withLocation ? new Location(location.id, null, null, null, null) : null,
+                withUser ? new User(user.id, null, null, null) : null))
+
+        then:
+        def e = thrown(BadRequestException)
+        e.message == message
+        0 * mugMapper.updateEntity(*_)
+        0 * repository.saveAndFlush(_)
+        0 * eventPublisher.publishEvent(_)
+
+        where:
+        withUser | withLocation || message
+        false    | true         || "user.id: must not be null"
+        true     | false        || "location.id: must not be null"
+    }
+
+    def "patchMug merges the patch into the current mug and updates it in place"() {
+        given:
+        def id = UUID.randomUUID()
+        def user = new UserEntity(id: UUID.randomUUID())
+        def location = new LocationEntity(id: UUID.randomUUID())
+        def entity = new MugEntity(id: id, displayName: "Original Mug", user: user, location: location)
+        def current = new Mug(id, "Original Mug", new Location(location.id, null, null, null, null),
+                new User(user.id, null, null, null))
+        def patched = new Mug(id, "Patched Mug", current.location, current.user)
+        def patch = JsonMapper.builder().build().readTree('{"displayName":"Patched Mug"}')
+
+        repository.findWithUserAndLocationById(id) >> Optional.of(entity)
+        mugMapper.toModel(entity) >>> [current, patched]
+        mergePatch.apply(current, patch, Mug) >> patched
+
+        when:
+        Mug result = service.patchMug(id, patch)
+
+        then:
+        1 * mugMapper.updateEntity(patched, entity)
+        1 * repository.saveAndFlush(entity) >> entity
+        0 * userRepository._
+        result == patched
+        1 * eventPublisher.publishEvent(ChangeEvent.updated(ChangeEvent.Resource.MUG, id, patched))
+    }
+
+    def "patchMug throws ResourceNotFoundException when mug does not exist"() {
+        given:
+        def id = UUID.randomUUID()
+        repository.findWithUserAndLocationById(id) >> Optional.empty()
+
+        when:
+        service.patchMug(id, JsonMapper.builder().build().readTree('{}'))
+
+        then:
+        thrown(ResourceNotFoundException)
+        0 * mergePatch._
     }
 
     def "updateMug throws ResourceNotFoundException when mug does not exist"() {
         given:
         def id = UUID.randomUUID()
         def mug = new Mug(id, "Ghost Mug", null, null)
-        repository.findById(id) >> Optional.empty()
+        repository.findWithUserAndLocationById(id) >> Optional.empty()
 
         when:
         service.updateMug(mug)
 
         then:
         thrown(ResourceNotFoundException)
-        0 * repository.save(_)
+        0 * mugMapper.updateEntity(_, _)
     }
 
     def "updateMug throws ResourceNotFoundException when id is null"() {
@@ -166,14 +519,34 @@ class MugServiceSpec extends Specification {
         0 * repository._
     }
 
-    def "deleteMug calls repository deleteById"() {
+    def "deleteMug deletes the locked mug and takes it off the counts of its user and location"() {
+        given:
+        def id = UUID.randomUUID()
+        def entity = new MugEntity(id: id, user: new UserEntity(id: UUID.randomUUID()),
+                location: new LocationEntity(id: UUID.randomUUID()))
+        repository.findForUpdateById(id) >> Optional.of(entity)
+
+        when:
+        service.deleteMug(id)
+
+        then:
+        1 * repository.delete(entity)
+        1 * mugCounts.add(entity.user.id, -1)
+        1 * mugCounts.add(entity.location.id, -1)
+        1 * eventPublisher.publishEvent(ChangeEvent.deleted(ChangeEvent.Resource.MUG, id))
+    }
+
+    def "deleteMug of a missing mug changes no counts and publishes nothing"() {
         given:
         def id = UUID.randomUUID()
+        repository.findForUpdateById(id) >> Optional.empty()
 
         when:
         service.deleteMug(id)
 
         then:
-        1 * repository.deleteById(id)
+        0 * repository.delete(_)
+        0 * mugCounts._
+        0 * eventPublisher.publishEvent(_)
     }
 }
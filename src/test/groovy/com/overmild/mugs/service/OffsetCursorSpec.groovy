@@ -0,0 +1,41 @@
+package com.overmild.mugs.service
+
+import com.overmild.mugs.exception.BadRequestException
+import spock.lang.Specification
+
+class OffsetCursorSpec extends Specification {
+
+    def "encode then decode round-trips the offset"() {
+        expect:
+        OffsetCursor.decode(OffsetCursor.encode(offset)) == offset
+
+        where:
+        offset << [0, 50, 123_456]
+    }
+
+    def "decode starts from the beginning for a missing cursor"() {
+        expect:
+        OffsetCursor.decode(cursor) == 0
+
+        where:
+        cursor << [null, "", "   "]
+    }
+
+    def "decode rejects malformed and negative cursors"() {
+        when:
+        OffsetCursor.decode(cursor)
+
+        then:
+        thrown(BadRequestException)
+
+        where:
+        cursor << ["not base64!", KeysetCursor.encode(UUID.randomUUID()), OffsetCursor.encode(-1)]
+    }
+
+    def "page returns a next cursor only when an extra row was fetched"() {
+        expect:
+        OffsetCursor.page([1, 2, 3], 2, 10, { it * 10 }).items == [10, 20]
+        OffsetCursor.decode(OffsetCursor.page([1, 2, 3], 2, 10, { it }).next) == 12
+        OffsetCursor.page([1, 2], 2, 10, { it }).next == null
+    }
+}
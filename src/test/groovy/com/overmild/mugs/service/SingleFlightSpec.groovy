@@ -0,0 +1,154 @@
+package com.overmild.mugs.service
+
+import com.overmild.mugs.config.SingleFlightProperties
+import com.overmild.mugs.exception.ResourceNotFoundException
+import com.overmild.mugs.exception.ServiceUnavailableException
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.transaction.PlatformTransactionManager
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class SingleFlightSpec extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    SingleFlight singleFlight = new SingleFlight(new SingleFlightProperties(Duration.ofSeconds(5)),
+            Mock(PlatformTransactionManager), meterRegistry)
+    def executor = Executors.newVirtualThreadPerTaskExecutor()
+    def conditions = new PollingConditions(timeout: 5)
+    def loads = new AtomicInteger()
+    def release = new CountDownLatch(1)
+
+    def cleanup() {
+        release.countDown()
+        executor.shutdownNow()
+    }
+
+    def "concurrent callers with the same key share one load"() {
+        when:
+        def callers = (1..5).collect { start("user", 1) { "Ada" } }
+        conditions.eventually { assert shared("user") == 4 }
+        release.countDown()
+
+        then:
+        callers*.get() == ["Ada"] * 5
+        loads.get() == 1
+    }
+
+    def "callers with different keys load separately"() {
+        when:
+        def first = start("user", 1) { "Ada" }
+        def second = start("user", 2) { "Grace" }
+        conditions.eventually { assert loads.get() == 2 }
+        release.countDown()
+
+        then:
+        first.get() == "Ada"
+        second.get() == "Grace"
+    }
+
+    def "every caller gets the exception of a failed load"() {
+        given:
+        def failure = new ResourceNotFoundException("User not found: 1")
+
+        when:
+        def callers = (1..3).collect { start("user", 1) { throw failure } }
+        conditions.eventually { assert shared("user") == 2 }
+        release.countDown()
+        def errors = callers.collect { caller ->
+            try {
+                caller.get()
+                null
+            } catch (ExecutionException ex) {
+                ex.cause
+            }
+        }
+
+        then:
+        errors.every { it.is(failure) }
+        loads.get() == 1
+    }
+
+    def "a finished load is not reused"() {
+        when:
+        singleFlight.load("user", 1) { loads.incrementAndGet() }
+        singleFlight.load("user", 1) { loads.incrementAndGet() }
+
+        then:
+        loads.get() == 2
+    }
+
+    def "a caller waiting longer than the timeout fails without stopping the load"() {
+        given:
+        def impatient = new SingleFlight(new SingleFlightProperties(Duration.ofMillis(50)),
+                Mock(PlatformTransactionManager), meterRegistry)
+        def leader = executor.submit { impatient.load("user", 1) { loads.incrementAndGet(); release.await(); "Ada" } }
+        conditions.eventually { assert loads.get() == 1 }
+
+        when:
+        impatient.load("user", 1) { "unused" }
+
+        then:
+        def ex = thrown(ServiceUnavailableException)
+        ex.retryAfter == Duration.ofMillis(50)
+
+        when:
+        release.countDown()
+
+        then:
+        leader.get() == "Ada"
+    }
+
+    def "callers arriving after forget start a new load"() {
+        given:
+        def first = start("user", 1) { "Ada" }
+        conditions.eventually { assert loads.get() == 1 }
+
+        when:
+        singleFlight.forget("user", 1)
+        def second = start("user", 1) { "Ada Lovelace" }
+        conditions.eventually { assert loads.get() == 2 }
+        release.countDown()
+
+        then:
+        first.get() == "Ada"
+        second.get() == "Ada Lovelace"
+        shared("user") == 0
+    }
+
+    def "forgetAll drops every key of a name"() {
+        given:
+        def first = start("mugs-by-user", 1) { [] }
+        def second = start("mugs-by-user", 2) { [] }
+        conditions.eventually { assert loads.get() == 2 }
+
+        when:
+        singleFlight.forgetAll("mugs-by-user")
+        def third = start("mugs-by-user", 1) { [] }
+        conditions.eventually { assert loads.get() == 3 }
+        release.countDown()
+
+        then:
+        [first, second, third]*.get() == [[], [], []]
+    }
+
+    private CompletableFuture<Object> start(String name, Object key, Closure<?> value) {
+        CompletableFuture.supplyAsync({
+            singleFlight.load(name, key) {
+                loads.incrementAndGet()
+                release.await()
+                value.call()
+            }
+        }, executor)
+    }
+
+    private double shared(String name) {
+        meterRegistry.find("mugs.single-flight.shared").tag("name", name).counter()?.count() ?: 0
+    }
+}
@@ -0,0 +1,43 @@
+package com.overmild.mugs.service
+
+import com.overmild.mugs.exception.BadRequestException
+import spock.lang.Specification
+
+class SparseFieldsSpec extends Specification {
+
+    def "parse selects the requested fields in property order after id"() {
+        expect:
+        SparseFields.parse(fields, SparseFields.USER) == expected
+
+        where:
+        fields             | expected
+        "email"            | ["id", "email"]
+        "lastName,id"      | ["id", "lastName"]
+        " firstName , , "  | ["id", "firstName"]
+        ""                 | ["id"]
+    }
+
+    def "parse expands an object to all of its properties"() {
+        expect:
+        SparseFields.parse("displayName,user", SparseFields.MUG) ==
+                ["id", "displayName", "user.id", "user.firstName", "user.lastName", "user.email"]
+        SparseFields.parse("location.address.city", SparseFields.MUG) == ["id", "location.address.city"]
+        SparseFields.parse("address", SparseFields.LOCATION).size() == 1 + SparseFields.ADDRESS.size()
+    }
+
+    def "parse rejects fields the resource does not have"() {
+        when:
+        SparseFields.parse(fields, SparseFields.LOCATION)
+
+        then:
+        def e = thrown(BadRequestException)
+        e.message == "Unknown field: $unknown"
+
+        where:
+        fields              | unknown
+        "name,mugs"         | "mugs"
+        "addr"              | "addr"
+        "address.city.name" | "address.city.name"
+        "modifiedAt"        | "modifiedAt"
+    }
+}
@@ -1,46 +1,99 @@
 package com.overmild.mugs.service
 
+import com.overmild.mugs.config.SingleFlightProperties
+import com.overmild.mugs.entity.CollectionVersionEntity
+import com.overmild.mugs.entity.MugCountEntity
 import com.overmild.mugs.entity.UserEntity
 import com.overmild.mugs.exception.ConflictException
 import com.overmild.mugs.exception.ResourceNotFoundException
 import com.overmild.mugs.mapper.UserMapper
+import com.overmild.mugs.model.ChangeEvent
+import com.overmild.mugs.model.CursorPage
+import com.overmild.mugs.model.PurgeJob
 import com.overmild.mugs.model.User
+import com.overmild.mugs.repository.CollectionVersionRepository
+import com.overmild.mugs.repository.FieldProjectionRepository
+import com.overmild.mugs.repository.MugCountRepository
+import com.overmild.mugs.repository.MugRepository
 import com.overmild.mugs.repository.UserRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.data.domain.Limit
+import org.springframework.transaction.PlatformTransactionManager
 import spock.lang.Specification
 
+import java.time.Duration
+import java.time.Instant
+import java.util.function.LongUnaryOperator
+
 class UserServiceSpec extends Specification {
 
     UserRepository repository = Mock()
     UserMapper userMapper = Mock()
-    UserService service = new UserService(repository, userMapper)
-
-    def "getAllUsers returns mapped list of users"() {
+    FieldProjectionRepository fieldProjections = Mock()
+    ApplicationEventPublisher eventPublisher = Mock()
+    JsonMergePatch mergePatch = Mock()
+    MugCountRepository mugCounts = Mock()
+    MugRepository mugRepository = Mock()
+    MugPurger purger = Mock()
+    CollectionVersionRepository versions = Mock()
+    SingleFlight singleFlight = new SingleFlight(new SingleFlightProperties(Duration.ofSeconds(5)),
+            Mock(PlatformTransactionManager), new SimpleMeterRegistry())
+    UserService service = new UserService(repository, userMapper, fieldProjections, eventPublisher, mergePatch, mugCounts,
+            mugRepository, purger, singleFlight, versions)
+
+    def "getAllUsers returns mapped first page of users"() {
         given:
         def id = UUID.randomUUID()
         def entity = new UserEntity(id: id, firstName: "John", lastName: "Doe", email: "john@example.com")
         def user = new User(id, "John", "Doe", "john@example.com")
 
-        repository.findAll() >> [entity]
+        repository.findAllByOrderByIdAsc(Limit.of(51)) >> [entity]
         userMapper.toModel(entity) >> user
 
         when:
-        List<User> result = service.getAllUsers()
+        CursorPage<User> result = service.getAllUsers(null, 50)
+
+        then:
+        result.items.size() == 1
+        result.items[0].firstName == "John"
+        result.items[0].email == "john@example.com"
+        result.next == null
+    }
+
+    def "getAllUsers returns empty page when no users exist"() {
+        given:
+        repository.findAllByOrderByIdAsc(_) >> []
+
+        when:
+        CursorPage<User> result = service.getAllUsers(null, 50)
 
         then:
-        result.size() == 1
-        result[0].firstName == "John"
-        result[0].email == "john@example.com"
+        result.items.isEmpty()
     }
 
-    def "getAllUsers returns empty list when no users exist"() {
+    def "getAllUsers continues after the id in the cursor"() {
         given:
-        repository.findAll() >> []
+        def after = UUID.randomUUID()
 
         when:
-        List<User> result = service.getAllUsers()
+        service.getAllUsers(KeysetCursor.encode(after), 20)
 
         then:
-        result.isEmpty()
+        1 * repository.findAllByIdGreaterThanOrderByIdAsc(after, Limit.of(21)) >> []
+    }
+
+    def "getUserFields continues after the id in the cursor"() {
+        given:
+        def after = UUID.randomUUID()
+
+        when:
+        CursorPage<Map<String, Object>> result = service.getUserFields("email", KeysetCursor.encode(after), 20)
+
+        then:
+        1 * fieldProjections.findPage(UserEntity, ["id", "email"], null, after, Limit.of(21)) >> []
+        result.items.isEmpty()
+        result.next == null
     }
 
     def "getUserById returns user when found"() {
@@ -72,6 +125,44 @@ class UserServiceSpec extends Specification {
         thrown(ResourceNotFoundException)
     }
 
+    def "getUserModifiedAt returns the modification time of an existing user"() {
+        given:
+        def id = UUID.randomUUID()
+        def modifiedAt = Instant.now()
+        repository.findModifiedAtById(id) >> Optional.of(modifiedAt)
+
+        expect:
+        service.getUserModifiedAt(id) == modifiedAt
+    }
+
+    def "getUserModifiedAt throws ResourceNotFoundException when not found"() {
+        given:
+        def id = UUID.randomUUID()
+        repository.findModifiedAtById(id) >> Optional.empty()
+
+        when:
+        service.getUserModifiedAt(id)
+
+        then:
+        thrown(ResourceNotFoundException)
+    }
+
+    def "getUsersVersion returns the maintained collection version"() {
+        given:
+        versions.findVersion(CollectionVersionEntity.Name.USERS) >> Optional.of(7L)
+
+        expect:
+        service.getUsersVersion() == 7L
+    }
+
+    def "getUsersVersion is 0 before the collection has a version row"() {
+        given:
+        versions.findVersion(CollectionVersionEntity.Name.USERS) >> Optional.empty()
+
+        expect:
+        service.getUsersVersion() == 0L
+    }
+
     def "createUser persists and returns user"() {
         given:
         def input = new User(null, "Alice", "Brown", "alice@example.com")
@@ -90,6 +181,9 @@ class UserServiceSpec extends Specification {
         then:
         result.firstName == "Alice"
         result.email == "alice@example.com"
+        1 * mugCounts.create(savedEntity.id, MugCountEntity.OwnerType.USER)
+        1 * versions.raise(CollectionVersionEntity.Name.USERS)
+        1 * eventPublisher.publishEvent(ChangeEvent.created(ChangeEvent.Resource.USER, savedEntity.id, expected))
     }
 
     def "createUser throws ConflictException when email already exists"() {
@@ -105,28 +199,44 @@ class UserServiceSpec extends Specification {
         0 * repository.save(_)
     }
 
-    def "updateUser updates and returns user"() {
+    def "updateUser applies the changes to the loaded entity and flushes it before mapping"() {
         given:
         def id = UUID.randomUUID()
         def updated = new User(id, "Updated", "Name", "updated@example.com")
-        def entity = new UserEntity(id: id, firstName: "Updated", lastName: "Name", email: "updated@example.com")
-        def savedEntity = new UserEntity(id: id, firstName: "Updated", lastName: "Name", email: "updated@example.com")
+        def entity = new UserEntity(id: id, firstName: "Original", lastName: "Name", email: "original@example.com")
         def expected = new User(id, "Updated", "Name", "updated@example.com")
 
         repository.findById(id) >> Optional.of(entity)
-        repository.existsByEmailAndIdNot("updated@example.com", id) >> false
-        userMapper.toEntity(updated) >> entity
-        repository.save(entity) >> savedEntity
-        userMapper.toModel(savedEntity) >> expected
+        userMapper.toModel(entity) >> expected
 
         when:
         User result = service.updateUser(updated)
 
         then:
+        1 * repository.existsByEmailAndIdNot("updated@example.com", id) >> false
+        1 * userMapper.updateEntity(updated, entity)
+        1 * repository.saveAndFlush(entity) >> entity
         result.firstName == "Updated"
         result.email == "updated@example.com"
     }
 
+    def "updateUser skips the email check when the email is unchanged"() {
+        given:
+        def id = UUID.randomUUID()
+        def updated = new User(id, "Updated", "Name", "same@example.com")
+        def entity = new UserEntity(id: id, firstName: "Original", lastName: "Name", email: "same@example.com")
+        repository.findById(id) >> Optional.of(entity)
+        repository.saveAndFlush(entity) >> entity
+        userMapper.toModel(entity) >> updated
+
+        when:
+        service.updateUser(updated)
+
+        then:
+        0 * repository.existsByEmailAndIdNot(_, _)
+        1 * userMapper.updateEntity(updated, entity)
+    }
+
     def "updateUser throws ResourceNotFoundException when user does not exist"() {
         given:
         def id = UUID.randomUUID()
@@ -157,7 +267,7 @@ class UserServiceSpec extends Specification {
         given:
         def id = UUID.randomUUID()
         def user = new User(id, "Tom", "Conflict", "taken@example.com")
-        def entity = new UserEntity(id: id, firstName: "Tom", lastName: "Conflict", email: "taken@example.com")
+        def entity = new UserEntity(id: id, firstName: "Tom", lastName: "Conflict", email: "tom@example.com")
 
         repository.findById(id) >> Optional.of(entity)
         repository.existsByEmailAndIdNot("taken@example.com", id) >> true
@@ -167,17 +277,109 @@ class UserServiceSpec extends Specification {
 
         then:
         thrown(ConflictException)
-        0 * repository.save(_)
+        0 * userMapper.updateEntity(_, _)
+    }
+
+    def "deleteUser takes the user's mugs off the location counts and deletes them in bulk"() {
+        given:
+        def id = UUID.randomUUID()
+        mugCounts.findMugCount(id) >> Optional.of(3L)
+        purger.runsInBackground(3) >> false
+
+        when:
+        def purge = service.deleteUser(id)
+
+        then:
+        1 * mugCounts.subtractMugsOfUser(id)
+
+        then:
+        1 * mugRepository.deleteAllByUserId(id) >> 3
+
+        then:
+        1 * repository.removeById(id) >> 1
+        1 * mugCounts.deleteByOwnerId(id)
+        1 * eventPublisher.publishEvent(ChangeEvent.mugsDeleted(ChangeEvent.Resource.USER, id, 3))
+
+        then:
+        1 * eventPublisher.publishEvent(ChangeEvent.deleted(ChangeEvent.Resource.USER, id))
+        purge.isEmpty()
+        0 * purger.start(*_)
+    }
+
+    def "deleteUser hands a user with too many mugs to a background purge"() {
+        given:
+        def id = UUID.randomUUID()
+        def job = new PurgeJob(UUID.randomUUID(), ChangeEvent.Resource.USER, id, PurgeJob.Status.RUNNING, 0,
+                Instant.now(), null, null)
+        mugCounts.findMugCount(id) >> Optional.of(5000L)
+        purger.runsInBackground(5000) >> true
+
+        when:
+        def purge = service.deleteUser(id)
+
+        then:
+        1 * purger.start(ChangeEvent.Resource.USER, id, _, _) >> job
+        purge.get() == job
+        0 * mugRepository.deleteAllByUserId(_)
+        0 * repository.removeById(_)
+        0 * eventPublisher.publishEvent(_)
+    }
+
+    def "a purge announces every mug it deleted in one bulk event once the user is gone"() {
+        given:
+        def id = UUID.randomUUID()
+        LongUnaryOperator delete = null
+        mugCounts.findMugCount(id) >> Optional.of(5000L)
+        purger.runsInBackground(5000) >> true
+        purger.start(ChangeEvent.Resource.USER, id, _, _) >> { args ->
+            delete = args[3]
+            new PurgeJob(UUID.randomUUID(), ChangeEvent.Resource.USER, id, PurgeJob.Status.RUNNING, 0,
+                    Instant.now(), null, null)
+        }
+        service.deleteUser(id)
+
+        when:
+        def deleted = delete.applyAsLong(4990)
+
+        then:
+        1 * mugRepository.deleteAllByUserId(id) >> 10
+        1 * repository.removeById(id) >> 1
+        1 * eventPublisher.publishEvent(ChangeEvent.mugsDeleted(ChangeEvent.Resource.USER, id, 5000))
+
+        then:
+        1 * eventPublisher.publishEvent(ChangeEvent.deleted(ChangeEvent.Resource.USER, id))
+        deleted == 10
+    }
+
+    def "deleteUser publishes no bulk event for a user without mugs"() {
+        given:
+        def id = UUID.randomUUID()
+        mugCounts.findMugCount(id) >> Optional.of(0L)
+        mugRepository.deleteAllByUserId(id) >> 0
+        repository.removeById(id) >> 1
+
+        when:
+        service.deleteUser(id)
+
+        then:
+        1 * eventPublisher.publishEvent(ChangeEvent.deleted(ChangeEvent.Resource.USER, id))
+        0 * eventPublisher.publishEvent(_)
     }
 
-    def "deleteUser calls repository deleteById"() {
+    def "deleteUser of a missing user publishes nothing"() {
         given:
         def id = UUID.randomUUID()
+        mugCounts.findMugCount(id) >> Optional.empty()
+        mugCounts.countMugsOfUser(id) >> 0L
+        mugRepository.deleteAllByUserId(id) >> 0
+        repository.removeById(id) >> 0
 
         when:
         service.deleteUser(id)
 
         then:
-        1 * repository.deleteById(id)
+        0 * mugCounts.deleteByOwnerId(_)
+        0 * versions.raise(_)
+        0 * eventPublisher.publishEvent(_)
     }
 }
@@ -0,0 +1,29 @@
+package com.overmild.mugs.support
+
+import org.hibernate.resource.jdbc.spi.StatementInspector
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Records the SQL Hibernate sends while a block of work runs, so specs can assert on
+ * the shape of a query rather than only on how many were issued.
+ *
+ * <p>Registered for the {@code test} profile as Hibernate's
+ * {@code session_factory.statement_inspector}.</p>
+ */
+class SqlCapture implements StatementInspector {
+
+    private static final List<String> statements = new CopyOnWriteArrayList<>()
+
+    @Override
+    String inspect(String sql) {
+        statements << sql
+        sql
+    }
+
+    static List<String> capture(Closure work) {
+        statements.clear()
+        work.call()
+        List.copyOf(statements)
+    }
+}
@@ -0,0 +1,27 @@
+package com.overmild.mugs.support
+
+import jakarta.persistence.EntityManagerFactory
+import org.hibernate.SessionFactory
+import org.hibernate.stat.Statistics
+
+/**
+ * Counts the JDBC statements Hibernate prepares while a block of work runs.
+ *
+ * <p>Backed by Hibernate {@link Statistics}, so {@code hibernate.generate_statistics}
+ * must be enabled (the {@code test} profile does this).</p>
+ */
+class SqlStatementCounter {
+
+    private final Statistics statistics
+
+    SqlStatementCounter(EntityManagerFactory entityManagerFactory) {
+        statistics = entityManagerFactory.unwrap(SessionFactory).statistics
+        statistics.statisticsEnabled = true
+    }
+
+    long count(Closure work) {
+        statistics.clear()
+        work.call()
+        statistics.prepareStatementCount
+    }
+}